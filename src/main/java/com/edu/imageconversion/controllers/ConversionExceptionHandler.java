@@ -0,0 +1,27 @@
+package com.edu.imageconversion.controllers;
+
+import com.edu.imageconversion.services.ConversionRejectedException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class ConversionExceptionHandler {
+    private static final Logger logger = LogManager.getLogger(ConversionExceptionHandler.class);
+
+    // Отказ планировщика: 503 с Retry-After при перегрузке, 413 если пакет не помещается в бюджет памяти
+    @ExceptionHandler(ConversionRejectedException.class)
+    public ResponseEntity<String> handleRejectedConversion(ConversionRejectedException e) {
+        logger.warn("Conversion rejected: {}", e.getMessage());
+        if (e.getReason() == ConversionRejectedException.Reason.TOO_LARGE) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+        }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(e.getMessage());
+    }
+}
@@ -0,0 +1,134 @@
+package com.edu.imageconversion.controllers;
+
+import com.edu.imageconversion.services.BackgroundRemovalMode;
+import com.edu.imageconversion.services.ConversionJob;
+import com.edu.imageconversion.services.ConversionJobService;
+import com.edu.imageconversion.services.ImageProcessingService;
+import com.edu.imageconversion.services.PngEncoder;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/image/jobs")
+public class ConversionJobController {
+    private static final Logger logger = LogManager.getLogger(ConversionJobController.class);
+
+    private final ConversionJobService conversionJobService;
+    private final ImageProcessingService imageProcessingService;
+
+    public ConversionJobController(ConversionJobService conversionJobService, ImageProcessingService imageProcessingService) {
+        this.conversionJobService = conversionJobService;
+        this.imageProcessingService = imageProcessingService;
+    }
+
+    @Operation(summary = "Submit conversion job", description = "Spool uploaded images to disk and convert them in the background")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Job accepted", content = @Content(mediaType = "application/json")),
+            @ApiResponse(responseCode = "400", description = "Invalid input data", content = @Content),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content),
+            @ApiResponse(responseCode = "503", description = "Too many jobs, retry after the Retry-After delay", content = @Content)
+    })
+    @PostMapping(consumes = {"multipart/form-data"})
+    public ResponseEntity<ConversionJob.Status> submitJob(
+            @RequestPart(value = "files", required = true) MultipartFile[] files,
+            @RequestParam("format") String format,
+            @RequestParam(value = "quality", defaultValue = "0.8") float quality,
+            @RequestParam(value = "compressionLevel", defaultValue = "-1") int compressionLevel,
+            @RequestParam(value = "maxWidth", defaultValue = "0") int maxWidth,
+            @RequestParam(value = "maxHeight", defaultValue = "0") int maxHeight,
+            @RequestParam(value = "mode", defaultValue = "global") String mode,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        try {
+            // auto - формат выбирается по Accept при постановке задания
+            String outputFormat = "auto".equalsIgnoreCase(format) ? imageProcessingService.negotiateFormat(accept) : format;
+            if (!imageProcessingService.supportsFormat(outputFormat)) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            // Те же параметры, что у синхронной конвертации
+            if (compressionLevel < PngEncoder.LEVEL_FROM_QUALITY || compressionLevel > 9) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            if (maxWidth < 0 || maxHeight < 0) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            BackgroundRemovalMode removalMode = BackgroundRemovalMode.find(mode);
+            if (removalMode == null) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+
+            ConversionJob job = conversionJobService.submit(files, outputFormat, quality, compressionLevel, maxWidth,
+                    maxHeight, removalMode);
+            return ResponseEntity.accepted()
+                    .header(HttpHeaders.LOCATION, "/api/image/jobs/" + job.getId())
+                    .body(conversionJobService.status(job));
+        } catch (IOException e) {
+            logger.error("Error while spooling conversion job", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Operation(summary = "Get job status", description = "Job state and per-file conversion progress")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Job status", content = @Content(mediaType = "application/json")),
+            @ApiResponse(responseCode = "404", description = "Unknown or expired job", content = @Content)
+    })
+    @GetMapping("/{id}")
+    public ResponseEntity<ConversionJob.Status> getJobStatus(@PathVariable("id") String id) {
+        return conversionJobService.find(id)
+                .map(job -> ResponseEntity.ok(conversionJobService.status(job)))
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @Operation(summary = "Download job result", description = "ZIP archive with converted images of a completed job")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Converted images", content = @Content(mediaType = "application/zip")),
+            @ApiResponse(responseCode = "404", description = "Unknown or expired job", content = @Content),
+            @ApiResponse(responseCode = "409", description = "Job is not completed", content = @Content)
+    })
+    @GetMapping("/{id}/result")
+    public ResponseEntity<Resource> downloadJobResult(@PathVariable("id") String id) {
+        ConversionJob job = conversionJobService.find(id).orElse(null);
+        if (job == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        if (job.getState() != ConversionJob.State.COMPLETED) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=converted_images_" + id + ".zip");
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(new FileSystemResource(job.getResultPath()));
+    }
+
+    @Operation(summary = "Delete job", description = "Remove a finished job and its files before the TTL expires")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Job deleted", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Unknown, expired or still running job", content = @Content)
+    })
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteJob(@PathVariable("id") String id) {
+        try {
+            return conversionJobService.delete(id)
+                    ? new ResponseEntity<>(HttpStatus.OK)
+                    : new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (IOException e) {
+            logger.error("Error while deleting conversion job {}", id, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.edu.imageconversion.controllers;
 
+import com.edu.imageconversion.services.BackgroundRemovalMode;
 import com.edu.imageconversion.services.ImageProcessingService;
+import com.edu.imageconversion.services.PngEncoder;
 import com.edu.imageconversion.services.ZipService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -13,6 +15,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 
@@ -29,29 +32,73 @@ public class ImageProcessingController {
         this.zipService = zipService;
     }
 
-    @Operation(summary = "Convert images", description = "Convert uploaded images to PNG or SVG and remove background")
+    @Operation(summary = "Convert images", description = "Convert uploaded images to PNG, JPEG, WebP or SVG (auto - negotiated from Accept) and remove background")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Images converted successfully", content = @Content(mediaType = "application/zip")),
             @ApiResponse(responseCode = "400", description = "Invalid input data", content = @Content),
-            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
+            @ApiResponse(responseCode = "413", description = "Batch does not fit into the in-flight memory budget", content = @Content),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content),
+            @ApiResponse(responseCode = "503", description = "Conversion is saturated, retry after the Retry-After delay", content = @Content)
     })
     @PostMapping(value = "/convert", consumes = {"multipart/form-data"})
-    public ResponseEntity<byte[]> convertAndZipImages(
+    public ResponseEntity<?> convertAndZipImages(
             @RequestPart(value = "files", required = true) MultipartFile[] files,
             @RequestParam("format") String format,
-            @RequestParam(value = "quality", defaultValue = "0.8") float quality) {
+            @RequestParam(value = "quality", defaultValue = "0.8") float quality,
+            @RequestParam(value = "compressionLevel", defaultValue = "-1") int compressionLevel,
+            @RequestParam(value = "maxWidth", defaultValue = "0") int maxWidth,
+            @RequestParam(value = "maxHeight", defaultValue = "0") int maxHeight,
+            @RequestParam(value = "mode", defaultValue = "global") String mode,
+            @RequestParam(value = "stream", defaultValue = "false") boolean stream,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
         long startTime = System.currentTimeMillis();
 
         try {
-            if (!format.equalsIgnoreCase("png") && !format.equalsIgnoreCase("svg")) {
+            // auto - растровый формат по заголовку Accept: WebP, если клиент его принимает, иначе PNG
+            boolean negotiated = "auto".equalsIgnoreCase(format);
+            String outputFormat = negotiated ? imageProcessingService.negotiateFormat(accept) : format;
+            if (!imageProcessingService.supportsFormat(outputFormat)) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            // -1 - уровень усилия сжатия выбирает кодировщик формата (для PNG выводится из quality)
+            if (compressionLevel < PngEncoder.LEVEL_FROM_QUALITY || compressionLevel > 9) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            // 0 - без ограничения размера
+            if (maxWidth < 0 || maxHeight < 0) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            // global - весь фон в пределах допуска, connected - только фон, связанный с краем изображения
+            BackgroundRemovalMode removalMode = BackgroundRemovalMode.find(mode);
+            if (removalMode == null) {
                 return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
             }
-
-            byte[][] convertedImages = imageProcessingService.convertImages(files, format, quality);
-            byte[] zipData = zipService.zipFiles(convertedImages, format);
 
             HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=converted_images.zip");
+            if (negotiated) {
+                headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+            }
+
+            if (stream) {
+                // Элементы архива уходят клиенту по мере конвертации, весь архив в памяти не собирается
+                StreamingResponseBody body = outputStream -> {
+                    ZipService.ZipStream zipStream = zipService.openZipStream(outputStream, outputFormat);
+                    imageProcessingService.convertImages(files, outputFormat, quality, compressionLevel, maxWidth, maxHeight,
+                            removalMode, zipStream);
+                    zipStream.finish();
+
+                    long endTime = System.currentTimeMillis();
+                    logger.info("Single-threaded streaming conversion took {} ms", (endTime - startTime));
+                };
+                return ResponseEntity.ok()
+                        .headers(headers)
+                        .body(body);
+            }
+
+            byte[][] convertedImages = imageProcessingService.convertImages(files, outputFormat, quality, compressionLevel,
+                    maxWidth, maxHeight, removalMode);
+            byte[] zipData = zipService.zipFiles(convertedImages, outputFormat);
 
             long endTime = System.currentTimeMillis();
             logger.info("Single-threaded conversion took {} ms", (endTime - startTime));
@@ -65,29 +112,73 @@ public class ImageProcessingController {
         }
     }
 
-    @Operation(summary = "Convert images in parallel", description = "Convert uploaded images to PNG or SVG and remove background using parallel processing")
+    @Operation(summary = "Convert images in parallel", description = "Convert uploaded images to PNG, JPEG, WebP or SVG (auto - negotiated from Accept) and remove background using parallel processing")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Images converted successfully", content = @Content(mediaType = "application/zip")),
             @ApiResponse(responseCode = "400", description = "Invalid input data", content = @Content),
-            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content)
+            @ApiResponse(responseCode = "413", description = "Batch does not fit into the in-flight memory budget", content = @Content),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content),
+            @ApiResponse(responseCode = "503", description = "Conversion is saturated, retry after the Retry-After delay", content = @Content)
     })
     @PostMapping(value = "/convert-parallel", consumes = {"multipart/form-data"})
-    public ResponseEntity<byte[]> convertAndZipImagesParallel(
+    public ResponseEntity<?> convertAndZipImagesParallel(
             @RequestPart(value = "files", required = true) MultipartFile[] files,
             @RequestParam("format") String format,
-            @RequestParam(value = "quality", defaultValue = "0.8") float quality) {
+            @RequestParam(value = "quality", defaultValue = "0.8") float quality,
+            @RequestParam(value = "compressionLevel", defaultValue = "-1") int compressionLevel,
+            @RequestParam(value = "maxWidth", defaultValue = "0") int maxWidth,
+            @RequestParam(value = "maxHeight", defaultValue = "0") int maxHeight,
+            @RequestParam(value = "mode", defaultValue = "global") String mode,
+            @RequestParam(value = "stream", defaultValue = "false") boolean stream,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
         long startTime = System.currentTimeMillis();
 
         try {
-            if (!format.equalsIgnoreCase("png") && !format.equalsIgnoreCase("svg")) {
+            // auto - растровый формат по заголовку Accept: WebP, если клиент его принимает, иначе PNG
+            boolean negotiated = "auto".equalsIgnoreCase(format);
+            String outputFormat = negotiated ? imageProcessingService.negotiateFormat(accept) : format;
+            if (!imageProcessingService.supportsFormat(outputFormat)) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            // -1 - уровень усилия сжатия выбирает кодировщик формата (для PNG выводится из quality)
+            if (compressionLevel < PngEncoder.LEVEL_FROM_QUALITY || compressionLevel > 9) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            // 0 - без ограничения размера
+            if (maxWidth < 0 || maxHeight < 0) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            // global - весь фон в пределах допуска, connected - только фон, связанный с краем изображения
+            BackgroundRemovalMode removalMode = BackgroundRemovalMode.find(mode);
+            if (removalMode == null) {
                 return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
             }
-
-            byte[][] convertedImages = imageProcessingService.convertImagesParallel(files, format, quality);
-            byte[] zipData = zipService.zipFiles(convertedImages, format);
 
             HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=converted_images_parallel.zip");
+            if (negotiated) {
+                headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+            }
+
+            if (stream) {
+                // Поток запроса дописывает в архив каждое изображение, как только его отдаст рабочий поток
+                StreamingResponseBody body = outputStream -> {
+                    ZipService.ZipStream zipStream = zipService.openZipStream(outputStream, outputFormat);
+                    imageProcessingService.convertImagesParallel(files, outputFormat, quality, compressionLevel, maxWidth, maxHeight,
+                            removalMode, zipStream);
+                    zipStream.finish();
+
+                    long endTime = System.currentTimeMillis();
+                    logger.info("Multi-threaded streaming conversion took {} ms", (endTime - startTime));
+                };
+                return ResponseEntity.ok()
+                        .headers(headers)
+                        .body(body);
+            }
+
+            byte[][] convertedImages = imageProcessingService.convertImagesParallel(files, outputFormat, quality, compressionLevel,
+                    maxWidth, maxHeight, removalMode);
+            byte[] zipData = zipService.zipFiles(convertedImages, outputFormat);
 
             long endTime = System.currentTimeMillis();
             logger.info("Multi-threaded conversion took {} ms", (endTime - startTime));
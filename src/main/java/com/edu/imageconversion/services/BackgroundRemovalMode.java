@@ -0,0 +1,20 @@
+package com.edu.imageconversion.services;
+
+import java.util.Locale;
+
+// Какие пиксели цвета фона удаляются: global - все в пределах допуска, connected - только связанные с краем изображения
+public enum BackgroundRemovalMode {
+    GLOBAL,
+    CONNECTED;
+
+    // Режим по значению параметра запроса mode без учета регистра; null, если режим неизвестен
+    public static BackgroundRemovalMode find(String value) {
+        String name = value.trim().toUpperCase(Locale.ROOT);
+        for (BackgroundRemovalMode mode : values()) {
+            if (mode.name().equals(name)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.edu.imageconversion.services;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Удаление фона одного изображения полосами строк в ForkJoinPool.
+ * Полоса делится пополам, пока не станет не больше rowsPerBand строк. Если в пуле уже скопилась
+ * лишняя работа (например, параллельно обрабатываются другие файлы), задача дальше не дробится.
+ * С маской кандидатов (режим connected) полоса еще и размечает удаленные пиксели, а связность с краем
+ * потом проверяет ConnectedBackgroundRemover.fill.
+ */
+class BackgroundRemovalTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    // Минимальный размер полосы: около 1 МБ результата, чтобы накладные расходы на задачу были незаметны
+    static final long MIN_BAND_PIXELS = 1 << 18;
+    // Примерно столько полос на поток, чтобы выровнять нагрузку между воркерами
+    private static final int BANDS_PER_THREAD = 4;
+    private static final int MAX_SURPLUS_TASKS = 3;
+
+    // Задача живет только в пуле и не сериализуется, хотя RecursiveAction и Serializable
+    private final transient BufferedImage source;
+    private final transient int[] target;
+    private final transient long[] candidates;
+    private final int backgroundRgb;
+    private final int tolerance;
+    private final int fromY;
+    private final int toY;
+    private final int rowsPerBand;
+
+    BackgroundRemovalTask(BufferedImage source, int[] target, long[] candidates, int backgroundRgb, int tolerance,
+                          int fromY, int toY, int rowsPerBand) {
+        this.source = source;
+        this.target = target;
+        this.candidates = candidates;
+        this.backgroundRgb = backgroundRgb;
+        this.tolerance = tolerance;
+        this.fromY = fromY;
+        this.toY = toY;
+        this.rowsPerBand = rowsPerBand;
+    }
+
+    static int rowsPerBand(int width, int height, int parallelism) {
+        long pixels = (long) width * height;
+        long bandPixels = Math.max(MIN_BAND_PIXELS, pixels / ((long) parallelism * BANDS_PER_THREAD));
+        return (int) Math.max(1, Math.min(height, (bandPixels + width - 1) / width));
+    }
+
+    @Override
+    protected void compute() {
+        int rows = toY - fromY;
+        if (rows <= rowsPerBand || getSurplusQueuedTaskCount() > MAX_SURPLUS_TASKS) {
+            if (candidates != null) {
+                ConnectedBackgroundRemover.prepare(source, target, candidates, backgroundRgb, tolerance, fromY, toY);
+            } else {
+                RasterBackgroundRemover.removeBackground(source, target, backgroundRgb, tolerance, fromY, toY);
+            }
+            return;
+        }
+        int middle = fromY + rows / 2;
+        invokeAll(new BackgroundRemovalTask(source, target, candidates, backgroundRgb, tolerance, fromY, middle, rowsPerBand),
+                new BackgroundRemovalTask(source, target, candidates, backgroundRgb, tolerance, middle, toY, rowsPerBand));
+    }
+}
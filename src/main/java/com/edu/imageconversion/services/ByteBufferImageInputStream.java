@@ -0,0 +1,53 @@
+package com.edu.imageconversion.services;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * ImageInputStream поверх ByteBuffer (обычно файл, отображенный в память). Буфер уже дает произвольный доступ,
+ * поэтому в отличие от MemoryCacheImageInputStream прочитанные байты нигде не копируются и не кэшируются:
+ * декодер читает прямо из страниц файла, а seek назад ничего не стоит.
+ */
+final class ByteBufferImageInputStream extends ImageInputStreamImpl {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferImageInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= buffer.limit()) {
+            return -1;
+        }
+        return buffer.get((int) streamPos++) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        bitOffset = 0;
+        long available = buffer.limit() - streamPos;
+        if (available <= 0) {
+            return -1;
+        }
+        int count = (int) Math.min(len, available);
+        buffer.get((int) streamPos, b, off, count);
+        streamPos += count;
+        return count;
+    }
+
+    @Override
+    public long length() {
+        return buffer.limit();
+    }
+}
@@ -0,0 +1,115 @@
+package com.edu.imageconversion.services;
+
+import java.util.Arrays;
+
+/**
+ * Гистограмма RGB-цветов на примитивных массивах: открытая адресация с линейным пробированием,
+ * без упаковки цветов в объекты. Экземпляр не потокобезопасен и переиспользуется одним потоком через clear().
+ */
+final class ColorHistogram {
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    // Больше этого размера таблица не удерживается между изображениями, чтобы не держать память в каждом потоке
+    private static final int MAX_RETAINED_CAPACITY = 1 << 16;
+
+    private int[] slots;
+    private int[] colors;
+    private int[] counts;
+    private int size;
+    private int shift;
+
+    ColorHistogram() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    void clear() {
+        if (slots.length > MAX_RETAINED_CAPACITY * 2) {
+            allocate(INITIAL_CAPACITY);
+            return;
+        }
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+    }
+
+    void add(int rgb) {
+        int color = rgb & 0xFFFFFF;
+        int mask = slots.length - 1;
+        int slot = (color * 0x9E3779B9) >>> shift;
+        while (true) {
+            int index = slots[slot];
+            if (index == EMPTY) {
+                insert(slot, color);
+                return;
+            }
+            if (colors[index] == color) {
+                counts[index]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Индекс самого частого цвета или -1, если максимум делят несколько цветов либо гистограмма пуста
+    int uniqueMaximum() {
+        int best = -1;
+        int bestCount = 0;
+        boolean unique = false;
+        for (int i = 0; i < size; i++) {
+            int count = counts[i];
+            if (count > bestCount) {
+                best = i;
+                bestCount = count;
+                unique = true;
+            } else if (count == bestCount) {
+                unique = false;
+            }
+        }
+        return unique ? best : -1;
+    }
+
+    int color(int index) {
+        return colors[index];
+    }
+
+    private void insert(int slot, int color) {
+        if (size == colors.length) {
+            colors = Arrays.copyOf(colors, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        colors[size] = color;
+        counts[size] = 1;
+        slots[slot] = size++;
+        // Заполненность таблицы не больше половины
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        colors = new int[capacity / 2];
+        counts = new int[capacity / 2];
+        shift = Integer.numberOfLeadingZeros(capacity - 1);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        shift = Integer.numberOfLeadingZeros(capacity - 1);
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = (colors[i] * 0x9E3779B9) >>> shift;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i;
+        }
+    }
+}
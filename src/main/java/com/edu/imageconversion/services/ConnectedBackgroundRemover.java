@@ -0,0 +1,213 @@
+package com.edu.imageconversion.services;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Удаление только того фона, который связан с краем изображения (режим connected). Области цвета фона
+ * внутри предмета (белый логотип на белом фоне) остаются как есть.
+ * <p>
+ * Сначала prepare выполняет обычное глобальное удаление фона по строкам и строит маску кандидатов, по биту
+ * на удаленный пиксель. Строки независимы, поэтому этот шаг делится на полосы. Затем fill обходит кандидатов
+ * от краев построчно (scanline), с явным стеком отрезков и без рекурсии. Достигнутые пиксели снимаются с маски,
+ * так что она же служит картой посещенных. Отрезки ищутся по 64 пикселя за операцию. Оставшиеся в маске
+ * кандидаты не связаны с краем, и их исходные пиксели восстанавливаются из source отрезками.
+ * Полностью прозрачный белый пиксель неотличим от удаленного и считается фоном и для связности.
+ */
+final class ConnectedBackgroundRemover {
+
+    private ConnectedBackgroundRemover() {
+    }
+
+    // Маска кандидатов изображения: строка занимает целое число слов long
+    static long[] candidates(int width, int height) {
+        return new long[words(width) * height];
+    }
+
+    /**
+     * Удаляет фон в строках [fromY, toY) так же, как RasterBackgroundRemover, и отмечает удаленные пиксели
+     * в маске. Разные диапазоны строк можно обрабатывать из разных потоков.
+     */
+    static void prepare(BufferedImage source, int[] target, long[] candidates, int backgroundRgb, int tolerance,
+                        int fromY, int toY) {
+        RasterBackgroundRemover.removeBackground(source, target, backgroundRgb, tolerance, fromY, toY);
+        int width = source.getWidth();
+        int words = words(width);
+        int[] removed = new int[words << 6];
+        for (int y = fromY; y < toY; y++) {
+            int offset = y * width;
+            // Простой цикл по int без ветвлений и сравнений, который JIT векторизует: v | -v отрицательно
+            // для любого v, кроме нуля, то есть кроме пикселя, замененного на прозрачный
+            for (int x = 0; x < width; x++) {
+                int v = target[offset + x] ^ RasterBackgroundRemover.TRANSPARENT_PIXEL;
+                removed[x] = ((v | -v) >>> 31) ^ 1;
+            }
+            pack(removed, candidates, y * words, words, width);
+        }
+    }
+
+    // Упаковка по 64 флага в слово; четыре независимых накопителя вместо одной цепочки сдвигов
+    private static void pack(int[] flags, long[] candidates, int row, int words, int width) {
+        // Хвост за шириной строки в маску не попадает
+        Arrays.fill(flags, width, flags.length, 0);
+        for (int word = 0; word < words; word++) {
+            int base = word << 6;
+            long b0 = 0;
+            long b1 = 0;
+            long b2 = 0;
+            long b3 = 0;
+            for (int i = 0; i < 64; i += 4) {
+                b0 |= (long) flags[base + i] << i;
+                b1 |= (long) flags[base + i + 1] << (i + 1);
+                b2 |= (long) flags[base + i + 2] << (i + 2);
+                b3 |= (long) flags[base + i + 3] << (i + 3);
+            }
+            candidates[row + word] = b0 | b1 | b2 | b3;
+        }
+    }
+
+    /**
+     * Оставляет удаленными только кандидатов, связанных с краем изображения (4-связность), остальным
+     * возвращает исходный пиксель source. После вызова маска содержит восстановленные пиксели.
+     */
+    static void fill(BufferedImage source, int[] target, long[] candidates) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width == 0 || height == 0) {
+            return;
+        }
+        int words = words(width);
+        SpanStack stack = new SpanStack();
+        // Затравки: верхняя и нижняя строки целиком, левый и правый столбцы
+        stack.push(0, 0, width);
+        if (height > 1) {
+            stack.push(height - 1, 0, width);
+        }
+        for (int y = 1; y < height - 1; y++) {
+            stack.push(y, 0, 1);
+            if (width > 1) {
+                stack.push(y, width - 1, width);
+            }
+        }
+
+        while (!stack.isEmpty()) {
+            stack.pop();
+            int y = stack.y;
+            int row = y * words;
+            int to = stack.to;
+            int x = nextCandidate(candidates, row, stack.from, to);
+            while (x >= 0) {
+                // Отрезок может выходить за пределы [from, to): продолжаем его в обе стороны по маске
+                int left = runStart(candidates, row, x);
+                int right = runEnd(candidates, row, words, width, x);
+                clear(candidates, row, left, right);
+                if (y > 0) {
+                    stack.push(y - 1, left, right);
+                }
+                if (y < height - 1) {
+                    stack.push(y + 1, left, right);
+                }
+                x = right < to ? nextCandidate(candidates, row, right, to) : -1;
+            }
+        }
+
+        // Внутренние области цвета фона обычно редки: исходные пиксели читаются только для них
+        for (int y = 0; y < height; y++) {
+            int row = y * words;
+            int x = nextCandidate(candidates, row, 0, width);
+            while (x >= 0) {
+                int right = runEnd(candidates, row, words, width, x);
+                source.getRGB(x, y, right - x, 1, target, y * width + x, width);
+                x = right < width ? nextCandidate(candidates, row, right, width) : -1;
+            }
+        }
+    }
+
+    static int words(int width) {
+        return (width + 63) >>> 6;
+    }
+
+    // Первый кандидат строки в [from, to) или -1
+    private static int nextCandidate(long[] candidates, int row, int from, int to) {
+        int word = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long bits = candidates[row + word] & (-1L << from);
+        while (bits == 0) {
+            if (++word > lastWord) {
+                return -1;
+            }
+            bits = candidates[row + word];
+        }
+        int x = (word << 6) + Long.numberOfTrailingZeros(bits);
+        return x < to ? x : -1;
+    }
+
+    // Начало отрезка кандидатов, в который входит x
+    private static int runStart(long[] candidates, int row, int x) {
+        int word = x >>> 6;
+        long gaps = ~candidates[row + word] & ((1L << x) - 1);
+        while (gaps == 0) {
+            if (--word < 0) {
+                return 0;
+            }
+            gaps = ~candidates[row + word];
+        }
+        return (word << 6) + 64 - Long.numberOfLeadingZeros(gaps);
+    }
+
+    // Конец (не включая) отрезка кандидатов, в который входит x; биты за шириной строки в маске нулевые
+    private static int runEnd(long[] candidates, int row, int words, int width, int x) {
+        int word = x >>> 6;
+        long gaps = ~candidates[row + word] & (-1L << x);
+        while (gaps == 0) {
+            if (++word == words) {
+                return width;
+            }
+            gaps = ~candidates[row + word];
+        }
+        return Math.min(width, (word << 6) + Long.numberOfTrailingZeros(gaps));
+    }
+
+    private static void clear(long[] candidates, int row, int from, int to) {
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (firstWord == lastWord) {
+            candidates[row + firstWord] &= ~(firstMask & lastMask);
+            return;
+        }
+        candidates[row + firstWord] &= ~firstMask;
+        Arrays.fill(candidates, row + firstWord + 1, row + lastWord, 0L);
+        candidates[row + lastWord] &= ~lastMask;
+    }
+
+    // Стек отрезков (строка, from, to) в массиве int, без объекта на каждый отрезок
+    private static final class SpanStack {
+        private int[] spans = new int[3 * 256];
+        private int size;
+        int y;
+        int from;
+        int to;
+
+        void push(int y, int from, int to) {
+            if (size + 3 > spans.length) {
+                spans = Arrays.copyOf(spans, spans.length * 2);
+            }
+            spans[size++] = y;
+            spans[size++] = from;
+            spans[size++] = to;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        // Снимает верхний отрезок в поля y, from, to
+        void pop() {
+            to = spans[--size];
+            from = spans[--size];
+            y = spans[--size];
+        }
+    }
+}
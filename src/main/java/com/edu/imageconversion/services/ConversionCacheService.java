@@ -0,0 +1,314 @@
+package com.edu.imageconversion.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Кэш результатов конвертации по содержимому входного файла и параметрам конвертации.
+ * Первый уровень - в куче (Caffeine, W-TinyLFU, ограничение по байтам), второй - необязательный каталог на диске,
+ * куда попадают вытесненные из кучи результаты. Одновременные запросы одного и того же ключа конвертируются один раз.
+ */
+@Service
+public class ConversionCacheService {
+    private static final Logger logger = LogManager.getLogger(ConversionCacheService.class);
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final boolean enabled;
+    private final Cache<CacheKey, byte[]> heapCache;
+    private final Path diskDirectory;
+    private final long maxDiskBytes;
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final ConcurrentHashMap<CacheKey, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder heapHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder sharedLoads = new LongAdder();
+    private final LongAdder heapEvictions = new LongAdder();
+    private final LongAdder diskEvictions = new LongAdder();
+
+    public ConversionCacheService(@Value("${image.processing.cache.enabled:true}") boolean enabled,
+                                  @Value("${image.processing.cache.max-heap-size:256MB}") DataSize maxHeapSize,
+                                  @Value("${image.processing.cache.disk-directory:}") String diskDirectory,
+                                  @Value("${image.processing.cache.max-disk-size:2GB}") DataSize maxDiskSize) throws IOException {
+        this.enabled = enabled;
+        this.maxDiskBytes = maxDiskSize.toBytes();
+        this.diskDirectory = enabled && !diskDirectory.isBlank() ? Path.of(diskDirectory) : null;
+        if (this.diskDirectory != null) {
+            Files.createDirectories(this.diskDirectory);
+            try (Stream<Path> files = Files.list(this.diskDirectory)) {
+                // Временные файлы остались от записи, прерванной остановкой, и результатами не являются
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (isEntry(file)) {
+                        diskBytes.addAndGet(sizeOf(file));
+                    } else {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        }
+        this.heapCache = Caffeine.newBuilder()
+                .maximumWeight(maxHeapSize.toBytes())
+                .weigher((CacheKey key, byte[] value) -> value.length)
+                .removalListener(this::onHeapRemoval)
+                .build();
+    }
+
+    // Кэш без хранения результатов, например для бенчмарков отдельных этапов
+    public static ConversionCacheService disabled() {
+        try {
+            return new ConversionCacheService(false, DataSize.ofBytes(0), "", DataSize.ofBytes(0));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CacheKey key(MultipartFile file, ConversionOptions options) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream inputStream = file.getInputStream()) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return new CacheKey(HexFormat.of().formatHex(digest.digest()), options);
+    }
+
+    /**
+     * Возвращает результат из кэша или вычисляет его через loader. Если тот же ключ уже конвертируется
+     * в другом потоке, ждет этот результат вместо повторной конвертации.
+     */
+    public byte[] get(CacheKey key, Loader loader) throws IOException {
+        if (!enabled) {
+            return loader.load();
+        }
+        byte[] cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<byte[]> ownLoad = new CompletableFuture<>();
+        CompletableFuture<byte[]> sharedLoad = inFlight.putIfAbsent(key, ownLoad);
+        if (sharedLoad != null) {
+            sharedLoads.increment();
+            return await(sharedLoad);
+        }
+
+        try {
+            // Пока мы регистрировались, другой поток мог успеть завершить ту же конвертацию
+            byte[] result = lookup(key);
+            if (result == null) {
+                misses.increment();
+                result = loader.load();
+                heapCache.put(key, result);
+            }
+            ownLoad.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            ownLoad.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, ownLoad);
+        }
+    }
+
+    // Для конвейерной конвертации: загрузка разнесена по этапам и не может выполняться внутри get,
+    // поэтому одновременные конвертации одного ключа здесь не объединяются
+    public byte[] getIfPresent(CacheKey key) throws IOException {
+        if (!enabled) {
+            return null;
+        }
+        byte[] cached = lookup(key);
+        if (cached == null) {
+            misses.increment();
+        }
+        return cached;
+    }
+
+    public void put(CacheKey key, byte[] value) {
+        if (enabled) {
+            heapCache.put(key, value);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(heapHits.sum(), diskHits.sum(), misses.sum(), sharedLoads.sum(),
+                heapEvictions.sum(), diskEvictions.sum(), heapCache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L), diskBytes.get());
+    }
+
+    private byte[] lookup(CacheKey key) throws IOException {
+        byte[] cached = heapCache.getIfPresent(key);
+        if (cached != null) {
+            heapHits.increment();
+            return cached;
+        }
+        if (diskDirectory == null) {
+            return null;
+        }
+        cached = readFromDisk(diskPath(key));
+        if (cached != null) {
+            diskHits.increment();
+            heapCache.put(key, cached);
+        }
+        return cached;
+    }
+
+    private byte[] readFromDisk(Path path) throws IOException {
+        try {
+            return Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void onHeapRemoval(CacheKey key, byte[] value, RemovalCause cause) {
+        if (!cause.wasEvicted()) {
+            return;
+        }
+        heapEvictions.increment();
+        if (diskDirectory != null && key != null && value != null) {
+            try {
+                writeToDisk(diskPath(key), value);
+            } catch (IOException e) {
+                logger.warn("Could not spill cached conversion {} to disk", key, e);
+            }
+        }
+    }
+
+    private void writeToDisk(Path path, byte[] value) throws IOException {
+        if (Files.exists(path)) {
+            return;
+        }
+        // Пишем во временный файл и атомарно переименовываем, чтобы читатели не увидели частично записанный файл
+        Path temporary = Files.createTempFile(diskDirectory, "spill", TEMPORARY_SUFFIX);
+        try {
+            Files.write(temporary, value);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        if (diskBytes.addAndGet(value.length) > maxDiskBytes) {
+            trimDisk();
+        }
+    }
+
+    // Удаляет самые старые файлы, пока каталог не уложится в ограничение
+    private synchronized void trimDisk() throws IOException {
+        if (diskBytes.get() <= maxDiskBytes) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(diskDirectory)) {
+            // Временные файлы еще пишутся другими потоками и в diskBytes не учтены
+            files = listing.filter(ConversionCacheService::isEntry)
+                    .sorted(Comparator.comparingLong(ConversionCacheService::lastModified))
+                    .toList();
+        }
+        for (Path file : files) {
+            if (diskBytes.get() <= maxDiskBytes) {
+                break;
+            }
+            long size = sizeOf(file);
+            if (Files.deleteIfExists(file)) {
+                diskBytes.addAndGet(-size);
+                diskEvictions.increment();
+            }
+        }
+    }
+
+    private Path diskPath(CacheKey key) {
+        return diskDirectory.resolve(key.contentHash() + "-" + key.options().fingerprint());
+    }
+
+    private static boolean isEntry(Path path) {
+        return !path.getFileName().toString().endsWith(TEMPORARY_SUFFIX);
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> load) throws IOException {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            // Ожидающие получают то же исключение, что и загрузивший поток, а не обертку
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        byte[] load() throws IOException;
+    }
+
+    public record CacheKey(String contentHash, ConversionOptions options) {
+    }
+
+    public record Stats(long heapHits, long diskHits, long misses, long sharedLoads,
+                        long heapEvictions, long diskEvictions, long heapBytes, long diskBytes) {
+    }
+}
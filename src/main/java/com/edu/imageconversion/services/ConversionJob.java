@@ -0,0 +1,134 @@
+package com.edu.imageconversion.services;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Состояние асинхронной задачи конвертации; изменяется воркером задачи, читается запросами статуса
+public class ConversionJob {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String id;
+    private final Path directory;
+    private final String format;
+    private final float quality;
+    private final int compressionLevel;
+    private final int maxWidth;
+    private final int maxHeight;
+    private final BackgroundRemovalMode mode;
+    private final List<String> fileNames;
+    private final AtomicIntegerArray convertedFiles;
+    private final AtomicInteger convertedCount = new AtomicInteger();
+    private final Instant createdAt = Instant.now();
+
+    private volatile State state = State.QUEUED;
+    private volatile String error;
+    private volatile Instant finishedAt;
+
+    ConversionJob(String id, Path directory, String format, float quality, int compressionLevel, int maxWidth,
+                  int maxHeight, BackgroundRemovalMode mode, List<String> fileNames) {
+        this.id = id;
+        this.directory = directory;
+        this.format = format;
+        this.quality = quality;
+        this.compressionLevel = compressionLevel;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.mode = mode;
+        this.fileNames = List.copyOf(fileNames);
+        this.convertedFiles = new AtomicIntegerArray(fileNames.size());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Path getResultPath() {
+        return directory.resolve("result.zip");
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    String getFormat() {
+        return format;
+    }
+
+    float getQuality() {
+        return quality;
+    }
+
+    int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    int getMaxWidth() {
+        return maxWidth;
+    }
+
+    int getMaxHeight() {
+        return maxHeight;
+    }
+
+    BackgroundRemovalMode getMode() {
+        return mode;
+    }
+
+    Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    void markRunning() {
+        state = State.RUNNING;
+    }
+
+    void markConverted(int index) {
+        if (convertedFiles.compareAndSet(index, 0, 1)) {
+            convertedCount.incrementAndGet();
+        }
+    }
+
+    void markCompleted() {
+        finishedAt = Instant.now();
+        state = State.COMPLETED;
+    }
+
+    void markFailed(String message) {
+        error = message;
+        finishedAt = Instant.now();
+        state = State.FAILED;
+    }
+
+    public Status status(Instant expiresAt) {
+        List<FileStatus> files = new ArrayList<>(fileNames.size());
+        for (int i = 0; i < fileNames.size(); i++) {
+            files.add(new FileStatus(i, fileNames.get(i), convertedFiles.get(i) == 1));
+        }
+        return new Status(id, state, fileNames.size(), convertedCount.get(), files, error, createdAt, expiresAt);
+    }
+
+    public record FileStatus(int index, String name, boolean converted) {
+    }
+
+    public record Status(String id, State state, int totalFiles, int convertedFiles, List<FileStatus> files,
+                         String error, Instant createdAt, Instant expiresAt) {
+    }
+}
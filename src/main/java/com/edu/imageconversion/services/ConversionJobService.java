@@ -0,0 +1,210 @@
+package com.edu.imageconversion.services;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Асинхронные задачи конвертации. Загруженные файлы сохраняются в каталог задачи на диске,
+ * конвертируются в фоне через обычный планировщик, а результаты сразу дописываются в ZIP-архив на диске.
+ * Завершенные задачи удаляются вместе с каталогом по истечении TTL.
+ */
+@Service
+public class ConversionJobService {
+    private static final Logger logger = LogManager.getLogger(ConversionJobService.class);
+
+    private final ImageProcessingService imageProcessingService;
+    private final ZipService zipService;
+    private final Path jobsDirectory;
+    private final Duration ttl;
+    // Места для заданий в очереди и в работе; завершенные задания, ждущие TTL, места не занимают
+    private final Semaphore jobSlots;
+    private final ExecutorService executorService;
+    private final ConcurrentHashMap<String, ConversionJob> jobs = new ConcurrentHashMap<>();
+
+    public ConversionJobService(ImageProcessingService imageProcessingService,
+                                ZipService zipService,
+                                @Value("${image.processing.jobs.directory:}") String jobsDirectory,
+                                @Value("${image.processing.jobs.ttl:1h}") Duration ttl,
+                                @Value("${image.processing.jobs.workers:2}") int workers,
+                                @Value("${image.processing.jobs.max-jobs:100}") int maxJobs) throws IOException {
+        this.imageProcessingService = imageProcessingService;
+        this.zipService = zipService;
+        this.jobsDirectory = jobsDirectory.isBlank()
+                ? Files.createTempDirectory("conversion-jobs")
+                : Files.createDirectories(Path.of(jobsDirectory));
+        this.ttl = ttl;
+        this.jobSlots = new Semaphore(maxJobs);
+        this.executorService = Executors.newFixedThreadPool(workers);
+    }
+
+    public ConversionJob submit(MultipartFile[] files, String format, float quality) throws IOException {
+        return submit(files, format, quality, PngEncoder.LEVEL_FROM_QUALITY, 0, 0, BackgroundRemovalMode.GLOBAL);
+    }
+
+    public ConversionJob submit(MultipartFile[] files, String format, float quality, int compressionLevel,
+                                int maxWidth, int maxHeight, BackgroundRemovalMode mode) throws IOException {
+        // Место занимается атомарно до сохранения файлов и освобождается, когда задание завершится
+        if (!jobSlots.tryAcquire()) {
+            throw new ConversionRejectedException(ConversionRejectedException.Reason.SATURATED, 60,
+                    "Too many conversion jobs, retry later");
+        }
+
+        String id = UUID.randomUUID().toString();
+        Path directory = null;
+        try {
+            directory = Files.createDirectory(jobsDirectory.resolve(id));
+            MultipartFile[] inputs = new MultipartFile[files.length];
+            List<String> fileNames = new ArrayList<>(files.length);
+            for (int i = 0; i < files.length; i++) {
+                // Временный файл контейнера, если он уже на диске, переносится без чтения в кучу
+                inputs[i] = SpooledMultipartFile.spool(files[i], directory.resolve("input-" + i));
+                fileNames.add(Objects.requireNonNullElse(files[i].getOriginalFilename(), "image" + (i + 1)));
+            }
+
+            ConversionJob job = new ConversionJob(id, directory, format, quality, compressionLevel, maxWidth, maxHeight,
+                    mode, fileNames);
+            jobs.put(id, job);
+            try {
+                executorService.execute(() -> run(job, inputs));
+            } catch (RejectedExecutionException e) {
+                jobs.remove(id, job);
+                throw e;
+            }
+            logger.info("Conversion job {} accepted with {} files", id, files.length);
+            return job;
+        } catch (IOException | RuntimeException e) {
+            jobSlots.release();
+            if (directory != null) {
+                FileSystemUtils.deleteRecursively(directory);
+            }
+            throw e;
+        }
+    }
+
+    public Optional<ConversionJob> find(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public ConversionJob.Status status(ConversionJob job) {
+        Instant finishedAt = job.getFinishedAt();
+        return job.status(finishedAt != null ? finishedAt.plus(ttl) : null);
+    }
+
+    public boolean delete(String id) throws IOException {
+        ConversionJob job = jobs.get(id);
+        if (job == null || job.getFinishedAt() == null) {
+            return false;
+        }
+        jobs.remove(id, job);
+        FileSystemUtils.deleteRecursively(job.getDirectory());
+        return true;
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void removeExpiredJobs() {
+        Instant now = Instant.now();
+        for (ConversionJob job : jobs.values()) {
+            Instant finishedAt = job.getFinishedAt();
+            if (finishedAt != null && finishedAt.plus(ttl).isBefore(now)) {
+                try {
+                    delete(job.getId());
+                    logger.info("Conversion job {} expired", job.getId());
+                } catch (IOException e) {
+                    logger.warn("Could not remove expired conversion job {}", job.getId(), e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    private void run(ConversionJob job, MultipartFile[] inputs) {
+        job.markRunning();
+        Path partial = job.getDirectory().resolve("result.zip.part");
+        String error = null;
+        try {
+            convertWhenAdmitted(job, inputs, partial);
+            Files.move(partial, job.getResultPath(), StandardCopyOption.ATOMIC_MOVE);
+            for (MultipartFile input : inputs) {
+                Files.deleteIfExists(((SpooledMultipartFile) input).getPath());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "Interrupted";
+        } catch (Exception e) {
+            logger.error("Conversion job {} failed", job.getId(), e);
+            error = Objects.requireNonNullElse(e.getMessage(), e.getClass().getName());
+        }
+        // Место освобождается до смены состояния: клиент, увидевший завершение, может сразу ставить новое задание
+        jobSlots.release();
+        if (error == null) {
+            job.markCompleted();
+            logger.info("Conversion job {} completed", job.getId());
+        } else {
+            job.markFailed(error);
+        }
+    }
+
+    // Задача не отклоняется при перегрузке, как синхронный запрос, а ждет и повторяет попытку
+    private void convertWhenAdmitted(ConversionJob job, MultipartFile[] inputs, Path partial)
+            throws IOException, InterruptedException {
+        while (true) {
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(partial))) {
+                ZipService.ZipStream zipStream = zipService.openZipStream(outputStream, job.getFormat());
+                imageProcessingService.convertImagesParallel(inputs, job.getFormat(), job.getQuality(),
+                        job.getCompressionLevel(), job.getMaxWidth(), job.getMaxHeight(), job.getMode(),
+                        new ConvertedImageConsumer() {
+                            @Override
+                            public void accept(int index, byte[] image) throws IOException {
+                                prepare(index, image).apply();
+                            }
+
+                            // Элемент архива сжимается в воркере, поток задания только дописывает его
+                            @Override
+                            public Prepared prepare(int index, byte[] image) {
+                                Prepared entry = zipStream.prepare(index, image);
+                                return () -> {
+                                    entry.apply();
+                                    job.markConverted(index);
+                                };
+                            }
+                        });
+                zipStream.finish();
+                return;
+            } catch (ConversionRejectedException e) {
+                if (e.getReason() != ConversionRejectedException.Reason.SATURATED) {
+                    throw e;
+                }
+                Thread.sleep(Duration.ofSeconds(e.getRetryAfterSeconds()).toMillis());
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.edu.imageconversion.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики конвертации в Micrometer: время каждого этапа (с гистограммой для перцентилей), байты на входе
+ * и на выходе, обработанные мегапиксели и отказы по причинам. Доступны через /actuator/prometheus.
+ */
+@Service
+public class ConversionMetrics {
+
+    public enum Stage {
+        READ("read"),
+        DECODE("decode"),
+        DOMINANT_COLOR("dominant_color"),
+        BACKGROUND_REMOVAL("background_removal"),
+        // Для SVG в режиме embed включает и svg_optimize
+        ENCODE("encode"),
+        SVG_OPTIMIZE("svg_optimize"),
+        ZIP("zip");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final Timer[] stageTimers;
+    private final Counter bytesIn;
+    private final Counter megapixels;
+
+    public ConversionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Stage[] stages = Stage.values();
+        stageTimers = new Timer[stages.length];
+        for (Stage stage : stages) {
+            stageTimers[stage.ordinal()] = Timer.builder("image.conversion.stage")
+                    .description("Time spent in one conversion stage per image")
+                    .tag("stage", stage.tag)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        bytesIn = Counter.builder("image.conversion.bytes.in")
+                .description("Uploaded bytes submitted for conversion")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        megapixels = Counter.builder("image.conversion.megapixels")
+                .description("Decoded megapixels")
+                .register(registry);
+    }
+
+    // Без реестра-получателя метрики никуда не публикуются (для бенчмарков и тестов)
+    public static ConversionMetrics disabled() {
+        return new ConversionMetrics(new CompositeMeterRegistry());
+    }
+
+    public void recordStage(Stage stage, long nanos) {
+        stageTimers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordInput(MultipartFile[] files) {
+        long bytes = 0;
+        for (MultipartFile file : files) {
+            bytes += file.getSize();
+        }
+        bytesIn.increment(bytes);
+    }
+
+    public void recordDecoded(BufferedImage image) {
+        megapixels.increment((double) image.getWidth() * image.getHeight() / 1_000_000);
+    }
+
+    // Считает байты результатов по формату и передает их дальше без изменений
+    public ConvertedImageConsumer countingOutput(String format, ConvertedImageConsumer consumer) {
+        Counter bytesOut = Counter.builder("image.conversion.bytes.out")
+                .description("Converted bytes produced")
+                .baseUnit(BaseUnits.BYTES)
+                .tag("format", format)
+                .register(registry);
+        return new ConvertedImageConsumer() {
+            @Override
+            public void accept(int index, byte[] image) throws IOException {
+                bytesOut.increment(image.length);
+                consumer.accept(index, image);
+            }
+
+            // Подготовка потребителя остается в воркере
+            @Override
+            public Prepared prepare(int index, byte[] image) throws IOException {
+                bytesOut.increment(image.length);
+                return consumer.prepare(index, image);
+            }
+        };
+    }
+
+    public void recordFailure(Throwable failure) {
+        Counter.builder("image.conversion.failures")
+                .description("Failed conversion requests by cause")
+                .tag("cause", cause(failure))
+                .register(registry)
+                .increment();
+    }
+
+    // Небольшой фиксированный набор причин, чтобы число рядов метрики не зависело от текста ошибок
+    static String cause(Throwable failure) {
+        Throwable e = failure;
+        // Ошибка из рабочего потока приходит обернутой в RuntimeException
+        while (e.getCause() != null && (e.getClass() == RuntimeException.class
+                || e instanceof CompletionException || e instanceof ExecutionException)) {
+            e = e.getCause();
+        }
+        if (e instanceof ConversionRejectedException rejected) {
+            return rejected.getReason().name().toLowerCase(Locale.ROOT);
+        }
+        if (e instanceof IllegalArgumentException) {
+            return "invalid_request";
+        }
+        if (e instanceof InterruptedIOException) {
+            return "interrupted";
+        }
+        if (e instanceof IOException) {
+            return "io";
+        }
+        return "internal";
+    }
+
+    // Поток, который копит время, проведенное в чтении: отделяет этап read от собственно декодирования
+    static TimedInputStream timed(InputStream inputStream) {
+        return new TimedInputStream(inputStream);
+    }
+
+    static final class TimedInputStream extends FilterInputStream {
+        private long nanos;
+
+        private TimedInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        long nanos() {
+            return nanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(b, off, len);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.skip(n);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
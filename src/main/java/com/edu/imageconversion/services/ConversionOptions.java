@@ -0,0 +1,29 @@
+package com.edu.imageconversion.services;
+
+import java.util.Locale;
+
+// Все параметры, от которых зависит результат конвертации одного изображения
+public record ConversionOptions(String format, float quality, int compressionLevel, int maxWidth, int maxHeight,
+                                int tolerance, BackgroundRemovalMode mode, int sampleStride,
+                                String encoderSettings) {
+
+    public ConversionOptions {
+        format = format.toLowerCase(Locale.ROOT);
+    }
+
+    // Каноническая строка параметров: часть ключа кэша и имени файла на диске
+    public String fingerprint() {
+        String fingerprint = format + "_q" + quality + "_c" + compressionLevel + "_t" + tolerance + "_s" + sampleStride;
+        // Ограничение размера (0 - нет) дописывается только если задано, ключи прежних результатов не меняются
+        if (maxWidth > 0 || maxHeight > 0) {
+            fingerprint += "_m" + maxWidth + "x" + maxHeight;
+        }
+        // Режим connected дописывается так же, ключи результатов прежнего режима не меняются
+        if (mode == BackgroundRemovalMode.CONNECTED) {
+            fingerprint += "_connected";
+        }
+        // Настройки кодировщика формата (подложка JPEG, векторизация и точность SVG); у PNG и WebP их нет,
+        // и ключи их прежних результатов не меняются
+        return encoderSettings.isEmpty() ? fingerprint : fingerprint + "_" + encoderSettings;
+    }
+}
@@ -0,0 +1,315 @@
+package com.edu.imageconversion.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Конвейер конвертации из трех этапов (декодирование, обработка, кодирование), у каждого свой пул потоков
+ * и своя ограниченная очередь. Этап передает следующему ссылку на свой результат без копирования; если очередь
+ * следующего этапа заполнена, поток ждет место в ней, так что медленный этап притормаживает предыдущие,
+ * а число изображений в памяти ограничено размерами пулов и очередей.
+ */
+@Service
+public class ConversionPipeline {
+
+    private final boolean enabled;
+    private final Stage decode;
+    private final Stage process;
+    private final Stage encode;
+
+    public ConversionPipeline(@Value("${image.processing.pipeline.enabled:false}") boolean enabled,
+                              @Value("${image.processing.pipeline.decode-workers:0}") int decodeWorkers,
+                              @Value("${image.processing.pipeline.process-workers:0}") int processWorkers,
+                              @Value("${image.processing.pipeline.encode-workers:0}") int encodeWorkers,
+                              @Value("${image.processing.pipeline.queue-capacity:0}") int queueCapacity) {
+        // 0 - половина ядер на этап и очередь на два изображения
+        int defaultWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int capacity = queueCapacity > 0 ? queueCapacity : 2;
+        this.enabled = enabled;
+        this.decode = enabled ? new Stage("decode", decodeWorkers > 0 ? decodeWorkers : defaultWorkers, capacity) : null;
+        this.process = enabled ? new Stage("process", processWorkers > 0 ? processWorkers : defaultWorkers, capacity) : null;
+        this.encode = enabled ? new Stage("encode", encodeWorkers > 0 ? encodeWorkers : defaultWorkers, capacity) : null;
+    }
+
+    // Конвейер выключен, конвертация идет прежним способом, например для бенчмарков отдельных этапов
+    public static ConversionPipeline disabled() {
+        return new ConversionPipeline(false, 0, 0, 0, 0);
+    }
+
+    public static ConversionPipeline withWorkers(int decodeWorkers, int processWorkers, int encodeWorkers, int queueCapacity) {
+        return new ConversionPipeline(true, decodeWorkers, processWorkers, encodeWorkers, queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Пропускает count элементов через все этапы и ждет их завершения. Шаг может вернуть null, если элемент
+     * уже обработан (например, результат взят из кэша), тогда следующие этапы для него не выполняются.
+     * Потребитель вызывается из потоков этапов в порядке готовности. После первой ошибки
+     * оставшиеся элементы пропускаются, а ошибка пробрасывается вызывающему.
+     */
+    public <D, P> void run(int count, Source<D> decodeStep, Step<D, P> processStep, Step<P, byte[]> encodeStep,
+                           ConvertedImageConsumer consumer) throws IOException {
+        Batch batch = new Batch(count);
+        int submitted = 0;
+        try {
+            while (submitted < count && !batch.failed()) {
+                int index = submitted;
+                batch.submit(decode, () -> {
+                    D decoded = decode.serve(() -> decodeStep.apply(index));
+                    if (decoded == null) {
+                        batch.done();
+                        return;
+                    }
+                    batch.submit(process, () -> {
+                        P processed = process.serve(() -> processStep.apply(index, decoded));
+                        if (processed == null) {
+                            batch.done();
+                            return;
+                        }
+                        batch.submit(encode, () -> {
+                            byte[] encoded = encode.serve(() -> encodeStep.apply(index, processed));
+                            if (encoded != null) {
+                                consumer.accept(index, encoded);
+                            }
+                            batch.done();
+                        });
+                    });
+                });
+                submitted++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.fail(new InterruptedIOException("Interrupted while submitting to conversion pipeline"));
+        } catch (RuntimeException e) {
+            batch.fail(e);
+        }
+        // Элементы, которые так и не попали в конвейер, считаются завершенными
+        for (int i = submitted; i < count; i++) {
+            batch.done();
+        }
+        batch.await();
+    }
+
+    // Одновременно в конвейере: по одному элементу на поток и по очереди у этапов обработки и кодирования
+    public int maxInFlight() {
+        if (!enabled) {
+            return 0;
+        }
+        return decode.workers + process.workers + process.capacity + encode.workers + encode.capacity;
+    }
+
+    public List<StageStats> stats() {
+        if (!enabled) {
+            return List.of();
+        }
+        return List.of(decode.stats(), process.stats(), encode.stats());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        decode.shutdown();
+        process.shutdown();
+        encode.shutdown();
+    }
+
+    @FunctionalInterface
+    public interface Source<O> {
+        O apply(int index) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Step<I, O> {
+        O apply(int index, I input) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Work<T> {
+        T call() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Снимок состояния этапа: глубина очереди, занятые потоки, число выполненных задач
+     * и среднее время обслуживания одной задачи (без ожидания в очереди).
+     */
+    public record StageStats(String name, int workers, int activeWorkers, int queueDepth, int queueCapacity,
+                             long completedTasks, double meanServiceMillis) {
+    }
+
+    private static final class Stage {
+        private final String name;
+        private final int workers;
+        private final int capacity;
+        private final BlockingQueue<Runnable> queue;
+        private final ThreadPoolExecutor executor;
+        private final AtomicInteger active = new AtomicInteger();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder serviceNanos = new LongAdder();
+
+        Stage(String name, int workers, int queueCapacity) {
+            this.name = name;
+            this.workers = workers;
+            this.capacity = queueCapacity;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, queue,
+                    threadFactory(name));
+            // Потоки запускаются сразу и забирают задачи из очереди, которую этап наполняет напрямую
+            this.executor.prestartAllCoreThreads();
+        }
+
+        // Блокирует вызывающий поток, пока в очереди этапа не освободится место
+        void submit(Item item) throws InterruptedException {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Conversion pipeline stage " + name + " is shut down");
+            }
+            queue.put(item);
+            // Остановка могла очистить очередь раньше, чем элемент в нее попал: тогда его некому выполнить
+            if (executor.isShutdown() && queue.remove(item)) {
+                item.cancel(name);
+            }
+        }
+
+        // Невыполненные элементы завершаются с ошибкой, чтобы run не ждал их бесконечно
+        void shutdown() {
+            for (Runnable item : executor.shutdownNow()) {
+                ((Item) item).cancel(name);
+            }
+        }
+
+        // Время обслуживания считается только для самого шага, без ожидания места в очереди следующего этапа
+        <T> T serve(Work<T> work) throws IOException {
+            active.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                return work.call();
+            } finally {
+                serviceNanos.add(System.nanoTime() - start);
+                completed.increment();
+                active.decrementAndGet();
+            }
+        }
+
+        StageStats stats() {
+            long tasks = completed.sum();
+            double meanMillis = tasks == 0 ? 0 : serviceNanos.sum() / 1_000_000.0 / tasks;
+            return new StageStats(name, workers, active.get(), queue.size(), capacity,
+                    tasks, meanMillis);
+        }
+
+        private static ThreadFactory threadFactory(String name) {
+            AtomicInteger counter = new AtomicInteger();
+            return runnable -> {
+                Thread thread = new Thread(runnable, "conversion-" + name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    // Задача в очереди этапа; завершает элемент ровно один раз - выполнением или отменой при остановке этапа
+    private static final class Item implements Runnable {
+        private final Batch batch;
+        private final Task task;
+
+        Item(Batch batch, Task task) {
+            this.batch = batch;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (batch.failed()) {
+                batch.done();
+                return;
+            }
+            try {
+                task.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.fail(e);
+                batch.done();
+            } catch (Throwable e) {
+                batch.fail(e);
+                batch.done();
+            }
+        }
+
+        void cancel(String stage) {
+            batch.fail(new RejectedExecutionException("Conversion pipeline stage " + stage + " is shut down"));
+            batch.done();
+        }
+    }
+
+    // Учет элементов одного вызова run: каждый элемент завершается ровно одним done(), первая ошибка сохраняется
+    private static final class Batch {
+        private final CountDownLatch remaining;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Batch(int count) {
+            this.remaining = new CountDownLatch(count);
+        }
+
+        void submit(Stage stage, Task task) throws InterruptedException {
+            stage.submit(new Item(this, task));
+        }
+
+        boolean failed() {
+            return failure.get() != null;
+        }
+
+        void done() {
+            remaining.countDown();
+        }
+
+        void fail(Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+
+        void await() throws IOException {
+            try {
+                remaining.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for conversion pipeline");
+            }
+            Throwable e = failure.get();
+            if (e instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e instanceof Error error) {
+                throw error;
+            }
+            if (e != null) {
+                throw new IOException("Conversion pipeline failed", e);
+            }
+        }
+    }
+}
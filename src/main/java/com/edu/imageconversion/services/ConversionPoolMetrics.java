@@ -0,0 +1,78 @@
+package com.edu.imageconversion.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Состояние пулов конвертации как метрики: очередь, занятые потоки и число краж в ForkJoinPool планировщика,
+ * допущенные, отклоненные и ожидающие пакеты, свободный бюджет памяти и, если конвейер включен,
+ * очередь и занятые потоки каждого его этапа. Значения снимаются при каждом опросе, на конвертацию это не влияет.
+ */
+@Component
+public class ConversionPoolMetrics implements MeterBinder {
+
+    private final ConversionScheduler conversionScheduler;
+    private final ConversionPipeline conversionPipeline;
+
+    public ConversionPoolMetrics(ConversionScheduler conversionScheduler, ConversionPipeline conversionPipeline) {
+        this.conversionScheduler = conversionScheduler;
+        this.conversionPipeline = conversionPipeline;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // executor.queued, executor.active, executor.running, executor.steals и др. с тегом name=image.conversion
+        ForkJoinPool pool = conversionScheduler.pool();
+        new ExecutorServiceMetrics(pool, "image.conversion", Tags.empty()).bindTo(registry);
+        // Внешние задачи (пакеты), которые еще не взял ни один поток пула; в executor.queued они не входят
+        Gauge.builder("image.conversion.pool.submissions.queued", pool, ForkJoinPool::getQueuedSubmissionCount)
+                .description("Batches submitted to the conversion pool and not yet started")
+                .baseUnit(BaseUnits.TASKS)
+                .register(registry);
+
+        Gauge.builder("image.conversion.batches.queued", conversionScheduler, ConversionScheduler::getQueuedBatches)
+                .description("Batches waiting for admission")
+                .register(registry);
+        FunctionCounter.builder("image.conversion.batches.admitted", conversionScheduler,
+                        ConversionScheduler::getAdmittedBatches)
+                .description("Batches admitted for conversion")
+                .register(registry);
+        FunctionCounter.builder("image.conversion.batches.rejected", conversionScheduler,
+                        ConversionScheduler::getRejectedBatches)
+                .description("Batches rejected as saturated or too large")
+                .register(registry);
+        Gauge.builder("image.conversion.memory.available", conversionScheduler,
+                        ConversionScheduler::getAvailableMemoryBytes)
+                .description("Unreserved decoded-pixel memory budget")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+
+        if (conversionPipeline.isEnabled()) {
+            for (ConversionPipeline.StageStats stage : conversionPipeline.stats()) {
+                String name = stage.name();
+                pipelineGauge(registry, "image.conversion.pipeline.queued", name, ConversionPipeline.StageStats::queueDepth);
+                pipelineGauge(registry, "image.conversion.pipeline.active", name, ConversionPipeline.StageStats::activeWorkers);
+            }
+        }
+    }
+
+    private void pipelineGauge(MeterRegistry registry, String metric, String stageName,
+                               ToDoubleFunction<ConversionPipeline.StageStats> value) {
+        Gauge.builder(metric, conversionPipeline, pipeline -> pipeline.stats().stream()
+                        .filter(stage -> stage.name().equals(stageName))
+                        .mapToDouble(value)
+                        .findFirst()
+                        .orElse(0))
+                .tag("stage", stageName)
+                .register(registry);
+    }
+}
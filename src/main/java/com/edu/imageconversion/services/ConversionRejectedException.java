@@ -0,0 +1,28 @@
+package com.edu.imageconversion.services;
+
+// Пакет не принят в обработку: планировщик перегружен или пакет не помещается в бюджет памяти целиком
+public class ConversionRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        SATURATED,
+        TOO_LARGE
+    }
+
+    private final Reason reason;
+    private final long retryAfterSeconds;
+
+    public ConversionRejectedException(Reason reason, long retryAfterSeconds, String message) {
+        super(message);
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
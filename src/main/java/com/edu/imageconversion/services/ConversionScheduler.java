@@ -0,0 +1,405 @@
+package com.edu.imageconversion.services;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Планировщик конвертации: пул воркеров фиксированного размера и допуск пакетов к обработке.
+ * Пакет допускается, если есть свободный слот и бюджет памяти под декодированные изображения.
+ * Иначе он ждет в ограниченной очереди не дольше queue-timeout, а при переполнении очереди
+ * сразу получает отказ с рекомендацией повторить запрос позже.
+ */
+@Service
+public class ConversionScheduler {
+    private static final Logger logger = LogManager.getLogger(ConversionScheduler.class);
+
+    // Исходный растр и ARGB-результат, по 4 байта на пиксель
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int RASTERS_PER_IMAGE = 2;
+
+    private final ForkJoinPool pool;
+    // Потоки задач, которые только раздают работу и ждут ее (конвейер), по потоку на пакет
+    private final ExecutorService coordinators = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore batchSlots;
+    private final Semaphore memoryBudget;
+    private final int memoryBudgetKb;
+    private final int maxQueuedBatches;
+    private final long queueTimeoutNanos;
+    private final long retryAfterSeconds;
+
+    private final AtomicInteger queuedBatches = new AtomicInteger();
+    private final LongAdder admittedBatches = new LongAdder();
+    private final LongAdder rejectedBatches = new LongAdder();
+
+    public ConversionScheduler(@Value("${image.processing.scheduler.workers:0}") int workers,
+                               @Value("${image.processing.scheduler.max-active-batches:0}") int maxActiveBatches,
+                               @Value("${image.processing.scheduler.max-queued-batches:16}") int maxQueuedBatches,
+                               @Value("${image.processing.scheduler.queue-timeout:2s}") Duration queueTimeout,
+                               @Value("${image.processing.scheduler.max-in-flight-memory:0B}") DataSize maxInFlightMemory,
+                               @Value("${image.processing.scheduler.retry-after:5s}") Duration retryAfter) {
+        int parallelism = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        int activeBatches = maxActiveBatches > 0 ? maxActiveBatches : parallelism * 2;
+        // По умолчанию под декодированные изображения отводится половина кучи
+        long budgetBytes = maxInFlightMemory.toBytes() > 0 ? maxInFlightMemory.toBytes() : Runtime.getRuntime().maxMemory() / 2;
+
+        this.pool = new ForkJoinPool(parallelism);
+        this.batchSlots = new Semaphore(activeBatches, true);
+        this.memoryBudgetKb = (int) Math.min(Integer.MAX_VALUE, budgetBytes / 1024);
+        this.memoryBudget = new Semaphore(memoryBudgetKb, true);
+        this.maxQueuedBatches = maxQueuedBatches;
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+
+        logger.info("Conversion scheduler: {} workers, {} active batches, {} MB in-flight budget",
+                parallelism, activeBatches, memoryBudgetKb / 1024);
+    }
+
+    // Планировщик с настройками по умолчанию, например для бенчмарков
+    public static ConversionScheduler withWorkers(int workers) {
+        return new ConversionScheduler(workers, 0, 16, Duration.ofSeconds(2), DataSize.ofBytes(0), Duration.ofSeconds(5));
+    }
+
+    public ForkJoinPool pool() {
+        return pool;
+    }
+
+    /**
+     * Допускает пакет к обработке. concurrency - сколько изображений пакета декодируется одновременно:
+     * резервируется память под столько самых крупных изображений.
+     */
+    public Admission admit(MultipartFile[] files, int concurrency) throws IOException {
+        return admit(files, concurrency, 0, 0);
+    }
+
+    // То же для изображений, которые декодируются уменьшенными до maxWidth x maxHeight (0 - без ограничения)
+    public Admission admit(MultipartFile[] files, int concurrency, int maxWidth, int maxHeight) throws IOException {
+        long estimate = estimateMemory(files, concurrency, maxWidth, maxHeight);
+        int permits = (int) Math.min(Integer.MAX_VALUE, (estimate + 1023) / 1024);
+        if (permits > memoryBudgetKb) {
+            rejectedBatches.increment();
+            throw new ConversionRejectedException(ConversionRejectedException.Reason.TOO_LARGE, retryAfterSeconds,
+                    "Batch needs about " + estimate / (1024 * 1024) + " MB of decoded pixels, the limit is "
+                            + memoryBudgetKb / 1024 + " MB");
+        }
+
+        if (tryAcquire(permits, 0)) {
+            return admitted(permits);
+        }
+        if (queuedBatches.incrementAndGet() > maxQueuedBatches) {
+            queuedBatches.decrementAndGet();
+            throw saturated();
+        }
+        try {
+            if (tryAcquire(permits, queueTimeoutNanos)) {
+                return admitted(permits);
+            }
+        } finally {
+            queuedBatches.decrementAndGet();
+        }
+        throw saturated();
+    }
+
+    // Выполняет задачу в пуле и ждет ее завершения, пробрасывая IOException без обертки
+    public <T> T execute(Callable<T> task) throws IOException {
+        return await(pool.submit(task));
+    }
+
+    /**
+     * Выполняет в пуле задачу, которая отдает результаты потребителю. Потребитель вызывается в вызывающем
+     * потоке (потоке запроса), виртуальном или нет: воркер пула передает ему результат и сразу берется
+     * за следующее изображение, а запись ответа медленному клиенту ждет поток запроса, не воркер.
+     * Потока запроса ждут не больше capacity результатов (допущенная параллельность пакета): если клиент
+     * отстал сильнее, воркер ждет место в очереди, а пул на это время добавляет компенсирующий поток.
+     */
+    public void execute(ResultTask task, int capacity, ConvertedImageConsumer consumer) throws IOException {
+        relay(pool, task, capacity, consumer);
+    }
+
+    /**
+     * То же для задачи, которая сама только раздает работу другим пулам и ждет ее (конвейер): она выполняется
+     * в отдельном виртуальном потоке и не занимает воркер пула, которому могут понадобиться ее же подзадачи.
+     */
+    public void executeBlocking(ResultTask task, int capacity, ConvertedImageConsumer consumer) throws IOException {
+        relay(coordinators, task, capacity, consumer);
+    }
+
+    private static void relay(ExecutorService executor, ResultTask task, int capacity,
+                              ConvertedImageConsumer consumer) throws IOException {
+        ResultRelay relay = new ResultRelay(capacity, consumer);
+        Future<Void> future = executor.submit(() -> {
+            try {
+                task.run(relay);
+            } finally {
+                relay.close();
+            }
+            return null;
+        });
+        try {
+            relay.drain();
+        } catch (IOException | RuntimeException e) {
+            // Клиент ушел: задача прекращает работу на следующем результате, а допуск пакета
+            // освобождается только после того, как воркеры отпустят его изображения. Очередь
+            // вычерпывается до конца, чтобы воркеры, ждущие в ней места, не остались заблокированными
+            relay.abandon();
+            try {
+                await(future);
+            } catch (IOException | RuntimeException ignored) {
+            }
+            throw e;
+        }
+        await(future);
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for conversion");
+        } catch (ExecutionException e) {
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException ioException) {
+                    throw ioException;
+                }
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Conversion failed", e.getCause());
+        }
+    }
+
+    // Задача пакета, которая отдает каждый готовый результат потребителю
+    @FunctionalInterface
+    public interface ResultTask {
+        void run(ConvertedImageConsumer consumer) throws IOException;
+    }
+
+    // Очередь результатов от воркеров к потоку запроса, ограниченная допущенной параллельностью пакета:
+    // сжатых результатов в ней не больше, чем изображений пакета декодируется одновременно.
+    // Воркер сам выполняет подготовку потребителя (prepare), поток запроса - только ее итог
+    private static final class ResultRelay implements ConvertedImageConsumer {
+        private static final Prepared END = () -> {
+        };
+
+        private final BlockingQueue<Prepared> results;
+        private final ConvertedImageConsumer consumer;
+        private volatile boolean abandoned;
+
+        ResultRelay(int capacity, ConvertedImageConsumer consumer) {
+            this.results = new ArrayBlockingQueue<>(Math.max(1, capacity));
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(int index, byte[] image) throws IOException {
+            if (abandoned) {
+                throw new IOException("Conversion results are no longer consumed");
+            }
+            Prepared prepared = consumer.prepare(index, image);
+            try {
+                put(prepared);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while relaying conversion results");
+            }
+        }
+
+        // Конец задачи доставляется всегда: без него поток запроса ждал бы результатов вечно
+        void close() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Поток запроса перестает отдавать результаты и выбрасывает оставшиеся до конца задачи
+        void abandon() {
+            abandoned = true;
+            boolean interrupted = Thread.interrupted();
+            while (true) {
+                try {
+                    if (results.take() == END) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Воркер ForkJoinPool, ждущий места в очереди, замещается компенсирующим потоком
+        private void put(Prepared prepared) throws InterruptedException {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    results.put(prepared);
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return results.offer(prepared);
+                }
+            });
+        }
+
+        void drain() throws IOException {
+            try {
+                for (Prepared prepared = results.take(); prepared != END; prepared = results.take()) {
+                    prepared.apply();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for conversion results");
+            }
+        }
+    }
+
+    public int getQueuedBatches() {
+        return queuedBatches.get();
+    }
+
+    public long getAdmittedBatches() {
+        return admittedBatches.sum();
+    }
+
+    public long getRejectedBatches() {
+        return rejectedBatches.sum();
+    }
+
+    public long getAvailableMemoryBytes() {
+        return (long) memoryBudget.availablePermits() * 1024;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+        coordinators.shutdown();
+    }
+
+    private boolean tryAcquire(int permits, long timeoutNanos) throws InterruptedIOException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        try {
+            if (!batchSlots.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+            if (memoryBudget.tryAcquire(permits, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+            batchSlots.release();
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for admission");
+        }
+    }
+
+    private Admission admitted(int permits) {
+        admittedBatches.increment();
+        return new Admission(permits);
+    }
+
+    private ConversionRejectedException saturated() {
+        rejectedBatches.increment();
+        return new ConversionRejectedException(ConversionRejectedException.Reason.SATURATED, retryAfterSeconds,
+                "Image conversion is saturated, retry in " + retryAfterSeconds + " s");
+    }
+
+    private static long estimateMemory(MultipartFile[] files, int concurrency, int maxWidth, int maxHeight) throws IOException {
+        long[] footprints = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            footprints[i] = estimateFootprint(files[i], maxWidth, maxHeight);
+        }
+        // Одновременно в памяти не больше concurrency изображений - берем самые крупные
+        Arrays.sort(footprints);
+        long total = 0;
+        for (int i = footprints.length - 1; i >= Math.max(0, footprints.length - concurrency); i--) {
+            total += footprints[i];
+        }
+        return total;
+    }
+
+    // Размеры берутся из заголовка изображения, без декодирования пикселей
+    private static long estimateFootprint(MultipartFile file, int maxWidth, int maxHeight) throws IOException {
+        Dimension size;
+        ByteBuffer mapped;
+        if (file instanceof SpooledMultipartFile spooled && (mapped = spooled.mapped()) != null) {
+            size = ImageCodecs.readSize(mapped);
+        } else {
+            try (InputStream inputStream = file.getInputStream()) {
+                size = ImageCodecs.readSize(inputStream);
+            }
+        }
+        // Неизвестный формат не декодируется и памяти под пиксели не займет
+        if (size == null) {
+            return 0;
+        }
+        if (maxWidth <= 0 && maxHeight <= 0) {
+            return (long) size.width * size.height * BYTES_PER_PIXEL * RASTERS_PER_IMAGE;
+        }
+        // Прореженный при чтении растр, затем уменьшенная копия и ARGB-результат целевого размера
+        Dimension target = ImageResizer.fitWithin(size.width, size.height, maxWidth, maxHeight);
+        int subsampling = ImageResizer.subsampling(size.width, size.height, target);
+        long decoded = (long) ceilDiv(size.width, subsampling) * ceilDiv(size.height, subsampling);
+        return (decoded + (long) target.width * target.height * RASTERS_PER_IMAGE) * BYTES_PER_PIXEL;
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    public class Admission implements AutoCloseable {
+        private final int permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Admission(int permits) {
+            this.permits = permits;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                memoryBudget.release(permits);
+                batchSlots.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.edu.imageconversion.services;
+
+import java.io.IOException;
+
+// Получатель сконвертированных изображений; index - позиция исходного файла в запросе
+@FunctionalInterface
+public interface ConvertedImageConsumer {
+
+    void accept(int index, byte[] image) throws IOException;
+
+    /**
+     * Подготовка результата в воркере, до передачи его потоку запроса (например, сжатие элемента архива).
+     * Возвращенное действие выполняется потоком запроса; по умолчанию вся работа остается в accept.
+     */
+    default Prepared prepare(int index, byte[] image) throws IOException {
+        return () -> accept(index, image);
+    }
+
+    @FunctionalInterface
+    interface Prepared {
+        void apply() throws IOException;
+    }
+}
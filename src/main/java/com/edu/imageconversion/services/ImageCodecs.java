@@ -0,0 +1,310 @@
+package com.edu.imageconversion.services;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Переиспользуемые по потокам ImageReader, ImageWriter и буферы результата. Вместо поиска в реестре ImageIO
+ * на каждый файл поток сначала проверяет уже созданные им читатели, а буфер результата не растет заново
+ * копированием для каждого изображения. Объекты берутся из пула потока и возвращаются в него после работы,
+ * поэтому вложенный вызов в том же потоке (задача, украденная ForkJoinPool) получает свой экземпляр.
+ * Виртуальные потоки (обработка запросов) живут один запрос, и пул в них не переиспользуется:
+ * там объекты создаются на вызов и сразу освобождаются, без ThreadLocal.
+ */
+final class ImageCodecs {
+
+    private static final int MAX_IDLE_READERS = 4;
+    // Два буфера на поток: для результата и для промежуточного документа (например, SVG перед оптимизацией)
+    private static final int MAX_IDLE_BUFFERS = 2;
+    private static final int MIN_BUFFER_SIZE = 64 * 1024;
+    // Буфер больше этого размера не удерживается, если недавние результаты заметно меньше
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<ArrayDeque<ImageReader>> readers = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final ThreadLocal<Map<String, ArrayDeque<ImageWriter>>> writers = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<BufferSlot> buffers = ThreadLocal.withInitial(BufferSlot::new);
+
+    static {
+        // Потоки ImageIO не кэшируют данные во временных файлах: загрузки читаются из отображенного в память
+        // файла (ByteBufferImageInputStream), а MemoryCacheImageInputStream здесь и так задан явно
+        ImageIO.setUseCache(false);
+    }
+
+    private ImageCodecs() {
+    }
+
+    // Аналог ImageIO.read: null, если формат не распознан
+    static BufferedImage read(InputStream inputStream) throws IOException {
+        return read(inputStream, 0, 0);
+    }
+
+    /**
+     * Читает изображение, вписанное в maxWidth x maxHeight (0 - без ограничения). Читатель декодирует только
+     * каждую s-ю строку и столбец (прореживание источника), поэтому полноразмерный растр не создается;
+     * оставшееся уменьшение меньше чем вдвое делает ImageResizer.
+     */
+    static BufferedImage read(InputStream inputStream, int maxWidth, int maxHeight) throws IOException {
+        try (ImageInputStream imageInputStream = new MemoryCacheImageInputStream(inputStream)) {
+            return read(imageInputStream, maxWidth, maxHeight);
+        }
+    }
+
+    // То же из буфера (отображенного в память файла) без промежуточного кэша потока
+    static BufferedImage read(ByteBuffer buffer, int maxWidth, int maxHeight) throws IOException {
+        try (ImageInputStream imageInputStream = new ByteBufferImageInputStream(buffer)) {
+            return read(imageInputStream, maxWidth, maxHeight);
+        }
+    }
+
+    private static BufferedImage read(ImageInputStream imageInputStream, int maxWidth, int maxHeight) throws IOException {
+        ImageReader reader = borrowReader(imageInputStream);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            reader.setInput(imageInputStream, true, true);
+            ImageReadParam param = reader.getDefaultReadParam();
+            Dimension target = null;
+            if (maxWidth > 0 || maxHeight > 0) {
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                target = ImageResizer.fitWithin(width, height, maxWidth, maxHeight);
+                int subsampling = ImageResizer.subsampling(width, height, target);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+            }
+            BufferedImage image = reader.read(0, param);
+            if (target != null && (image.getWidth() != target.width || image.getHeight() != target.height)) {
+                image = ImageResizer.resize(image, target.width, target.height);
+            }
+            return image;
+        } finally {
+            returnReader(reader);
+        }
+    }
+
+    // Размеры первого изображения из заголовка, без декодирования пикселей; null, если формат не распознан
+    static Dimension readSize(InputStream inputStream) throws IOException {
+        try (ImageInputStream imageInputStream = new MemoryCacheImageInputStream(inputStream)) {
+            return readSize(imageInputStream);
+        }
+    }
+
+    static Dimension readSize(ByteBuffer buffer) throws IOException {
+        try (ImageInputStream imageInputStream = new ByteBufferImageInputStream(buffer)) {
+            return readSize(imageInputStream);
+        }
+    }
+
+    private static Dimension readSize(ImageInputStream imageInputStream) throws IOException {
+        ImageReader reader = borrowReader(imageInputStream);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            reader.setInput(imageInputStream, true, true);
+            return new Dimension(reader.getWidth(0), reader.getHeight(0));
+        } finally {
+            returnReader(reader);
+        }
+    }
+
+    // Есть ли в реестре ImageIO писатель формата (например, webp появляется только с плагином в classpath)
+    static boolean canWrite(String formatName) {
+        return ImageIO.getImageWritersByFormatName(formatName).hasNext();
+    }
+
+    /**
+     * Пишет изображение писателем ImageIO из пула потока. Параметры записи настраивает settings;
+     * после записи писатель сбрасывается и возвращается в пул.
+     */
+    static void write(BufferedImage image, String formatName, Consumer<ImageWriteParam> settings,
+                      OutputStream outputStream) throws IOException {
+        ArrayDeque<ImageWriter> idle = pooled()
+                ? writers.get().computeIfAbsent(formatName, name -> new ArrayDeque<>())
+                : null;
+        ImageWriter writer = idle == null ? null : idle.poll();
+        if (writer == null) {
+            Iterator<ImageWriter> available = ImageIO.getImageWritersByFormatName(formatName);
+            if (!available.hasNext()) {
+                throw new IOException("No ImageIO writer for format " + formatName);
+            }
+            writer = available.next();
+        }
+        try (ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(outputStream)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            settings.accept(param);
+            writer.setOutput(imageOutputStream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            if (idle != null) {
+                writer.reset();
+                idle.push(writer);
+            } else {
+                writer.dispose();
+            }
+        }
+    }
+
+    // Буфер результата потока; после toByteArray() его нужно вернуть через release()
+    static OutputBuffer borrowBuffer() {
+        return (pooled() ? buffers.get() : new BufferSlot()).borrow();
+    }
+
+    private static ImageReader borrowReader(ImageInputStream imageInputStream) throws IOException {
+        if (pooled()) {
+            ArrayDeque<ImageReader> idle = readers.get();
+            // Сначала читатели, уже созданные этим потоком: проверка сигнатуры без обхода реестра
+            for (Iterator<ImageReader> iterator = idle.iterator(); iterator.hasNext(); ) {
+                ImageReader reader = iterator.next();
+                if (canDecode(reader.getOriginatingProvider(), imageInputStream)) {
+                    iterator.remove();
+                    return reader;
+                }
+            }
+        }
+        Iterator<ImageReader> found = ImageIO.getImageReaders(imageInputStream);
+        return found.hasNext() ? found.next() : null;
+    }
+
+    // Как фильтр реестра ImageIO: ошибка чтения сигнатуры (например, слишком короткий файл) означает "не подходит"
+    private static boolean canDecode(ImageReaderSpi provider, ImageInputStream imageInputStream) throws IOException {
+        if (provider == null) {
+            return false;
+        }
+        imageInputStream.mark();
+        try {
+            return provider.canDecodeInput(imageInputStream);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            imageInputStream.reset();
+        }
+    }
+
+    private static void returnReader(ImageReader reader) {
+        if (!pooled()) {
+            reader.dispose();
+            return;
+        }
+        reader.reset();
+        ArrayDeque<ImageReader> idle = readers.get();
+        if (idle.size() < MAX_IDLE_READERS) {
+            idle.push(reader);
+        } else {
+            reader.dispose();
+        }
+    }
+
+    // Пулы потока имеют смысл только в долгоживущих потоках платформы (воркеры планировщика и конвейера)
+    private static boolean pooled() {
+        return !Thread.currentThread().isVirtual();
+    }
+
+    // Свободные буферы потока и средний размер недавних результатов, по которому они заранее выделяются
+    private static final class BufferSlot {
+        private final ArrayDeque<OutputBuffer> idle = new ArrayDeque<>(MAX_IDLE_BUFFERS);
+        private int averageSize = MIN_BUFFER_SIZE;
+
+        OutputBuffer borrow() {
+            OutputBuffer buffer = idle.poll();
+            if (buffer == null) {
+                buffer = new OutputBuffer(this, averageSize + averageSize / 4);
+            }
+            return buffer;
+        }
+
+        void release(OutputBuffer buffer, int size) {
+            averageSize = Math.max(MIN_BUFFER_SIZE, averageSize - averageSize / 8 + size / 8);
+            if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE && buffer.capacity() > averageSize * 4) {
+                buffer = new OutputBuffer(this, averageSize + averageSize / 4);
+            }
+            buffer.reset();
+            if (idle.size() < MAX_IDLE_BUFFERS) {
+                idle.push(buffer);
+            }
+        }
+    }
+
+    /**
+     * Несинхронизированный аналог ByteArrayOutputStream: переиспользуется между изображениями,
+     * поэтому растет копированием только тогда, когда результат больше всех предыдущих.
+     */
+    static final class OutputBuffer extends OutputStream {
+        private final BufferSlot slot;
+        private byte[] buffer;
+        private int count;
+
+        private OutputBuffer(BufferSlot slot, int capacity) {
+            this.slot = slot;
+            this.buffer = new byte[capacity];
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, count);
+        }
+
+        // Записанные данные для чтения без копирования; действительны до release()
+        InputStream asInputStream() {
+            return new ByteArrayInputStream(buffer, 0, count);
+        }
+
+        int size() {
+            return count;
+        }
+
+        void release() {
+            slot.release(this, count);
+        }
+
+        private int capacity() {
+            return buffer.length;
+        }
+
+        private void reset() {
+            count = 0;
+        }
+
+        private void ensureCapacity(int required) {
+            if (required > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.edu.imageconversion.services;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Кодировщик одного растрового выходного формата. Реализации - бины Spring, их собирает ImageEncoderRegistry;
+ * чтобы добавить формат, достаточно объявить еще один такой бин.
+ */
+public interface ImageEncoder {
+
+    // Имя формата в параметре format
+    String format();
+
+    String extension();
+
+    String mediaType();
+
+    // Формат может зависеть от плагина ImageIO, которого нет в classpath
+    default boolean isAvailable() {
+        return true;
+    }
+
+    // Настройки кодировщика, от которых зависят байты результата, кроме quality и уровня: часть ключа кэша
+    default String settings() {
+        return "";
+    }
+
+    // Уровень усилия сжатия 0-9 для compressionLevel = -1 (не задан явно)
+    int resolveLevel(float quality, int compressionLevel);
+
+    void encode(BufferedImage image, float quality, int level, OutputStream outputStream) throws IOException;
+}
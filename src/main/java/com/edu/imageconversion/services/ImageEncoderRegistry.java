@@ -0,0 +1,129 @@
+package com.edu.imageconversion.services;
+
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Доступные растровые кодировщики по имени формата (и расширению: jpg - то же, что jpeg) и выбор формата
+ * по заголовку Accept для format=auto. SVG сюда не входит: его кодирует ImageProcessingService.
+ */
+@Service
+public class ImageEncoderRegistry {
+
+    // При равном q и одинаково явном упоминании в Accept: PNG - прежний формат по умолчанию, затем WebP
+    private static final List<String> PREFERENCE = List.of("png", "webp", "jpeg");
+    private static final String DEFAULT_FORMAT = "png";
+
+    private final Map<String, ImageEncoder> encoders = new LinkedHashMap<>();
+    private final List<ImageEncoder> negotiable = new ArrayList<>();
+
+    public ImageEncoderRegistry(List<ImageEncoder> encoders) {
+        for (ImageEncoder encoder : encoders) {
+            if (!encoder.isAvailable()) {
+                continue;
+            }
+            this.encoders.putIfAbsent(encoder.format(), encoder);
+            this.encoders.putIfAbsent(encoder.extension(), encoder);
+            negotiable.add(encoder);
+        }
+        negotiable.sort(Comparator.comparingInt(ImageEncoderRegistry::preference));
+    }
+
+    public static ImageEncoderRegistry defaults(ConversionScheduler conversionScheduler, boolean tileParallel) {
+        return new ImageEncoderRegistry(List.of(
+                new PngImageEncoder(conversionScheduler, tileParallel),
+                new JpegImageEncoder("#ffffff", 4),
+                new WebpImageEncoder(6)));
+    }
+
+    // null, если формат неизвестен или его кодировщик недоступен
+    public ImageEncoder find(String format) {
+        return format == null ? null : encoders.get(format.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Формат для format=auto: доступный формат с наибольшим q в Accept. При равном q побеждает формат,
+     * названный явно (image/webp), а не через image/* или любой тип. Если ни один формат не подходит
+     * или заголовка нет, остается PNG.
+     */
+    public String negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return DEFAULT_FORMAT;
+        }
+        List<MediaRange> ranges = MediaRange.parseAll(accept);
+        ImageEncoder best = null;
+        MediaRange bestMatch = null;
+        for (ImageEncoder encoder : negotiable) {
+            MediaRange match = MediaRange.bestMatch(ranges, encoder.mediaType());
+            if (match == null || match.quality() <= 0) {
+                continue;
+            }
+            if (bestMatch == null || match.quality() > bestMatch.quality()
+                    || match.quality() == bestMatch.quality() && match.specificity() > bestMatch.specificity()) {
+                best = encoder;
+                bestMatch = match;
+            }
+        }
+        return best == null ? DEFAULT_FORMAT : best.format();
+    }
+
+    private static int preference(ImageEncoder encoder) {
+        int index = PREFERENCE.indexOf(encoder.format());
+        return index < 0 ? PREFERENCE.size() : index;
+    }
+
+    // Элемент заголовка Accept: тип, подтип (* - любой) и q
+    record MediaRange(String type, String subtype, double quality) {
+
+        static List<MediaRange> parseAll(String accept) {
+            List<MediaRange> ranges = new ArrayList<>();
+            for (String element : accept.split(",")) {
+                String[] parts = element.split(";");
+                String[] mediaType = parts[0].trim().toLowerCase(Locale.ROOT).split("/", 2);
+                if (mediaType.length != 2 || mediaType[0].isEmpty() || mediaType[1].isEmpty()) {
+                    continue;
+                }
+                double quality = 1;
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            quality = Double.parseDouble(parameter.substring(2));
+                        } catch (NumberFormatException e) {
+                            quality = 0;
+                        }
+                    }
+                }
+                ranges.add(new MediaRange(mediaType[0], mediaType[1], quality));
+            }
+            return ranges;
+        }
+
+        // Самый конкретный элемент, под который подходит тип: image/webp точнее image/*, а тот точнее */*
+        static MediaRange bestMatch(List<MediaRange> ranges, String mediaType) {
+            String[] parts = mediaType.split("/", 2);
+            MediaRange best = null;
+            for (MediaRange range : ranges) {
+                if (range.includes(parts[0], parts[1]) && (best == null || range.specificity() > best.specificity())) {
+                    best = range;
+                }
+            }
+            return best;
+        }
+
+        boolean includes(String type, String subtype) {
+            return ("*".equals(this.type) || this.type.equals(type))
+                    && ("*".equals(this.subtype) || this.subtype.equals(subtype));
+        }
+
+        int specificity() {
+            return ("*".equals(type) ? 0 : 1) + ("*".equals(subtype) ? 0 : 1);
+        }
+    }
+}
@@ -1,23 +1,21 @@
 package com.edu.imageconversion.services;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
@@ -28,26 +26,78 @@ import org.w3c.dom.Document;
 
 @Service
 public class ImageProcessingService {
+    // Прореживание углов включается только для достаточно крупных полей
+    private static final int MIN_STRIDED_MARGIN = 64;
+
     private final SvgOptimizationService svgOptimizationService;
+    private final SvgVectorizer svgVectorizer;
+    private final ImageEncoderRegistry imageEncoders;
+    private final ConversionCacheService conversionCache;
+    private final ConversionScheduler conversionScheduler;
+    private final ConversionPipeline conversionPipeline;
+    private final ConversionMetrics metrics;
+    private final UploadSpoolService uploadSpool;
     private final ForkJoinPool forkJoinPool;
-
-    public ImageProcessingService(SvgOptimizationService svgOptimizationService) {
+    private final boolean tileParallel;
+    private final int sampleStride;
+    // Гистограмма переиспользуется потоком от изображения к изображению
+    private final ThreadLocal<ColorHistogram> histograms = ThreadLocal.withInitial(ColorHistogram::new);
+    private final ThreadLocal<int[]> rows = ThreadLocal.withInitial(() -> new int[0]);
+
+    public ImageProcessingService(SvgOptimizationService svgOptimizationService,
+                                  SvgVectorizer svgVectorizer,
+                                  ImageEncoderRegistry imageEncoders,
+                                  ConversionCacheService conversionCache,
+                                  ConversionScheduler conversionScheduler,
+                                  ConversionPipeline conversionPipeline,
+                                  ConversionMetrics metrics,
+                                  UploadSpoolService uploadSpool,
+                                  @Value("${image.processing.tile-parallel:true}") boolean tileParallel,
+                                  @Value("${image.processing.dominant-color.sample-stride:1}") int sampleStride) {
         this.svgOptimizationService = svgOptimizationService;
-        this.forkJoinPool = new ForkJoinPool();
+        this.svgVectorizer = svgVectorizer;
+        this.imageEncoders = imageEncoders;
+        this.conversionCache = conversionCache;
+        this.conversionScheduler = conversionScheduler;
+        this.conversionPipeline = conversionPipeline;
+        this.metrics = metrics;
+        this.uploadSpool = uploadSpool;
+        this.forkJoinPool = conversionScheduler.pool();
+        this.tileParallel = tileParallel;
+        this.sampleStride = Math.max(1, sampleStride);
     }
 
-    private Color findDominantColor(BufferedImage image, int margin) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        ConcurrentHashMap<Color, AtomicInteger> colorCount = new ConcurrentHashMap<>();
+    Color findDominantColor(BufferedImage image, int margin) {
+        int stride = margin >= MIN_STRIDED_MARGIN ? sampleStride : 1;
+
+        // Строки углов сразу попадают в гистограмму потока, массивы выборок не строятся
+        ColorHistogram histogram = histograms.get();
+        histogram.clear();
+        int[] row = rowBuffer(margin);
+        countCorner(image, margin, stride, false, false, row, histogram);
+        countCorner(image, margin, stride, true, false, row, histogram);
+        countCorner(image, margin, stride, false, true, row, histogram);
+        countCorner(image, margin, stride, true, true, row, histogram);
+        if (histogram.size() == 0) {
+            return Color.WHITE;
+        }
 
-        for (int y = 0; y < margin; y++) {
-            for (int x = 0; x < margin; x++) {
-                addColorCount(colorCount, new Color(image.getRGB(x, y)));
-                addColorCount(colorCount, new Color(image.getRGB(width - 1 - x, y)));
-                addColorCount(colorCount, new Color(image.getRGB(x, height - 1 - y)));
-                addColorCount(colorCount, new Color(image.getRGB(width - 1 - x, height - 1 - y)));
-            }
+        int best = histogram.uniqueMaximum();
+        if (best >= 0) {
+            return new Color(histogram.color(best));
+        }
+        // При равенстве счетчиков победителя определяет порядок обхода ConcurrentHashMap,
+        // поэтому в этом редком случае повторяем исходный подсчет
+        return findDominantColorByMap(sampleCorners(image, margin, stride));
+    }
+
+    private Color findDominantColorByMap(int[][] corners) {
+        ConcurrentHashMap<Color, AtomicInteger> colorCount = new ConcurrentHashMap<>();
+        for (int i = 0; i < corners[0].length; i++) {
+            addColorCount(colorCount, new Color(corners[0][i]));
+            addColorCount(colorCount, new Color(corners[1][i]));
+            addColorCount(colorCount, new Color(corners[2][i]));
+            addColorCount(colorCount, new Color(corners[3][i]));
         }
 
         return colorCount.entrySet().stream()
@@ -56,42 +106,107 @@ public class ImageProcessingService {
                 .orElse(Color.WHITE);
     }
 
+    // Буфер строки переиспользуется потоком и растет под самое широкое поле
+    private int[] rowBuffer(int margin) {
+        int[] row = rows.get();
+        if (row.length < margin) {
+            row = new int[margin];
+            rows.set(row);
+        }
+        return row;
+    }
+
+    private static void countCorner(BufferedImage image, int margin, int stride, boolean right, boolean bottom,
+                                    int[] row, ColorHistogram histogram) {
+        int startX = right ? image.getWidth() - margin : 0;
+        for (int j = 0; j < margin; j += stride) {
+            int y = bottom ? image.getHeight() - 1 - j : j;
+            image.getRGB(startX, y, margin, 1, row, 0, margin);
+            for (int x = 0; x < margin; x += stride) {
+                histogram.add(row[right ? margin - 1 - x : x]);
+            }
+        }
+    }
+
+    // Только для разбора ничьей: углы (верхний левый, верхний правый, нижний левый, нижний правый)
+    // каждый stride-й пиксель в порядке попиксельного обхода от соответствующего угла изображения
+    private int[][] sampleCorners(BufferedImage image, int margin, int stride) {
+        int samples = (margin + stride - 1) / stride;
+        int[][] corners = new int[4][samples * samples];
+        int[] row = rowBuffer(margin);
+        readCorner(image, margin, stride, false, false, row, corners[0]);
+        readCorner(image, margin, stride, true, false, row, corners[1]);
+        readCorner(image, margin, stride, false, true, row, corners[2]);
+        readCorner(image, margin, stride, true, true, row, corners[3]);
+        return corners;
+    }
+
+    private static void readCorner(BufferedImage image, int margin, int stride, boolean right, boolean bottom,
+                                   int[] row, int[] out) {
+        int samples = (margin + stride - 1) / stride;
+        int startX = right ? image.getWidth() - margin : 0;
+        for (int j = 0; j < samples; j++) {
+            int y = bottom ? image.getHeight() - 1 - j * stride : j * stride;
+            image.getRGB(startX, y, margin, 1, row, 0, margin);
+            for (int i = 0; i < samples; i++) {
+                int x = i * stride;
+                out[j * samples + i] = row[right ? margin - 1 - x : x];
+            }
+        }
+    }
+
+    // Если мы уже внутри forkJoinPool (convertImagesParallel), подзадачи уходят в тот же пул без новых потоков
+    private void invokeInPool(ForkJoinTask<?> task) {
+        if (ForkJoinTask.getPool() == forkJoinPool) {
+            task.invoke();
+        } else {
+            forkJoinPool.invoke(task);
+        }
+    }
+
     private void addColorCount(ConcurrentHashMap<Color, AtomicInteger> colorCount, Color color) {
         colorCount.computeIfAbsent(color, k -> new AtomicInteger()).incrementAndGet();
     }
 
-    private boolean isBackgroundColor(Color color, Color bgColor, int tolerance) {
-        int rDiff = Math.abs(color.getRed() - bgColor.getRed());
-        int gDiff = Math.abs(color.getGreen() - bgColor.getGreen());
-        int bDiff = Math.abs(color.getBlue() - bgColor.getBlue());
-        return rDiff < tolerance && gDiff < tolerance && bDiff < tolerance;
+    BufferedImage removeBackground(BufferedImage source) throws IOException {
+        return removeBackground(source, BackgroundRemovalMode.GLOBAL);
     }
 
-    private BufferedImage removeBackground(BufferedImage source) throws IOException {
+    BufferedImage removeBackground(BufferedImage source, BackgroundRemovalMode mode) throws IOException {
         int width = source.getWidth();
         int height = source.getHeight();
-        BufferedImage outputImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage outputImage = RasterBackgroundRemover.createTarget(width, height);
 
         int margin = Math.min(width, height) / 10;
+        long start = System.nanoTime();
         Color backgroundColor = findDominantColor(source, margin);
-        int tolerance = 30;
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = source.getRGB(x, y);
-                Color color = new Color(rgb, true);
-
-                if (isBackgroundColor(color, backgroundColor, tolerance)) {
-                    outputImage.setRGB(x, y, 0x00FFFFFF);
-                } else {
-                    outputImage.setRGB(x, y, rgb);
-                }
-            }
+        long colorFound = System.nanoTime();
+        metrics.recordStage(ConversionMetrics.Stage.DOMINANT_COLOR, colorFound - start);
+        int tolerance = RasterBackgroundRemover.DEFAULT_TOLERANCE;
+
+        // Работаем напрямую с массивами растров, без getRGB/setRGB и Color на каждый пиксель
+        int[] target = RasterBackgroundRemover.pixels(outputImage);
+        // В режиме connected полосы еще и размечают удаленные пиксели, а связность с краем проверяется после них
+        long[] candidates = mode == BackgroundRemovalMode.CONNECTED ? ConnectedBackgroundRemover.candidates(width, height) : null;
+        int rowsPerBand = BackgroundRemovalTask.rowsPerBand(width, height, forkJoinPool.getParallelism());
+        if (tileParallel && rowsPerBand < height) {
+            // Большое изображение делим на полосы строк и обрабатываем на нескольких ядрах
+            invokeInPool(new BackgroundRemovalTask(source, target, candidates, backgroundColor.getRGB(), tolerance,
+                    0, height, rowsPerBand));
+        } else if (candidates != null) {
+            ConnectedBackgroundRemover.prepare(source, target, candidates, backgroundColor.getRGB(), tolerance, 0, height);
+        } else {
+            RasterBackgroundRemover.removeBackground(source, target, backgroundColor.getRGB(), tolerance, 0, height);
+        }
+        if (candidates != null) {
+            // Связность на полосы не делится, обход идет в одном потоке по маске
+            ConnectedBackgroundRemover.fill(source, target, candidates);
         }
+        metrics.recordStage(ConversionMetrics.Stage.BACKGROUND_REMOVAL, System.nanoTime() - colorFound);
         return outputImage;
     }
 
-    private byte[] bufferedImageToSvg(BufferedImage image) throws IOException {
+    private byte[] bufferedImageToSvg(BufferedImage image, int index) throws IOException {
         int width = image.getWidth();
         int height = image.getHeight();
 
@@ -111,115 +226,318 @@ public class ImageProcessingService {
         root.setAttributeNS(null, "height", String.valueOf(height));
         root.setAttributeNS(null, "viewBox", "0 0 " + width + " " + height);
 
-        // Генерация SVG контента в виде строки
-        StringWriter writer = new StringWriter();
-        svgGenerator.stream(root, writer);
+        // SVG пишется в буфер потока и оттуда потоково оптимизируется во второй буфер, без промежуточных строк
+        ImageCodecs.OutputBuffer rawSvg = ImageCodecs.borrowBuffer();
+        ImageCodecs.OutputBuffer optimizedSvg = ImageCodecs.borrowBuffer();
+        try {
+            Writer writer = new OutputStreamWriter(rawSvg, StandardCharsets.UTF_8);
+            svgGenerator.stream(root, writer);
+            writer.flush();
+            long start = System.nanoTime();
+            try {
+                svgOptimizationService.optimizeGeneratedSvg(rawSvg.asInputStream(), optimizedSvg);
+            } catch (IOException e) {
+                throw new IOException("SVG optimization failed for image at index " + index, e);
+            }
+            metrics.recordStage(ConversionMetrics.Stage.SVG_OPTIMIZE, System.nanoTime() - start);
+            return optimizedSvg.toByteArray();
+        } finally {
+            optimizedSvg.release();
+            rawSvg.release();
+        }
+    }
 
-        // Конвертация строки в байты
-        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    // Контуры пишутся текстом прямо в буфер потока, без DOM и без последующей оптимизации
+    private byte[] bufferedImageToVectorSvg(BufferedImage image) throws IOException {
+        ImageCodecs.OutputBuffer outputBuffer = ImageCodecs.borrowBuffer();
+        try {
+            svgVectorizer.vectorize(image, outputBuffer);
+            return outputBuffer.toByteArray();
+        } finally {
+            outputBuffer.release();
+        }
     }
 
-    private byte[] bufferedImageToByteArray(BufferedImage image, String format, float quality) throws IOException {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    private byte[] bufferedImageToByteArray(BufferedImage image, ImageEncoder encoder, float quality, int level) throws IOException {
+        // Буфер потока переиспользуется между изображениями и заранее выделяется по размеру недавних результатов
+        ImageCodecs.OutputBuffer outputBuffer = ImageCodecs.borrowBuffer();
+        try {
+            encoder.encode(image, quality, level, outputBuffer);
+            return outputBuffer.toByteArray();
+        } finally {
+            outputBuffer.release();
+        }
+    }
 
-        if ("jpeg".equalsIgnoreCase(format) || "jpg".equalsIgnoreCase(format)) {
-            ImageWriter jpegWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
-            ImageWriteParam jpegWriteParam = jpegWriter.getDefaultWriteParam();
-            if (jpegWriteParam.canWriteCompressed()) {
-                jpegWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-                jpegWriteParam.setCompressionQuality(quality);
-            }
+    // Растровые форматы (и jpg как псевдоним jpeg) - из реестра кодировщиков, SVG кодируется здесь
+    public boolean supportsFormat(String format) {
+        return "svg".equalsIgnoreCase(format) || imageEncoders.find(format) != null;
+    }
+
+    // Формат для format=auto по заголовку Accept клиента
+    public String negotiateFormat(String accept) {
+        return imageEncoders.negotiate(accept);
+    }
+
+    // Уровень усилия, если не задан явно, выбирает кодировщик формата; для SVG он, как и прежде, выводится из quality
+    private ConversionOptions options(String format, float quality, int compressionLevel, int maxWidth, int maxHeight,
+                                      BackgroundRemovalMode mode) {
+        ImageEncoder encoder = imageEncoders.find(format);
+        if (encoder == null && !"svg".equalsIgnoreCase(format)) {
+            throw new IllegalArgumentException("Unsupported output format: " + format);
+        }
+        int level;
+        String settings;
+        if (encoder != null) {
+            format = encoder.format();
+            level = encoder.resolveLevel(quality, compressionLevel);
+            settings = encoder.settings();
+        } else {
+            level = compressionLevel == PngEncoder.LEVEL_FROM_QUALITY ? PngEncoder.levelFromQuality(quality) : compressionLevel;
+            // Без векторизации SVG проходит через минификатор, и результат зависит от его точности
+            settings = svgVectorizer.isEnabled()
+                    ? svgVectorizer.settings()
+                    : svgVectorizer.settings() + "-" + svgOptimizationService.settings();
+        }
+        return new ConversionOptions(format, quality, level, Math.max(0, maxWidth), Math.max(0, maxHeight),
+                RasterBackgroundRemover.DEFAULT_TOLERANCE, mode, sampleStride, settings);
+    }
+
+    private byte[] convertImage(MultipartFile file, int index, ConversionOptions options) throws IOException {
+        if (!conversionCache.isEnabled()) {
+            return convertUncached(file, index, options);
+        }
+        // Повторная загрузка того же файла с теми же параметрами берется из кэша
+        return conversionCache.get(conversionCache.key(file, options), () -> convertUncached(file, index, options));
+    }
 
-            try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(byteArrayOutputStream)) {
-                jpegWriter.setOutput(imageOutputStream);
-                jpegWriter.write(null, new IIOImage(image, null, null), jpegWriteParam);
-                jpegWriter.dispose();
+    private byte[] convertUncached(MultipartFile file, int index, ConversionOptions options) throws IOException {
+        return encode(process(decode(file, index, options), options), index, options);
+    }
+
+    private BufferedImage decode(MultipartFile file, int index, ConversionOptions options) throws IOException {
+        // Читатель берется из пула потока, без поиска в реестре ImageIO на каждый файл;
+        // при ограничении размера изображение сразу декодируется уменьшенным
+        long start = System.nanoTime();
+        BufferedImage inputImage;
+        long readNanos = 0;
+        ByteBuffer mapped;
+        if (file instanceof SpooledMultipartFile spooled && (mapped = spooled.mapped()) != null) {
+            // Файл отображен в память: декодер читает его страницы напрямую, отдельного чтения нет
+            inputImage = ImageCodecs.read(mapped, options.maxWidth(), options.maxHeight());
+        } else {
+            try (ConversionMetrics.TimedInputStream inputStream = ConversionMetrics.timed(file.getInputStream())) {
+                inputImage = ImageCodecs.read(inputStream, options.maxWidth(), options.maxHeight());
+                readNanos = inputStream.nanos();
             }
-        } else if ("png".equalsIgnoreCase(format)) {
-            ImageIO.write(image, format, byteArrayOutputStream);
         }
+        if (inputImage == null) {
+            throw new IOException("Could not open or find the image at index " + index);
+        }
+        // Чтение загруженного файла и декодирование идут вперемешку, время чтения вычитается из общего
+        if (readNanos > 0) {
+            metrics.recordStage(ConversionMetrics.Stage.READ, readNanos);
+        }
+        metrics.recordStage(ConversionMetrics.Stage.DECODE, System.nanoTime() - start - readNanos);
+        metrics.recordDecoded(inputImage);
+        return inputImage;
+    }
 
-        return byteArrayOutputStream.toByteArray();
+    private BufferedImage process(BufferedImage inputImage, ConversionOptions options) throws IOException {
+        // Убедитесь, что размеры результирующего изображения совпадают с исходными
+        int width = inputImage.getWidth();
+        int height = inputImage.getHeight();
+
+        BufferedImage result = removeBackground(inputImage, options.mode());
+
+        // После удаления фона проверим, что размеры совпадают
+        if (result.getWidth() != width || result.getHeight() != height) {
+            BufferedImage correctedResult = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = correctedResult.createGraphics();
+            g.drawImage(result, 0, 0, width, height, null);
+            g.dispose();
+            result = correctedResult;
+        }
+        return result;
+    }
+
+    private byte[] encode(BufferedImage result, int index, ConversionOptions options) throws IOException {
+        long start = System.nanoTime();
+        byte[] encoded;
+        if ("svg".equals(options.format()) && svgVectorizer.isEnabled()) {
+            encoded = bufferedImageToVectorSvg(result);
+        } else if ("svg".equals(options.format())) {
+            encoded = bufferedImageToSvg(result, index);
+        } else {
+            encoded = bufferedImageToByteArray(result, imageEncoders.find(options.format()), options.quality(),
+                    options.compressionLevel());
+        }
+        metrics.recordStage(ConversionMetrics.Stage.ENCODE, System.nanoTime() - start);
+        return encoded;
     }
 
     public byte[][] convertImages(MultipartFile[] files, String format, float quality) throws IOException {
-        byte[][] results = new byte[files.length][];
-        for (int i = 0; i < files.length; i++) {
-            BufferedImage inputImage = ImageIO.read(files[i].getInputStream());
-            if (inputImage == null) {
-                throw new IOException("Could not open or find the image at index " + i);
-            }
+        return convertImages(files, format, quality, PngEncoder.LEVEL_FROM_QUALITY);
+    }
 
-            // Убедитесь, что размеры результирующего изображения совпадают с исходными
-            int width = inputImage.getWidth();
-            int height = inputImage.getHeight();
+    public byte[][] convertImages(MultipartFile[] files, String format, float quality, int compressionLevel) throws IOException {
+        return convertImages(files, format, quality, compressionLevel, 0, 0);
+    }
 
-            BufferedImage result = removeBackground(inputImage);
+    // maxWidth и maxHeight - ограничение размера результата с сохранением пропорций, 0 - без ограничения
+    public byte[][] convertImages(MultipartFile[] files, String format, float quality, int compressionLevel,
+                                  int maxWidth, int maxHeight) throws IOException {
+        return convertImages(files, format, quality, compressionLevel, maxWidth, maxHeight, BackgroundRemovalMode.GLOBAL);
+    }
 
-            // После удаления фона проверим, что размеры совпадают
-            if (result.getWidth() != width || result.getHeight() != height) {
-                BufferedImage correctedResult = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-                Graphics2D g = correctedResult.createGraphics();
-                g.drawImage(result, 0, 0, width, height, null);
-                g.dispose();
-                result = correctedResult;
-            }
+    // mode - удалять весь фон в пределах допуска или только связанный с краем изображения
+    public byte[][] convertImages(MultipartFile[] files, String format, float quality, int compressionLevel,
+                                  int maxWidth, int maxHeight, BackgroundRemovalMode mode) throws IOException {
+        byte[][] results = new byte[files.length][];
+        convertImages(files, format, quality, compressionLevel, maxWidth, maxHeight, mode,
+                (index, image) -> results[index] = image);
+        return results;
+    }
 
-            if ("svg".equalsIgnoreCase(format)) {
-                byte[] svgBytes = bufferedImageToSvg(result);
-                try {
-                    results[i] = svgOptimizationService.optimizeSvg(svgBytes);
-                } catch (Exception e) {
-                    throw new IOException("SVG optimization failed for image at index " + i, e);
+    // Отдает каждое изображение потребителю сразу после конвертации, не накапливая результаты
+    public void convertImages(MultipartFile[] files, String format, float quality, int compressionLevel,
+                              int maxWidth, int maxHeight, ConvertedImageConsumer consumer) throws IOException {
+        convertImages(files, format, quality, compressionLevel, maxWidth, maxHeight, BackgroundRemovalMode.GLOBAL, consumer);
+    }
+
+    public void convertImages(MultipartFile[] files, String format, float quality, int compressionLevel,
+                              int maxWidth, int maxHeight, BackgroundRemovalMode mode,
+                              ConvertedImageConsumer consumer) throws IOException {
+        metrics.recordInput(files);
+        // Загрузки переносятся на диск один раз и дальше читаются через отображение в память
+        try (UploadSpoolService.Spool spool = uploadSpool.spool(files)) {
+            ConversionOptions options = options(format, quality, compressionLevel, maxWidth, maxHeight, mode);
+            convertSequential(spool.files(), options, metrics.countingOutput(options.format(), consumer));
+        } catch (IOException | RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
+        }
+    }
+
+    private void convertSequential(MultipartFile[] files, ConversionOptions options,
+                                   ConvertedImageConsumer consumer) throws IOException {
+        // Пакет обрабатывается одним воркером планировщика, изображения по очереди
+        ConversionScheduler.Admission admission = conversionScheduler.admit(files, 1, options.maxWidth(), options.maxHeight());
+        try {
+            conversionScheduler.execute(results -> {
+                for (int i = 0; i < files.length; i++) {
+                    results.accept(i, convertImage(files[i], i, options));
                 }
+            }, 1, consumer);
+        } finally {
+            admission.close();
+        }
+    }
+
+    public byte[][] convertImagesParallel(MultipartFile[] files, String format, float quality) throws IOException {
+        return convertImagesParallel(files, format, quality, PngEncoder.LEVEL_FROM_QUALITY);
+    }
+
+    public byte[][] convertImagesParallel(MultipartFile[] files, String format, float quality, int compressionLevel) throws IOException {
+        return convertImagesParallel(files, format, quality, compressionLevel, 0, 0);
+    }
+
+    public byte[][] convertImagesParallel(MultipartFile[] files, String format, float quality, int compressionLevel,
+                                          int maxWidth, int maxHeight) throws IOException {
+        return convertImagesParallel(files, format, quality, compressionLevel, maxWidth, maxHeight, BackgroundRemovalMode.GLOBAL);
+    }
+
+    public byte[][] convertImagesParallel(MultipartFile[] files, String format, float quality, int compressionLevel,
+                                          int maxWidth, int maxHeight, BackgroundRemovalMode mode) throws IOException {
+        byte[][] results = new byte[files.length][];
+        convertImagesParallel(files, format, quality, compressionLevel, maxWidth, maxHeight, mode,
+                (index, image) -> results[index] = image);
+        return results;
+    }
+
+    // Потребитель вызывается в вызывающем потоке в порядке готовности изображений
+    public void convertImagesParallel(MultipartFile[] files, String format, float quality, int compressionLevel,
+                                      int maxWidth, int maxHeight, ConvertedImageConsumer consumer) throws IOException {
+        convertImagesParallel(files, format, quality, compressionLevel, maxWidth, maxHeight, BackgroundRemovalMode.GLOBAL,
+                consumer);
+    }
+
+    public void convertImagesParallel(MultipartFile[] files, String format, float quality, int compressionLevel,
+                                      int maxWidth, int maxHeight, BackgroundRemovalMode mode,
+                                      ConvertedImageConsumer consumer) throws IOException {
+        metrics.recordInput(files);
+        try (UploadSpoolService.Spool spool = uploadSpool.spool(files)) {
+            ConversionOptions options = options(format, quality, compressionLevel, maxWidth, maxHeight, mode);
+            ConvertedImageConsumer counted = metrics.countingOutput(options.format(), consumer);
+            if (conversionPipeline.isEnabled()) {
+                convertImagesPipelined(spool.files(), options, counted);
             } else {
-                results[i] = bufferedImageToByteArray(result, format, quality);
+                convertParallel(spool.files(), options, counted);
             }
+        } catch (IOException | RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
         }
-        return results;
     }
 
-    public byte[][] convertImagesParallel(MultipartFile[] files, String format, float quality) throws IOException {
-        return forkJoinPool.submit(() ->
+    private void convertParallel(MultipartFile[] files, ConversionOptions options,
+                                 ConvertedImageConsumer consumer) throws IOException {
+        int concurrency = Math.min(files.length, forkJoinPool.getParallelism());
+        ConversionScheduler.Admission admission = conversionScheduler.admit(files, concurrency,
+                options.maxWidth(), options.maxHeight());
+        try {
+            conversionScheduler.execute(results -> {
                 IntStream.range(0, files.length)
                         .parallel()
-                        .mapToObj(i -> {
+                        .forEach(i -> {
                             try {
-                                BufferedImage inputImage = ImageIO.read(files[i].getInputStream());
-                                if (inputImage == null) {
-                                    throw new IOException("Could not open or find the image at index " + i);
-                                }
-
-                                // Убедитесь, что размеры результирующего изображения совпадают с исходными
-                                int width = inputImage.getWidth();
-                                int height = inputImage.getHeight();
-
-                                BufferedImage result = removeBackground(inputImage);
-
-                                // После удаления фона проверим, что размеры совпадают
-                                if (result.getWidth() != width || result.getHeight() != height) {
-                                    BufferedImage correctedResult = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-                                    Graphics2D g = correctedResult.createGraphics();
-                                    g.drawImage(result, 0, 0, width, height, null);
-                                    g.dispose();
-                                    result = correctedResult;
-                                }
-
-                                if ("svg".equalsIgnoreCase(format)) {
-                                    byte[] svgBytes = bufferedImageToSvg(result);
-                                    try {
-                                        return svgOptimizationService.optimizeSvg(svgBytes);
-                                    } catch (Exception e) {
-                                        throw new IOException("SVG optimization failed for image at index " + i, e);
-                                    }
-                                } else {
-                                    return bufferedImageToByteArray(result, format, quality);
-                                }
+                                results.accept(i, convertImage(files[i], i, options));
                             } catch (IOException e) {
                                 throw new RuntimeException(e);
                             }
-                        })
-                        .toArray(byte[][]::new)
-        ).join();
+                        });
+            }, concurrency, consumer);
+        } finally {
+            admission.close();
+        }
+    }
+
+    // Декодирование, удаление фона и кодирование идут в отдельных пулах конвейера; изображение передается
+    // между этапами по ссылке, а промежуточные результаты в кэш не попадают
+    private void convertImagesPipelined(MultipartFile[] files, ConversionOptions options,
+                                        ConvertedImageConsumer consumer) throws IOException {
+        int concurrency = Math.min(files.length, conversionPipeline.maxInFlight());
+        ConversionScheduler.Admission admission = conversionScheduler.admit(files, concurrency,
+                options.maxWidth(), options.maxHeight());
+        try {
+            // Потоки этапов отдают результаты потоку запроса, как и воркеры планировщика
+            conversionScheduler.executeBlocking(results -> conversionPipeline.run(files.length,
+                    index -> {
+                        ConversionCacheService.CacheKey key = null;
+                        if (conversionCache.isEnabled()) {
+                            key = conversionCache.key(files[index], options);
+                            byte[] cached = conversionCache.getIfPresent(key);
+                            if (cached != null) {
+                                results.accept(index, cached);
+                                return null;
+                            }
+                        }
+                        return new StagedImage(key, decode(files[index], index, options));
+                    },
+                    (index, decoded) -> new StagedImage(decoded.key(), process(decoded.image(), options)),
+                    (index, processed) -> {
+                        byte[] result = encode(processed.image(), index, options);
+                        if (processed.key() != null) {
+                            conversionCache.put(processed.key(), result);
+                        }
+                        return result;
+                    },
+                    results), concurrency, consumer);
+        } finally {
+            admission.close();
+        }
+    }
+
+    private record StagedImage(ConversionCacheService.CacheKey key, BufferedImage image) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,180 @@
+package com.edu.imageconversion.services;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Уменьшение изображения усреднением по площади: каждый пиксель результата - среднее исходных пикселей,
+ * которые он покрывает, с учетом долей пикселей на границе. Проход раздельный (по строке, затем по столбцам)
+ * и читает исходное изображение по одной строке. Цвет усредняется с весом альфа-канала,
+ * поэтому прозрачный фон не дает темной каймы по краю предмета.
+ */
+final class ImageResizer {
+
+    private ImageResizer() {
+    }
+
+    // Размер, вписанный в maxWidth x maxHeight с сохранением пропорций (0 - без ограничения), без увеличения
+    static Dimension fitWithin(int width, int height, int maxWidth, int maxHeight) {
+        double scale = Math.min(maxWidth > 0 ? (double) maxWidth / width : 1, maxHeight > 0 ? (double) maxHeight / height : 1);
+        if (scale >= 1) {
+            return new Dimension(width, height);
+        }
+        return new Dimension(Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale)));
+    }
+
+    // Наибольший шаг прореживания, при котором прореженное изображение не меньше целевого
+    static int subsampling(int width, int height, Dimension target) {
+        return Math.max(1, Math.min(width / target.width, height / target.height));
+    }
+
+    static BufferedImage resize(BufferedImage image, int width, int height) {
+        int sourceWidth = image.getWidth();
+        int sourceHeight = image.getHeight();
+        if (width > sourceWidth || height > sourceHeight) {
+            throw new IllegalArgumentException("Only downscaling is supported: " + sourceWidth + "x" + sourceHeight
+                    + " to " + width + "x" + height);
+        }
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage target = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] targetPixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+
+        Coverage columns = new Coverage(sourceWidth, width);
+        Coverage rows = new Coverage(sourceHeight, height);
+        float area = (float) sourceWidth / width * sourceHeight / height;
+
+        int[] sourceRow = new int[sourceWidth];
+        // Суммы одной исходной строки по столбцам результата и накопители двух строк результата: a, r*a, g*a, b*a
+        float[] rowSums = new float[width * 4];
+        float[] current = new float[width * 4];
+        float[] next = new float[width * 4];
+        int currentRow = 0;
+
+        for (int y = 0; y < sourceHeight; y++) {
+            int targetRow = rows.first[y];
+            if (targetRow != currentRow) {
+                emitRow(current, area, alpha, targetPixels, currentRow * width);
+                float[] swap = current;
+                current = next;
+                next = swap;
+                Arrays.fill(next, 0);
+                currentRow = targetRow;
+            }
+
+            readRow(image, y, sourceRow);
+            Arrays.fill(rowSums, 0);
+            for (int x = 0; x < sourceWidth; x++) {
+                int argb = sourceRow[x];
+                float a = alpha ? argb >>> 24 : 255;
+                float r = ((argb >> 16) & 0xFF) * a;
+                float g = ((argb >> 8) & 0xFF) * a;
+                float b = (argb & 0xFF) * a;
+                int column = columns.first[x] * 4;
+                float weight = columns.weight[x];
+                rowSums[column] += a * weight;
+                rowSums[column + 1] += r * weight;
+                rowSums[column + 2] += g * weight;
+                rowSums[column + 3] += b * weight;
+                if (weight < 1) {
+                    float rest = 1 - weight;
+                    rowSums[column + 4] += a * rest;
+                    rowSums[column + 5] += r * rest;
+                    rowSums[column + 6] += g * rest;
+                    rowSums[column + 7] += b * rest;
+                }
+            }
+
+            float weight = rows.weight[y];
+            for (int i = 0; i < rowSums.length; i++) {
+                current[i] += rowSums[i] * weight;
+            }
+            if (weight < 1) {
+                float rest = 1 - weight;
+                for (int i = 0; i < rowSums.length; i++) {
+                    next[i] += rowSums[i] * rest;
+                }
+            }
+        }
+        emitRow(current, area, alpha, targetPixels, currentRow * width);
+        return target;
+    }
+
+    // Строка в ARGB: напрямую из массива растра для типичных раскладок, иначе через getRGB
+    private static void readRow(BufferedImage image, int y, int[] row) {
+        WritableRaster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int width = image.getWidth();
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)
+                && sampleModel instanceof PixelInterleavedSampleModel interleaved && dataBuffer instanceof DataBufferByte bytes) {
+            byte[] data = bytes.getData();
+            int stride = interleaved.getScanlineStride();
+            int pixelStride = interleaved.getPixelStride();
+            int[] bandOffsets = interleaved.getBandOffsets();
+            boolean hasAlpha = type == BufferedImage.TYPE_4BYTE_ABGR;
+            int src = bytes.getOffset() + (y - raster.getSampleModelTranslateY()) * stride
+                    - raster.getSampleModelTranslateX() * pixelStride;
+            for (int x = 0; x < width; x++, src += pixelStride) {
+                int alpha = hasAlpha ? data[src + bandOffsets[3]] & 0xFF : 0xFF;
+                row[x] = alpha << 24
+                        | (data[src + bandOffsets[0]] & 0xFF) << 16
+                        | (data[src + bandOffsets[1]] & 0xFF) << 8
+                        | (data[src + bandOffsets[2]] & 0xFF);
+            }
+        } else if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && sampleModel instanceof SinglePixelPackedSampleModel packed && dataBuffer instanceof DataBufferInt ints) {
+            int stride = packed.getScanlineStride();
+            int src = ints.getOffset() + (y - raster.getSampleModelTranslateY()) * stride - raster.getSampleModelTranslateX();
+            System.arraycopy(ints.getData(), src, row, 0, width);
+        } else {
+            image.getRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+
+    private static void emitRow(float[] sums, float area, boolean alpha, int[] pixels, int offset) {
+        for (int x = 0, i = 0; i < sums.length; x++, i += 4) {
+            float a = sums[i];
+            if (a <= 0) {
+                pixels[offset + x] = 0;
+                continue;
+            }
+            int r = Math.min(255, Math.round(sums[i + 1] / a));
+            int g = Math.min(255, Math.round(sums[i + 2] / a));
+            int b = Math.min(255, Math.round(sums[i + 3] / a));
+            int outAlpha = alpha ? Math.min(255, Math.round(a / area)) : 0xFF;
+            pixels[offset + x] = outAlpha << 24 | r << 16 | g << 8 | b;
+        }
+    }
+
+    /**
+     * Покрытие по одной оси: при уменьшении исходный пиксель попадает в одну или две соседние ячейки результата.
+     * first - первая ячейка, weight - доля пикселя в ней, остаток достается следующей.
+     */
+    private static final class Coverage {
+        private final int[] first;
+        private final float[] weight;
+
+        Coverage(int sourceSize, int targetSize) {
+            first = new int[sourceSize];
+            weight = new float[sourceSize];
+            double scale = (double) targetSize / sourceSize;
+            for (int i = 0; i < sourceSize; i++) {
+                double start = i * scale;
+                double end = (i + 1) * scale;
+                int cell = Math.min(targetSize - 1, (int) start);
+                first[i] = cell;
+                double boundary = cell + 1;
+                weight[i] = end <= boundary || cell + 1 >= targetSize ? 1 : (float) ((boundary - start) / (end - start));
+            }
+        }
+    }
+}
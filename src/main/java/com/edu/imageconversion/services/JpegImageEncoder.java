@@ -0,0 +1,116 @@
+package com.edu.imageconversion.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageWriteParam;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * JPEG без альфа-канала: изображение после удаления фона (ARGB) сначала накладывается на цвет подложки,
+ * иначе писатель ImageIO отказывается его писать или сохраняет альфу как четвертый канал, который
+ * большинство программ показывает неверно. Уровень усилия: 0 - стандартные таблицы Хаффмана,
+ * 1-5 - таблицы, оптимизированные под изображение (обычно на 10-15% меньше без заметной потери скорости),
+ * 6-9 - прогрессивный JPEG (еще немного меньше, кодирование примерно вдвое дольше).
+ */
+@Service
+public class JpegImageEncoder implements ImageEncoder {
+
+    private static final int PROGRESSIVE_LEVEL = 6;
+
+    private final int matte;
+    private final int defaultLevel;
+
+    public JpegImageEncoder(@Value("${image.processing.jpeg.matte:#ffffff}") String matte,
+                            @Value("${image.processing.jpeg.level:4}") int defaultLevel) {
+        this.matte = Color.decode(matte).getRGB();
+        this.defaultLevel = Math.max(0, Math.min(9, defaultLevel));
+    }
+
+    @Override
+    public String format() {
+        return "jpeg";
+    }
+
+    @Override
+    public String extension() {
+        return "jpg";
+    }
+
+    @Override
+    public String mediaType() {
+        return "image/jpeg";
+    }
+
+    // Цвет подложки меняет пиксели результата
+    @Override
+    public String settings() {
+        return String.format("matte%06x", matte & 0xFFFFFF);
+    }
+
+    @Override
+    public int resolveLevel(float quality, int compressionLevel) {
+        return compressionLevel == PngEncoder.LEVEL_FROM_QUALITY ? defaultLevel : compressionLevel;
+    }
+
+    @Override
+    public void encode(BufferedImage image, float quality, int level, OutputStream outputStream) throws IOException {
+        BufferedImage opaque = image.getColorModel().hasAlpha() ? flatten(image, matte) : image;
+        ImageCodecs.write(opaque, "jpeg", param -> {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            if (level >= PROGRESSIVE_LEVEL) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            } else if (level > 0 && param instanceof JPEGImageWriteParam jpegParam) {
+                jpegParam.setOptimizeHuffmanTables(true);
+            }
+        }, outputStream);
+    }
+
+    // Наложение на непрозрачный цвет подложки: c = c * a + matte * (1 - a) по каждому каналу
+    static BufferedImage flatten(BufferedImage image, int matte) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        int matteRed = (matte >> 16) & 0xFF;
+        int matteGreen = (matte >> 8) & 0xFF;
+        int matteBlue = matte & 0xFF;
+        // Результат удаления фона (INT_ARGB) читается прямо из массива растра
+        int[] source = image.getType() == BufferedImage.TYPE_INT_ARGB && image.getRaster().getParent() == null
+                ? RasterBackgroundRemover.pixels(image) : null;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            if (source != null) {
+                System.arraycopy(source, y * width, row, 0, width);
+            } else {
+                image.getRGB(0, y, width, 1, row, 0, width);
+            }
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                int alpha = argb >>> 24;
+                if (alpha == 0xFF) {
+                    pixels[offset + x] = argb & 0xFFFFFF;
+                } else if (alpha == 0) {
+                    pixels[offset + x] = matte & 0xFFFFFF;
+                } else {
+                    int red = blend((argb >> 16) & 0xFF, matteRed, alpha);
+                    int green = blend((argb >> 8) & 0xFF, matteGreen, alpha);
+                    int blue = blend(argb & 0xFF, matteBlue, alpha);
+                    pixels[offset + x] = red << 16 | green << 8 | blue;
+                }
+            }
+        }
+        return target;
+    }
+
+    private static int blend(int color, int matte, int alpha) {
+        return (color * alpha + matte * (255 - alpha) + 127) / 255;
+    }
+}
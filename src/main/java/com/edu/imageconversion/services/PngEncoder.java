@@ -0,0 +1,490 @@
+package com.edu.imageconversion.services;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Кодировщик PNG (8 бит на канал, RGBA или RGB) с управляемым уровнем deflate и стратегией фильтров строк.
+ * Пиксели читаются прямо из массива растра INT_RGB/INT_ARGB построчно, без промежуточной копии изображения.
+ * Крупное изображение делится на полосы строк, которые сжимаются независимо в ForkJoinPool: каждая полоса -
+ * отдельный фрагмент deflate-потока, выровненный по байту (SYNC_FLUSH), со словарем из последних 32 КБ
+ * предыдущей полосы; контрольная сумма Adler-32 всего потока собирается из сумм полос.
+ */
+public final class PngEncoder {
+
+    // Уровень берется из quality, как у стандартного PNG-писателя ImageIO: 1.0 - без сжатия, 0.0 - максимальное
+    public static final int LEVEL_FROM_QUALITY = -1;
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int ADLER_BASE = 65521;
+    // Пробное сжатие для выбора фильтров: 8 полос по 8 строк
+    private static final int SAMPLE_STRIPES = 8;
+    private static final int SAMPLE_STRIPE_ROWS = 8;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    private enum FilterStrategy {
+        // Без фильтров, как у PNG-писателя ImageIO для полноцветных изображений: на однотонном фоне
+        // и прозрачных областях после удаления фона deflate справляется сам
+        NONE,
+        // Для каждой строки выбирается фильтр с минимальной суммой модулей, как в libpng: выигрывает на градиентах
+        ADAPTIVE
+    }
+
+    private PngEncoder() {
+    }
+
+    public static int levelFromQuality(float quality) {
+        float clamped = Math.max(0f, Math.min(1f, quality));
+        return 9 - Math.round(9 * clamped);
+    }
+
+    /**
+     * Какая стратегия лучше, зависит от содержимого: вырезанный предмет на прозрачном фоне лучше сжимается без фильтров,
+     * фотография с плавными переходами - с адаптивными. Поэтому несколько полос строк, равномерно взятых по высоте,
+     * пробно сжимаются обоими способами на быстром уровне, и выбирается стратегия с меньшим результатом.
+     */
+    private static FilterStrategy filterStrategy(PixelRows rows, int height, int level) {
+        if (level == 0) {
+            return FilterStrategy.NONE;
+        }
+        int rowBytes = rows.rowBytes();
+        int stripeRows = Math.min(height, SAMPLE_STRIPE_ROWS);
+        int stripes = Math.min(SAMPLE_STRIPES, height / stripeRows);
+        long[] sizes = new long[FilterStrategy.values().length];
+        byte[] buffer = new byte[stripeRows * (rowBytes + 1)];
+        byte[] output = new byte[BLOCK_SIZE];
+        for (FilterStrategy strategy : FilterStrategy.values()) {
+            RowFilter filter = new RowFilter(rows, strategy, rowBytes);
+            Deflater deflater = new Deflater(1, true);
+            try {
+                for (int stripe = 0; stripe < stripes; stripe++) {
+                    int fromY = (int) ((long) (height - stripeRows) * (2 * stripe + 1) / (2 * stripes));
+                    int filled = 0;
+                    filter.start(fromY);
+                    for (int y = fromY; y < fromY + stripeRows; y++) {
+                        filled = filter.next(y, buffer, filled);
+                    }
+                    deflater.setInput(buffer, 0, filled);
+                    while (!deflater.needsInput()) {
+                        sizes[strategy.ordinal()] += deflater.deflate(output);
+                    }
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    sizes[strategy.ordinal()] += deflater.deflate(output);
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+        return sizes[FilterStrategy.ADAPTIVE.ordinal()] < sizes[FilterStrategy.NONE.ordinal()]
+                ? FilterStrategy.ADAPTIVE : FilterStrategy.NONE;
+    }
+
+    /**
+     * Кодирует изображение в out. Если pool не null и изображение крупное, полосы сжимаются параллельно;
+     * при вызове изнутри того же пула подзадачи попадают в очередь текущего воркера.
+     */
+    public static void encode(BufferedImage image, int level, ForkJoinPool pool, OutputStream out) throws IOException {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("PNG compression level must be between 0 and 9: " + level);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean alpha = image.getColorModel().hasAlpha();
+        PixelRows rows = new PixelRows(image, alpha);
+        FilterStrategy strategy = filterStrategy(rows, height, level);
+
+        // Без пула изображение сжимается одним фрагментом, как обычный zlib-поток
+        int rowsPerBand = pool != null ? BackgroundRemovalTask.rowsPerBand(width, height, pool.getParallelism()) : height;
+        List<Band> bands = new ArrayList<>();
+        for (int from = 0; from < height; from += rowsPerBand) {
+            bands.add(new Band(rows, strategy, level, from, Math.min(height, from + rowsPerBand), from + rowsPerBand >= height));
+        }
+        if (bands.size() > 1) {
+            ForkJoinTask<?> task = ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(bands.stream().map(ForkJoinTask::adapt).toList());
+            });
+            if (ForkJoinTask.getPool() == pool) {
+                task.invoke();
+            } else {
+                pool.invoke(task);
+            }
+        } else {
+            bands.forEach(Band::run);
+        }
+
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = (byte) (alpha ? 6 : 2);
+        writeChunk(out, "IHDR", header, 0, header.length);
+
+        // Заголовок zlib (метод deflate, окно 32 КБ) и полосы идут отдельными IDAT - декодер склеивает их подряд
+        byte[] zlibHeader = zlibHeader(level);
+        writeChunk(out, "IDAT", zlibHeader, 0, zlibHeader.length);
+        long adler = 1;
+        for (Band band : bands) {
+            writeChunk(out, "IDAT", band.compressed.buffer(), 0, band.compressed.size());
+            adler = adler32Combine(adler, band.adler, band.length);
+        }
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) adler);
+        writeChunk(out, "IDAT", trailer, 0, trailer.length);
+        writeChunk(out, "IEND", trailer, 0, 0);
+    }
+
+    public static byte[] encode(BufferedImage image, int level, ForkJoinPool pool) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encode(image, level, pool, out);
+        return out.toByteArray();
+    }
+
+    // Adler-32 конкатенации двух последовательностей по их суммам и длине второй (adler32_combine из zlib)
+    static long adler32Combine(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (ADLER_BASE << 1)) {
+            sum2 -= (ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static byte[] zlibHeader(int level) {
+        int cmf = 0x78;
+        int flevel = level <= 1 ? 0 : level <= 5 ? 1 : level == 6 ? 2 : 3;
+        int flg = flevel << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        return new byte[]{(byte) cmf, (byte) flg};
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int offset, int length) throws IOException {
+        byte[] prefix = new byte[8];
+        putInt(prefix, 0, length);
+        for (int i = 0; i < 4; i++) {
+            prefix[4 + i] = (byte) type.charAt(i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(prefix, 4, 4);
+        crc.update(data, offset, length);
+        byte[] suffix = new byte[4];
+        putInt(suffix, 0, (int) crc.getValue());
+        out.write(prefix);
+        out.write(data, offset, length);
+        out.write(suffix);
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    // Чтение строки пикселей в байты RGBA/RGB: напрямую из DataBufferInt или через getRGB для прочих раскладок
+    private static final class PixelRows {
+        private final BufferedImage image;
+        private final int width;
+        private final int bytesPerPixel;
+        private final int[] data;
+        private final int base;
+        private final int stride;
+
+        PixelRows(BufferedImage image, boolean alpha) {
+            this.image = image;
+            this.width = image.getWidth();
+            this.bytesPerPixel = alpha ? 4 : 3;
+            WritableRaster raster = image.getRaster();
+            int type = image.getType();
+            if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel packed
+                    && raster.getDataBuffer() instanceof DataBufferInt ints) {
+                this.data = ints.getData();
+                this.stride = packed.getScanlineStride();
+                this.base = ints.getOffset() - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX();
+            } else {
+                this.data = null;
+                this.stride = 0;
+                this.base = 0;
+            }
+        }
+
+        int rowBytes() {
+            return width * bytesPerPixel;
+        }
+
+        void read(int y, byte[] target, int[] scratch) {
+            int[] pixels;
+            int offset;
+            if (data != null) {
+                pixels = data;
+                offset = base + y * stride;
+            } else {
+                image.getRGB(0, y, width, 1, scratch, 0, width);
+                pixels = scratch;
+                offset = 0;
+            }
+            int dst = 0;
+            if (bytesPerPixel == 4) {
+                for (int x = 0; x < width; x++) {
+                    int argb = pixels[offset + x];
+                    target[dst++] = (byte) (argb >> 16);
+                    target[dst++] = (byte) (argb >> 8);
+                    target[dst++] = (byte) argb;
+                    target[dst++] = (byte) (argb >>> 24);
+                }
+            } else {
+                for (int x = 0; x < width; x++) {
+                    int argb = pixels[offset + x];
+                    target[dst++] = (byte) (argb >> 16);
+                    target[dst++] = (byte) (argb >> 8);
+                    target[dst++] = (byte) argb;
+                }
+            }
+        }
+    }
+
+    // Полоса строк [fromY, toY): фильтрация и сжатие в отдельный фрагмент deflate-потока
+    private static final class Band implements Runnable {
+        private final PixelRows rows;
+        private final FilterStrategy strategy;
+        private final int level;
+        private final int fromY;
+        private final int toY;
+        private final boolean last;
+
+        private final ExposedByteArrayOutputStream compressed = new ExposedByteArrayOutputStream();
+        private long adler;
+        private long length;
+
+        Band(PixelRows rows, FilterStrategy strategy, int level, int fromY, int toY, boolean last) {
+            this.rows = rows;
+            this.strategy = strategy;
+            this.level = level;
+            this.fromY = fromY;
+            this.toY = toY;
+            this.last = last;
+        }
+
+        @Override
+        public void run() {
+            int rowBytes = rows.rowBytes();
+            RowFilter filter = new RowFilter(rows, strategy, rowBytes);
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (fromY > 0) {
+                    deflater.setDictionary(dictionary(filter, rowBytes));
+                }
+
+                Adler32 checksum = new Adler32();
+                byte[] block = new byte[Math.max(BLOCK_SIZE, rowBytes + 1)];
+                byte[] output = new byte[BLOCK_SIZE];
+                int filled = 0;
+                filter.start(fromY);
+                for (int y = fromY; y < toY; y++) {
+                    if (filled + rowBytes + 1 > block.length) {
+                        deflate(deflater, checksum, block, filled, output);
+                        filled = 0;
+                    }
+                    filled = filter.next(y, block, filled);
+                }
+                deflate(deflater, checksum, block, filled, output);
+
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        compressed.write(output, 0, deflater.deflate(output));
+                    }
+                } else {
+                    // Выравниваем фрагмент по байту без завершающего блока, чтобы следующая полоса продолжила поток
+                    int written;
+                    do {
+                        written = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+                        compressed.write(output, 0, written);
+                    } while (written == output.length);
+                }
+                adler = checksum.getValue();
+                length = (long) (toY - fromY) * (rowBytes + 1);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private void deflate(Deflater deflater, Adler32 checksum, byte[] block, int filled, byte[] output) {
+            checksum.update(block, 0, filled);
+            deflater.setInput(block, 0, filled);
+            while (!deflater.needsInput()) {
+                compressed.write(output, 0, deflater.deflate(output));
+            }
+        }
+
+        // Последние 32 КБ отфильтрованных данных предыдущей полосы; фильтр детерминирован, поэтому их можно пересчитать
+        private byte[] dictionary(RowFilter filter, int rowBytes) {
+            int dictionaryRows = Math.min(fromY, (DICTIONARY_SIZE + rowBytes) / (rowBytes + 1));
+            byte[] tail = new byte[dictionaryRows * (rowBytes + 1)];
+            int filled = 0;
+            filter.start(fromY - dictionaryRows);
+            for (int y = fromY - dictionaryRows; y < fromY; y++) {
+                filled = filter.next(y, tail, filled);
+            }
+            int size = Math.min(DICTIONARY_SIZE, tail.length);
+            byte[] dictionary = new byte[size];
+            System.arraycopy(tail, tail.length - size, dictionary, 0, size);
+            return dictionary;
+        }
+    }
+
+    // Фильтрация строк по порядку; хранит исходные байты предыдущей строки для фильтров Up/Average/Paeth
+    private static final class RowFilter {
+        private final PixelRows rows;
+        private final FilterStrategy strategy;
+        private final int rowBytes;
+        private final int bpp;
+        private final int[] scratch;
+        private byte[] previous;
+        private byte[] current;
+        private final byte[][] candidates;
+
+        RowFilter(PixelRows rows, FilterStrategy strategy, int rowBytes) {
+            this.rows = rows;
+            this.strategy = strategy;
+            this.rowBytes = rowBytes;
+            this.bpp = rows.bytesPerPixel;
+            this.scratch = new int[rows.width];
+            this.previous = new byte[rowBytes];
+            this.current = new byte[rowBytes];
+            this.candidates = strategy == FilterStrategy.ADAPTIVE ? new byte[5][rowBytes] : null;
+        }
+
+        // Готовит фильтр к строке y: для первой строки изображения предыдущая строка - нули
+        void start(int y) {
+            if (y == 0) {
+                Arrays.fill(previous, (byte) 0);
+            } else {
+                rows.read(y - 1, previous, scratch);
+            }
+        }
+
+        // Пишет байт типа фильтра и отфильтрованную строку y в target с позиции offset, возвращает новую позицию
+        int next(int y, byte[] target, int offset) {
+            rows.read(y, current, scratch);
+            switch (strategy) {
+                case NONE -> {
+                    target[offset] = FILTER_NONE;
+                    System.arraycopy(current, 0, target, offset + 1, rowBytes);
+                }
+                case ADAPTIVE -> {
+                    System.arraycopy(current, 0, candidates[FILTER_NONE], 0, rowBytes);
+                    sub(current, candidates[FILTER_SUB], 0);
+                    up(current, previous, candidates[FILTER_UP]);
+                    average(current, previous, candidates[FILTER_AVERAGE]);
+                    paeth(current, previous, candidates[FILTER_PAETH]);
+                    int best = FILTER_NONE;
+                    long bestSum = Long.MAX_VALUE;
+                    for (int filter = FILTER_NONE; filter <= FILTER_PAETH; filter++) {
+                        long sum = absoluteSum(candidates[filter], bestSum);
+                        if (sum < bestSum) {
+                            best = filter;
+                            bestSum = sum;
+                        }
+                    }
+                    target[offset] = (byte) best;
+                    System.arraycopy(candidates[best], 0, target, offset + 1, rowBytes);
+                }
+            }
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+            return offset + rowBytes + 1;
+        }
+
+        private void sub(byte[] row, byte[] out, int offset) {
+            System.arraycopy(row, 0, out, offset, bpp);
+            for (int i = bpp; i < rowBytes; i++) {
+                out[offset + i] = (byte) (row[i] - row[i - bpp]);
+            }
+        }
+
+        private void up(byte[] row, byte[] prior, byte[] out) {
+            for (int i = 0; i < rowBytes; i++) {
+                out[i] = (byte) (row[i] - prior[i]);
+            }
+        }
+
+        private void average(byte[] row, byte[] prior, byte[] out) {
+            for (int i = 0; i < bpp; i++) {
+                out[i] = (byte) (row[i] - ((prior[i] & 0xFF) >>> 1));
+            }
+            for (int i = bpp; i < rowBytes; i++) {
+                out[i] = (byte) (row[i] - (((row[i - bpp] & 0xFF) + (prior[i] & 0xFF)) >>> 1));
+            }
+        }
+
+        private void paeth(byte[] row, byte[] prior, byte[] out) {
+            for (int i = 0; i < bpp; i++) {
+                out[i] = (byte) (row[i] - prior[i]);
+            }
+            for (int i = bpp; i < rowBytes; i++) {
+                int a = row[i - bpp] & 0xFF;
+                int b = prior[i] & 0xFF;
+                int c = prior[i - bpp] & 0xFF;
+                int p = a + b - c;
+                int pa = Math.abs(p - a);
+                int pb = Math.abs(p - b);
+                int pc = Math.abs(p - c);
+                int predictor = pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+                out[i] = (byte) (row[i] - predictor);
+            }
+        }
+
+        // Сумма модулей байтов как знаковых; считать дальше текущего лучшего результата незачем
+        private long absoluteSum(byte[] filtered, long limit) {
+            long sum = 0;
+            for (int i = 0; i < rowBytes && sum < limit; i++) {
+                sum += Math.abs(filtered[i]);
+            }
+            return sum;
+        }
+    }
+
+    // ByteArrayOutputStream с доступом к внутреннему буферу, чтобы писать IDAT без копирования
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.edu.imageconversion.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+@Service
+public class PngImageEncoder implements ImageEncoder {
+
+    private final ForkJoinPool forkJoinPool;
+
+    public PngImageEncoder(ConversionScheduler conversionScheduler,
+                           @Value("${image.processing.tile-parallel:true}") boolean tileParallel) {
+        // Крупные изображения сжимаются полосами параллельно в пуле планировщика
+        this.forkJoinPool = tileParallel ? conversionScheduler.pool() : null;
+    }
+
+    @Override
+    public String format() {
+        return "png";
+    }
+
+    @Override
+    public String extension() {
+        return "png";
+    }
+
+    @Override
+    public String mediaType() {
+        return "image/png";
+    }
+
+    // Уровень deflate; если не задан, выводится из quality, как у PNG-писателя ImageIO
+    @Override
+    public int resolveLevel(float quality, int compressionLevel) {
+        return compressionLevel == PngEncoder.LEVEL_FROM_QUALITY ? PngEncoder.levelFromQuality(quality) : compressionLevel;
+    }
+
+    @Override
+    public void encode(BufferedImage image, float quality, int level, OutputStream outputStream) throws IOException {
+        PngEncoder.encode(image, level, forkJoinPool, outputStream);
+    }
+}
@@ -0,0 +1,179 @@
+package com.edu.imageconversion.services;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Удаление фона напрямую по массивам растра, без getRGB/setRGB и без объектов Color на каждый пиксель.
+ * Результат побайтно совпадает с попиксельным алгоритмом: фоновые пиксели заменяются на 0x00FFFFFF,
+ * остальные копируются как есть (в ARGB, как их возвращает BufferedImage.getRGB).
+ */
+public final class RasterBackgroundRemover {
+
+    public static final int DEFAULT_TOLERANCE = 30;
+    public static final int TRANSPARENT_PIXEL = 0x00FFFFFF;
+
+    private RasterBackgroundRemover() {
+    }
+
+    public static BufferedImage createTarget(int width, int height) {
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    // Массив пикселей изображения TYPE_INT_ARGB, созданного через createTarget (смещение 0, шаг строки = ширина)
+    public static int[] pixels(BufferedImage target) {
+        return ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Обрабатывает строки [fromY, toY) изображения source и пишет результат в target.
+     * Разные диапазоны строк можно обрабатывать независимо из разных потоков.
+     */
+    public static void removeBackground(BufferedImage source, int[] target, int backgroundRgb, int tolerance,
+                                        int fromY, int toY) {
+        WritableRaster raster = source.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int width = source.getWidth();
+
+        switch (source.getType()) {
+            case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB -> {
+                if (sampleModel instanceof SinglePixelPackedSampleModel packed && dataBuffer instanceof DataBufferInt ints) {
+                    boolean hasAlpha = source.getType() == BufferedImage.TYPE_INT_ARGB;
+                    fromPackedInts(raster, packed, ints, hasAlpha, width, target, backgroundRgb, tolerance, fromY, toY);
+                    return;
+                }
+            }
+            case BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR -> {
+                if (sampleModel instanceof PixelInterleavedSampleModel interleaved && dataBuffer instanceof DataBufferByte bytes) {
+                    boolean hasAlpha = source.getType() == BufferedImage.TYPE_4BYTE_ABGR;
+                    fromInterleavedBytes(raster, interleaved, bytes, hasAlpha, width, target, backgroundRgb, tolerance, fromY, toY);
+                    return;
+                }
+            }
+            default -> {
+                ColorModel colorModel = source.getColorModel();
+                if (colorModel instanceof IndexColorModel indexed && sampleModel instanceof PixelInterleavedSampleModel interleaved
+                        && dataBuffer instanceof DataBufferByte bytes && interleaved.getNumBands() == 1) {
+                    fromIndexedBytes(raster, interleaved, bytes, indexed, width, target, backgroundRgb, tolerance, fromY, toY);
+                    return;
+                }
+            }
+        }
+        fromRgbRows(source, width, target, backgroundRgb, tolerance, fromY, toY);
+    }
+
+    static int filter(int argb, int bgR, int bgG, int bgB, int tolerance) {
+        int rDiff = Math.abs(((argb >> 16) & 0xFF) - bgR);
+        int gDiff = Math.abs(((argb >> 8) & 0xFF) - bgG);
+        int bDiff = Math.abs((argb & 0xFF) - bgB);
+        return rDiff < tolerance && gDiff < tolerance && bDiff < tolerance ? TRANSPARENT_PIXEL : argb;
+    }
+
+    private static void fromPackedInts(WritableRaster raster, SinglePixelPackedSampleModel sampleModel, DataBufferInt buffer,
+                                       boolean hasAlpha, int width, int[] target, int backgroundRgb, int tolerance,
+                                       int fromY, int toY) {
+        int bgR = (backgroundRgb >> 16) & 0xFF;
+        int bgG = (backgroundRgb >> 8) & 0xFF;
+        int bgB = backgroundRgb & 0xFF;
+        int[] data = buffer.getData();
+        int stride = sampleModel.getScanlineStride();
+        // Учитываем смещение дочерних растров (getSubimage)
+        int base = buffer.getOffset() - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX();
+        int alphaBits = hasAlpha ? 0 : 0xFF000000;
+        int colorMask = hasAlpha ? 0xFFFFFFFF : 0x00FFFFFF;
+
+        for (int y = fromY; y < toY; y++) {
+            int src = base + y * stride;
+            int dst = y * width;
+            for (int x = 0; x < width; x++) {
+                int argb = (data[src + x] & colorMask) | alphaBits;
+                target[dst + x] = filter(argb, bgR, bgG, bgB, tolerance);
+            }
+        }
+    }
+
+    private static void fromInterleavedBytes(WritableRaster raster, PixelInterleavedSampleModel sampleModel, DataBufferByte buffer,
+                                             boolean hasAlpha, int width, int[] target, int backgroundRgb, int tolerance,
+                                             int fromY, int toY) {
+        int bgR = (backgroundRgb >> 16) & 0xFF;
+        int bgG = (backgroundRgb >> 8) & 0xFF;
+        int bgB = backgroundRgb & 0xFF;
+        byte[] data = buffer.getData();
+        int stride = sampleModel.getScanlineStride();
+        int pixelStride = sampleModel.getPixelStride();
+        int[] bandOffsets = sampleModel.getBandOffsets();
+        int rOffset = bandOffsets[0];
+        int gOffset = bandOffsets[1];
+        int bOffset = bandOffsets[2];
+        int aOffset = hasAlpha ? bandOffsets[3] : 0;
+        int base = buffer.getOffset() - raster.getSampleModelTranslateY() * stride
+                - raster.getSampleModelTranslateX() * pixelStride;
+
+        for (int y = fromY; y < toY; y++) {
+            int src = base + y * stride;
+            int dst = y * width;
+            for (int x = 0; x < width; x++, src += pixelStride) {
+                int alpha = hasAlpha ? data[src + aOffset] & 0xFF : 0xFF;
+                int argb = alpha << 24
+                        | (data[src + rOffset] & 0xFF) << 16
+                        | (data[src + gOffset] & 0xFF) << 8
+                        | (data[src + bOffset] & 0xFF);
+                target[dst + x] = filter(argb, bgR, bgG, bgB, tolerance);
+            }
+        }
+    }
+
+    private static void fromIndexedBytes(WritableRaster raster, PixelInterleavedSampleModel sampleModel, DataBufferByte buffer,
+                                         IndexColorModel colorModel, int width, int[] target, int backgroundRgb, int tolerance,
+                                         int fromY, int toY) {
+        int bgR = (backgroundRgb >> 16) & 0xFF;
+        int bgG = (backgroundRgb >> 8) & 0xFF;
+        int bgB = backgroundRgb & 0xFF;
+        // Для палитры достаточно один раз отфильтровать все 256 цветов
+        int[] lookup = new int[256];
+        for (int i = 0; i < lookup.length; i++) {
+            lookup[i] = filter(colorModel.getRGB(i), bgR, bgG, bgB, tolerance);
+        }
+
+        byte[] data = buffer.getData();
+        int stride = sampleModel.getScanlineStride();
+        int pixelStride = sampleModel.getPixelStride();
+        int base = buffer.getOffset() + sampleModel.getBandOffsets()[0]
+                - raster.getSampleModelTranslateY() * stride
+                - raster.getSampleModelTranslateX() * pixelStride;
+
+        for (int y = fromY; y < toY; y++) {
+            int src = base + y * stride;
+            int dst = y * width;
+            for (int x = 0; x < width; x++, src += pixelStride) {
+                target[dst + x] = lookup[data[src] & 0xFF];
+            }
+        }
+    }
+
+    // Универсальный путь для прочих раскладок: построчное чтение через ColorModel в переиспользуемый буфер
+    private static void fromRgbRows(BufferedImage source, int width, int[] target, int backgroundRgb, int tolerance,
+                                    int fromY, int toY) {
+        int bgR = (backgroundRgb >> 16) & 0xFF;
+        int bgG = (backgroundRgb >> 8) & 0xFF;
+        int bgB = backgroundRgb & 0xFF;
+        int[] row = new int[width];
+
+        for (int y = fromY; y < toY; y++) {
+            source.getRGB(0, y, width, 1, row, 0, width);
+            int dst = y * width;
+            for (int x = 0; x < width; x++) {
+                target[dst + x] = filter(row[x], bgR, bgG, bgB, tolerance);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.edu.imageconversion.services;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Загруженный файл, сохраненный на локальный диск. Читается через отображение файла в память: хэш, заголовок
+ * и декодирование берут байты прямо из страниц файла, без копий в куче. Файлы больше 2 ГБ в один буфер
+ * не помещаются и читаются с диска потоком.
+ */
+class SpooledMultipartFile implements MultipartFile {
+
+    private final Path path;
+    private final String originalFilename;
+    private final String contentType;
+    // Отображение создается при первом чтении; гонка двух потоков лишь отобразит файл дважды
+    private volatile ByteBuffer mapping;
+
+    SpooledMultipartFile(Path path, String originalFilename, String contentType) {
+        this.path = path;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Переносит загрузку в target. Нужен именно transferTo(File): контейнер сервлетов переименовывает
+     * свой временный файл (на одной файловой системе без копирования), а transferTo(Path) в Spring
+     * всегда копирует содержимое через поток.
+     */
+    static SpooledMultipartFile spool(MultipartFile file, Path target) throws IOException {
+        file.transferTo(target.toFile());
+        return new SpooledMultipartFile(target, file.getOriginalFilename(), file.getContentType());
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    // Содержимое только для чтения с позицией 0; null, если файл не помещается в один буфер
+    ByteBuffer mapped() throws IOException {
+        ByteBuffer buffer = mapping;
+        if (buffer == null) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    return null;
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            mapping = buffer;
+        }
+        return buffer.duplicate();
+    }
+
+    @Override
+    public String getName() {
+        return "files";
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getSize() == 0;
+    }
+
+    @Override
+    public long getSize() {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+        return Files.readAllBytes(path);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        ByteBuffer buffer = mapped();
+        return buffer != null ? new ByteBufferInputStream(buffer) : Files.newInputStream(path);
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException {
+        Files.copy(path, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package com.edu.imageconversion.services;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Однопроходный потоковый минификатор SVG на StAX: байты читаются из входного потока и сразу пишутся
+ * в выходной, без строки на весь документ и без DOM. В памяти держится только текущий элемент с его атрибутами,
+ * поэтому рабочий набор не зависит от размера документа (кроме длины одного значения атрибута).
+ * <ul>
+ *     <li>удаляются комментарии, инструкции обработки, DOCTYPE, {@code <metadata>} и разметка редакторов
+ *     (Inkscape, Sodipodi, Illustrator, Sketch, RDF/Dublin Core);</li>
+ *     <li>удаляются пробелы между элементами, кроме текстовых элементов и {@code xml:space="preserve"};</li>
+ *     <li>числа в геометрических атрибутах и стилях округляются до заданного числа знаков, лишние нули
+ *     и разделители убираются;</li>
+ *     <li>цвета сокращаются ({@code rgb(255,0,0)} и {@code #ff0000} - до {@code #f00}), {@code style}
+ *     сжимается, а в документах без таблиц стилей (вывод SVGGraphics2D) короткий {@code style}
+ *     раскладывается в атрибуты представления.</li>
+ * </ul>
+ */
+final class SvgMinifier {
+
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    // style из стольких объявлений и меньше короче в виде атрибутов: name="v" против name:v;
+    private static final int MAX_FOLDED_DECLARATIONS = 3;
+
+    private static final Set<String> EDITOR_NAMESPACES = Set.of(
+            "http://www.inkscape.org/namespaces/inkscape",
+            "http://sodipodi.sourceforge.net/DTD/sodipodi-0.dtd",
+            "http://www.bohemiancoding.com/sketch/ns",
+            "http://ns.adobe.com/AdobeIllustrator/10.0/",
+            "http://ns.adobe.com/AdobeSVGViewerExtensions/3.0/",
+            "http://ns.adobe.com/Extensibility/1.0/",
+            "http://ns.adobe.com/Flows/1.0/",
+            "http://ns.adobe.com/Graphs/1.0/",
+            "http://ns.adobe.com/ImageReplacement/1.0/",
+            "http://ns.adobe.com/SaveForWeb/1.0/",
+            "http://ns.adobe.com/Variables/1.0/",
+            "http://ns.adobe.com/XPath/1.0/",
+            "http://purl.org/dc/elements/1.1/",
+            "http://creativecommons.org/ns#",
+            "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+
+    // Элементы, в которых пробелы значимы
+    private static final Set<String> TEXT_ELEMENTS = Set.of("text", "tspan", "textPath", "title", "desc", "style", "script");
+
+    private static final Set<String> PATH_DATA_ATTRIBUTES = Set.of("d", "points");
+
+    private static final Set<String> NUMERIC_ATTRIBUTES = Set.of(
+            "d", "points", "transform", "gradientTransform", "patternTransform", "viewBox",
+            "x", "y", "x1", "y1", "x2", "y2", "cx", "cy", "r", "rx", "ry", "fx", "fy", "dx", "dy",
+            "width", "height", "offset", "opacity", "fill-opacity", "stroke-opacity", "stop-opacity",
+            "stroke-width", "stroke-miterlimit", "stroke-dasharray", "stroke-dashoffset", "font-size",
+            "stdDeviation", "k1", "k2", "k3", "k4");
+
+    private static final Set<String> COLOR_ATTRIBUTES = Set.of("fill", "stroke", "stop-color", "flood-color",
+            "lighting-color", "color");
+
+    // Свойства CSS, у которых есть одноименный атрибут представления SVG
+    private static final Set<String> PRESENTATION_ATTRIBUTES = Set.of(
+            "clip-path", "clip-rule", "color", "color-interpolation", "color-interpolation-filters",
+            "color-rendering", "cursor", "display", "dominant-baseline", "fill", "fill-opacity", "fill-rule",
+            "filter", "flood-color", "flood-opacity", "font-family", "font-size", "font-size-adjust",
+            "font-stretch", "font-style", "font-variant", "font-weight", "image-rendering", "letter-spacing",
+            "lighting-color", "marker-end", "marker-mid", "marker-start", "mask", "opacity", "overflow",
+            "paint-order", "pointer-events", "shape-rendering", "stop-color", "stop-opacity", "stroke",
+            "stroke-dasharray", "stroke-dashoffset", "stroke-linecap", "stroke-linejoin", "stroke-miterlimit",
+            "stroke-opacity", "stroke-width", "text-anchor", "text-decoration", "text-rendering",
+            "unicode-bidi", "vector-effect", "visibility", "word-spacing", "writing-mode");
+
+    // Атрибуты корневого svg со значениями по умолчанию, которые добавляет Batik
+    private static final Map<String, String> ROOT_DEFAULTS = Map.of(
+            "contentScriptType", "text/ecmascript",
+            "contentStyleType", "text/css",
+            "zoomAndPan", "magnify",
+            "preserveAspectRatio", "xMidYMid meet");
+
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private SvgMinifier() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // DTD и внешние сущности не загружаются: DOCTYPE только пропускается
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    // foldStyles - документ заведомо без таблиц стилей: <style> ниже по документу применяется и к предшествующим
+    // элементам, поэтому в произвольном SVG style только сжимается
+    static void minify(InputStream inputStream, OutputStream outputStream, int precision, boolean foldStyles)
+            throws IOException {
+        XMLStreamReader reader;
+        try {
+            reader = inputFactory.createXMLStreamReader(inputStream);
+        } catch (XMLStreamException e) {
+            throw new IOException("SVG optimization failed", e);
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        try {
+            new Minification(reader, writer, precision, foldStyles).run();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("SVG optimization failed", e);
+        } finally {
+            try {
+                reader.close();
+            } catch (XMLStreamException ignored) {
+                // Входной поток закрывает вызывающий
+            }
+        }
+    }
+
+    private record Attribute(String name, String value) {
+    }
+
+    private static final class Minification {
+        private final XMLStreamReader reader;
+        private final Writer writer;
+        private final int precision;
+        private final boolean foldStyles;
+        private final List<Attribute> attributes = new ArrayList<>();
+        private int depth;
+        // Глубина, с которой начинается пропускаемое поддерево или текст с сохранением пробелов (-1 - нет)
+        private int skipFrom = -1;
+        private int preserveFrom = -1;
+        // Начальный тег записан без '>': если элемент окажется пустым, он закроется как "/>"
+        private boolean tagOpen;
+
+        Minification(XMLStreamReader reader, Writer writer, int precision, boolean foldStyles) {
+            this.reader = reader;
+            this.writer = writer;
+            this.precision = precision;
+            this.foldStyles = foldStyles;
+        }
+
+        void run() throws XMLStreamException, IOException {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> startElement();
+                    case XMLStreamConstants.END_ELEMENT -> endElement();
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> text();
+                    default -> {
+                        // Комментарии, инструкции обработки, DOCTYPE и объявление XML не переносятся
+                    }
+                }
+            }
+        }
+
+        private void startElement() throws IOException {
+            depth++;
+            if (skipFrom >= 0) {
+                return;
+            }
+            String name = reader.getLocalName();
+            if (EDITOR_NAMESPACES.contains(nullToEmpty(reader.getNamespaceURI())) || "metadata".equals(name)) {
+                skipFrom = depth;
+                return;
+            }
+            closeOpenTag();
+            if (preserveFrom < 0 && (TEXT_ELEMENTS.contains(name)
+                    || "preserve".equals(reader.getAttributeValue(XML_NAMESPACE, "space")))) {
+                preserveFrom = depth;
+            }
+
+            writer.write('<');
+            writer.write(qualifiedName(reader.getPrefix(), name));
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String uri = reader.getNamespaceURI(i);
+                if (EDITOR_NAMESPACES.contains(uri)) {
+                    continue;
+                }
+                String prefix = reader.getNamespacePrefix(i);
+                writeAttribute(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix, uri);
+            }
+            collectAttributes(depth == 1 && "svg".equals(name));
+            for (Attribute attribute : attributes) {
+                writeAttribute(attribute.name, attribute.value);
+            }
+            tagOpen = true;
+        }
+
+        private void collectAttributes(boolean root) {
+            attributes.clear();
+            String style = null;
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                if (EDITOR_NAMESPACES.contains(nullToEmpty(reader.getAttributeNamespace(i)))) {
+                    continue;
+                }
+                String prefix = reader.getAttributePrefix(i);
+                String name = reader.getAttributeLocalName(i);
+                String value = reader.getAttributeValue(i);
+                if (root && (value.equals(ROOT_DEFAULTS.get(name)) || "version".equals(name))) {
+                    continue;
+                }
+                if (prefix != null && !prefix.isEmpty()) {
+                    attributes.add(new Attribute(prefix + ":" + name, value));
+                } else if ("style".equals(name)) {
+                    style = value;
+                } else {
+                    attributes.add(new Attribute(name, minifyValue(name, value)));
+                }
+            }
+            if (style != null) {
+                foldStyle(style);
+            }
+        }
+
+        // Короткий style раскладывается в атрибуты (значения style важнее атрибутов), длинный остается сжатым
+        private void foldStyle(String style) {
+            List<Attribute> declarations = parseStyle(style);
+            if (declarations == null) {
+                attributes.add(new Attribute("style", style.trim()));
+                return;
+            }
+            if (declarations.isEmpty()) {
+                return;
+            }
+            boolean foldable = foldStyles && declarations.size() <= MAX_FOLDED_DECLARATIONS;
+            for (Attribute declaration : declarations) {
+                foldable &= PRESENTATION_ATTRIBUTES.contains(declaration.name);
+            }
+            if (foldable) {
+                for (Attribute declaration : declarations) {
+                    attributes.removeIf(attribute -> attribute.name.equals(declaration.name));
+                    attributes.add(declaration);
+                }
+                return;
+            }
+            StringBuilder folded = new StringBuilder(style.length());
+            for (Attribute declaration : declarations) {
+                if (!folded.isEmpty()) {
+                    folded.append(';');
+                }
+                folded.append(declaration.name).append(':').append(declaration.value);
+            }
+            attributes.add(new Attribute("style", folded.toString()));
+        }
+
+        // null, если style сложнее простого списка объявлений (комментарии, кавычки с ';', data:-ссылки, !important)
+        private List<Attribute> parseStyle(String style) {
+            if (style.contains("/*") || style.contains("\"") || style.contains("data:") || style.contains("!")) {
+                return null;
+            }
+            List<Attribute> declarations = new ArrayList<>();
+            for (String declaration : style.split(";")) {
+                int colon = declaration.indexOf(':');
+                if (colon < 0) {
+                    if (!declaration.isBlank()) {
+                        return null;
+                    }
+                    continue;
+                }
+                String name = declaration.substring(0, colon).trim();
+                String value = declaration.substring(colon + 1).trim();
+                if (name.isEmpty() || value.isEmpty()) {
+                    continue;
+                }
+                declarations.add(new Attribute(name, minifyValue(name, value)));
+            }
+            return declarations;
+        }
+
+        private void endElement() throws IOException {
+            if (skipFrom >= 0) {
+                if (depth-- == skipFrom) {
+                    skipFrom = -1;
+                }
+                return;
+            }
+            if (tagOpen) {
+                writer.write("/>");
+                tagOpen = false;
+            } else {
+                writer.write("</");
+                writer.write(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+                writer.write('>');
+            }
+            if (depth-- == preserveFrom) {
+                preserveFrom = -1;
+            }
+        }
+
+        private void text() throws IOException {
+            if (skipFrom >= 0 || depth == 0) {
+                return;
+            }
+            if (preserveFrom < 0 && reader.isWhiteSpace()) {
+                return;
+            }
+            closeOpenTag();
+            char[] text = reader.getTextCharacters();
+            int start = reader.getTextStart();
+            int end = start + reader.getTextLength();
+            for (int i = start; i < end; i++) {
+                char c = text[i];
+                switch (c) {
+                    case '&' -> writer.write("&amp;");
+                    case '<' -> writer.write("&lt;");
+                    case '>' -> writer.write("&gt;");
+                    default -> writer.write(c);
+                }
+            }
+        }
+
+        private void closeOpenTag() throws IOException {
+            if (tagOpen) {
+                writer.write('>');
+                tagOpen = false;
+            }
+        }
+
+        private String minifyValue(String name, String value) {
+            if (NUMERIC_ATTRIBUTES.contains(name)) {
+                return minifyNumbers(value, PATH_DATA_ATTRIBUTES.contains(name), precision);
+            }
+            if (COLOR_ATTRIBUTES.contains(name)) {
+                return minifyColor(value.trim());
+            }
+            return value;
+        }
+
+        private void writeAttribute(String name, String value) throws IOException {
+            writer.write(' ');
+            writer.write(name);
+            writer.write("=\"");
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '&' -> writer.write("&amp;");
+                    case '<' -> writer.write("&lt;");
+                    case '"' -> writer.write("&quot;");
+                    case '\n' -> writer.write("&#10;");
+                    case '\r' -> writer.write("&#13;");
+                    case '\t' -> writer.write("&#9;");
+                    default -> writer.write(c);
+                }
+            }
+            writer.write('"');
+        }
+    }
+
+    /**
+     * Округляет числа в списке до precision знаков после точки и убирает лишние разделители: пробел не нужен
+     * перед отрицательным числом, перед ".5" после дробного числа, вокруг скобок и команд пути.
+     */
+    static String minifyNumbers(String value, boolean pathData, int precision) {
+        StringBuilder result = new StringBuilder(value.length());
+        int i = 0;
+        int length = value.length();
+        boolean separator = false;
+        // Последний записанный токен: число (и было ли оно дробным), команда пути или прочий символ
+        boolean lastNumber = false;
+        boolean lastFraction = false;
+        boolean lastCommand = false;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c == ' ' || c == ',' || c == '\t' || c == '\n' || c == '\r') {
+                separator = true;
+                i++;
+                continue;
+            }
+            int end = numberEnd(value, i);
+            if (end > i) {
+                String number = formatNumber(value.substring(i, end), precision);
+                boolean needsSeparator;
+                if (lastNumber) {
+                    needsSeparator = number.charAt(0) != '-' && !(number.charAt(0) == '.' && lastFraction);
+                } else {
+                    needsSeparator = separator && !lastCommand && !result.isEmpty()
+                            && !isParenthesis(result.charAt(result.length() - 1));
+                }
+                if (needsSeparator) {
+                    result.append(' ');
+                }
+                result.append(number);
+                lastNumber = true;
+                lastFraction = number.indexOf('.') >= 0 || number.indexOf('e') >= 0;
+                lastCommand = false;
+                i = end;
+            } else {
+                boolean command = pathData && Character.isLetter(c);
+                if (separator && !command && !lastCommand && !isParenthesis(c) && !result.isEmpty()
+                        && !isParenthesis(result.charAt(result.length() - 1))) {
+                    result.append(' ');
+                }
+                result.append(c);
+                lastNumber = false;
+                lastCommand = command;
+                i++;
+            }
+            separator = false;
+        }
+        return result.toString();
+    }
+
+    // Вокруг скобок разделитель не нужен: "translate(1 2)scale(2)"
+    private static boolean isParenthesis(char c) {
+        return c == '(' || c == ')';
+    }
+
+    // Конец числа [+-]?(\d+\.?\d*|\.\d+)([eE][+-]?\d+)?, начинающегося в позиции start, или start
+    private static int numberEnd(String value, int start) {
+        int i = start;
+        int length = value.length();
+        if (start > 0 && Character.isLetter(value.charAt(start - 1)) && !isCommandBoundary(value, start)) {
+            return start;
+        }
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            i++;
+        }
+        int digits = 0;
+        while (i < length && Character.isDigit(value.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < length && value.charAt(i) == '.') {
+            i++;
+            while (i < length && Character.isDigit(value.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return start;
+        }
+        if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            int exponent = i + 1;
+            if (exponent < length && (value.charAt(exponent) == '-' || value.charAt(exponent) == '+')) {
+                exponent++;
+            }
+            if (exponent < length && Character.isDigit(value.charAt(exponent))) {
+                i = exponent;
+                while (i < length && Character.isDigit(value.charAt(i))) {
+                    i++;
+                }
+            }
+        }
+        return i;
+    }
+
+    // Число сразу после одиночной буквы - аргумент команды пути ("M10"), а не часть идентификатора ("x2", "skewX")
+    private static boolean isCommandBoundary(String value, int start) {
+        return start < 2 || !Character.isLetter(value.charAt(start - 2));
+    }
+
+    private static String formatNumber(String number, int precision) {
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            return number.charAt(0) == '+' ? number.substring(1) : number;
+        }
+        String formatted = new BigDecimal(number).setScale(precision, RoundingMode.HALF_UP)
+                .stripTrailingZeros().toPlainString();
+        if (formatted.startsWith("0.")) {
+            return formatted.substring(1);
+        }
+        if (formatted.startsWith("-0.")) {
+            return "-" + formatted.substring(2);
+        }
+        return "-0".equals(formatted) ? "0" : formatted;
+    }
+
+    // #rrggbb и rgb(r,g,b) в самую короткую запись #rgb/#rrggbb, остальные значения без изменений
+    static String minifyColor(String color) {
+        int rgb;
+        if (color.length() == 7 && color.charAt(0) == '#' && isHex(color, 1)) {
+            rgb = Integer.parseInt(color.substring(1), 16);
+        } else if (color.startsWith("rgb(") && color.endsWith(")")) {
+            String[] channels = color.substring(4, color.length() - 1).split(",");
+            if (channels.length != 3) {
+                return color;
+            }
+            rgb = 0;
+            for (String channel : channels) {
+                String trimmed = channel.trim();
+                if (trimmed.isEmpty() || !trimmed.chars().allMatch(Character::isDigit) || trimmed.length() > 3) {
+                    return color;
+                }
+                rgb = rgb << 8 | Math.min(255, Integer.parseInt(trimmed));
+            }
+        } else {
+            return color;
+        }
+        String hex = String.format("%06x", rgb);
+        if (hex.charAt(0) == hex.charAt(1) && hex.charAt(2) == hex.charAt(3) && hex.charAt(4) == hex.charAt(5)) {
+            return "#" + hex.charAt(0) + hex.charAt(2) + hex.charAt(4);
+        }
+        return "#" + hex;
+    }
+
+    private static boolean isHex(String value, int from) {
+        for (int i = from; i < value.length(); i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -1,15 +1,12 @@
 package com.edu.imageconversion.services;
 
-import org.apache.batik.transcoder.TranscoderException;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
-import org.apache.batik.transcoder.svg2svg.SVGTranscoder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,33 +15,48 @@ public class SvgOptimizationService {
 
     private static final Logger logger = Logger.getLogger(SvgOptimizationService.class.getName());
 
-    public byte[] optimizeSvg(byte[] svgData) throws IOException {
-        logger.info("Starting SVG optimization");
+    private final int precision;
+
+    public SvgOptimizationService(@Value("${image.processing.svg.precision:3}") int precision) {
+        this.precision = Math.max(0, precision);
+    }
 
+    // Параметры, от которых зависит результат: часть ключа кэша
+    public String settings() {
+        return "p" + precision;
+    }
+
+    public byte[] optimizeSvg(byte[] svgData) throws IOException {
         if (svgData == null || svgData.length == 0) {
             throw new IllegalArgumentException("SVG data is invalid or empty");
         }
 
-        try (StringWriter stringWriter = new StringWriter()) {
-
-            String svgContent = new String(svgData, StandardCharsets.UTF_8);
-            TranscoderInput input = new TranscoderInput(new StringReader(svgContent));
-            TranscoderOutput output = new TranscoderOutput(stringWriter);
+        ImageCodecs.OutputBuffer outputBuffer = ImageCodecs.borrowBuffer();
+        try {
+            optimizeSvg(new ByteArrayInputStream(svgData), outputBuffer);
+            return outputBuffer.toByteArray();
+        } finally {
+            outputBuffer.release();
+        }
+    }
 
-            SVGTranscoder transcoder = new SVGTranscoder();
+    // Потоковая оптимизация: документ читается и пишется за один проход, без строки и DOM на весь документ
+    public void optimizeSvg(InputStream svgInput, OutputStream svgOutput) throws IOException {
+        optimizeSvg(svgInput, svgOutput, false);
+    }
 
-            logger.info("Transcoding SVG...");
-            transcoder.transcode(input, output);
-            logger.info("Transcoding completed.");
+    // Для SVG от SVGGraphics2D: таблиц стилей в нем нет, поэтому короткий style раскладывается в атрибуты
+    public void optimizeGeneratedSvg(InputStream svgInput, OutputStream svgOutput) throws IOException {
+        optimizeSvg(svgInput, svgOutput, true);
+    }
 
-            // Convert the optimized SVG content back to bytes
-            return stringWriter.toString().getBytes(StandardCharsets.UTF_8);
-        } catch (TranscoderException e) {
-            logger.log(Level.SEVERE, "TranscoderException during SVG optimization: ", e);
-            throw new IOException("SVG optimization failed", e);
-        } catch (Exception ex) {
-            logger.log(Level.SEVERE, "Unexpected exception during SVG optimization: ", ex);
-            throw new IOException("Unexpected error during SVG optimization", ex);
+    private void optimizeSvg(InputStream svgInput, OutputStream svgOutput, boolean foldStyles) throws IOException {
+        logger.fine("Starting SVG optimization");
+        try {
+            SvgMinifier.minify(svgInput, svgOutput, precision, foldStyles);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Exception during SVG optimization: ", e);
+            throw e;
         }
     }
-}
\ No newline at end of file
+}
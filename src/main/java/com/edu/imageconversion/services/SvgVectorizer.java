@@ -0,0 +1,525 @@
+package com.edu.imageconversion.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Векторизация изображения после удаления фона в SVG-контуры вместо вставки растра через SVGGraphics2D.
+ * Непрозрачные пиксели квантуются до заданного числа цветов (median cut по гистограмме 5 бит на канал),
+ * границы областей каждого цвета обходятся по ребрам пикселей в замкнутые контуры, контуры при необходимости
+ * упрощаются (Дуглас-Пекер), и SVG пишется текстом прямо в поток, без DOM. Каждый цвет - один path
+ * с fill-rule="evenodd", поэтому дырки в областях получаются без отдельной обработки.
+ */
+@Service
+public class SvgVectorizer {
+
+    public enum Mode {
+        // Трассировка в контуры
+        TRACE,
+        // Прежний путь: растр внутри SVG через Batik
+        EMBED
+    }
+
+    private static final int TRANSPARENT = 0xFF;
+    private static final int MAX_COLORS = 254;
+    private static final int HISTOGRAM_BITS = 5;
+    private static final int HISTOGRAM_SIZE = 1 << (3 * HISTOGRAM_BITS);
+    private static final int ALPHA_THRESHOLD = 128;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    // Направления обхода: вправо, вниз, влево, вверх (по часовой стрелке, область справа по ходу)
+    private static final int[] DX = {1, 0, -1, 0};
+    private static final int[] DY = {0, 1, 0, -1};
+    // Порядок поворотов при обходе контура: направо, прямо, налево
+    private static final int[] TURNS = {1, 0, 3};
+
+    private final Mode mode;
+    private final int colors;
+    private final double simplify;
+
+    public SvgVectorizer(@Value("${image.processing.svg.mode:trace}") String mode,
+                         @Value("${image.processing.svg.colors:16}") int colors,
+                         @Value("${image.processing.svg.simplify:1.0}") double simplify) {
+        this.mode = Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+        this.colors = Math.max(1, Math.min(MAX_COLORS, colors));
+        this.simplify = Math.max(0, simplify);
+    }
+
+    public static SvgVectorizer tracing(int colors, double simplify) {
+        return new SvgVectorizer("trace", colors, simplify);
+    }
+
+    // Векторизация выключена, SVG собирается прежним способом через Batik
+    public static SvgVectorizer embedding() {
+        return new SvgVectorizer("embed", 16, 0);
+    }
+
+    public boolean isEnabled() {
+        return mode == Mode.TRACE;
+    }
+
+    // Параметры, от которых зависит результат: часть ключа кэша
+    public String settings() {
+        return mode == Mode.TRACE ? "trace-c" + colors + "-e" + simplify : "embed";
+    }
+
+    public void vectorize(BufferedImage image, OutputStream outputStream) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Quantization quantization = quantize(image);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.US_ASCII), WRITE_BUFFER_SIZE);
+        writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height
+                + "\" viewBox=\"0 0 " + width + " " + height + "\">");
+        ContourTracer tracer = new ContourTracer(quantization.labels, width, height);
+        for (int color = 0; color < quantization.palette.length; color++) {
+            if (quantization.bounds[color] == null) {
+                continue;
+            }
+            String fill = String.format("#%06x", quantization.palette[color]);
+            writer.write("<path fill=\"" + fill + "\"");
+            if (simplify > 0) {
+                // Соседние области упрощаются независимо; обводка тем же цветом закрывает щели между ними
+                writer.write(" stroke=\"" + fill + "\" stroke-width=\"1\" stroke-linejoin=\"round\"");
+            }
+            writer.write(" fill-rule=\"evenodd\" d=\"");
+            tracer.trace(color, quantization.bounds[color], simplify, writer);
+            writer.write("\"/>");
+        }
+        writer.write("</svg>");
+        writer.flush();
+    }
+
+    // Метки пикселей (индекс цвета палитры или TRANSPARENT), палитра и рамка каждого цвета
+    private record Quantization(byte[] labels, int[] palette, int[][] bounds) {
+    }
+
+    private Quantization quantize(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] counts = new int[HISTOGRAM_SIZE];
+        long[] sums = new long[HISTOGRAM_SIZE * 3];
+        // В метках сначала хранится ячейка гистограммы, потом она заменяется индексом цвета
+        short[] cells = new short[width * height];
+        int[] row = new int[width];
+        boolean hasAlpha = image.getColorModel().hasAlpha();
+
+        for (int y = 0; y < height; y++) {
+            int[] pixels = rowPixels(image, y, row);
+            int offset = pixels == row ? 0 : rowOffset(image, y);
+            for (int x = 0; x < width; x++) {
+                int argb = pixels[offset + x];
+                if (hasAlpha && (argb >>> 24) < ALPHA_THRESHOLD) {
+                    cells[y * width + x] = -1;
+                    continue;
+                }
+                int r = (argb >> 16) & 0xFF;
+                int g = (argb >> 8) & 0xFF;
+                int b = argb & 0xFF;
+                int cell = (r >> 3) << 10 | (g >> 3) << 5 | (b >> 3);
+                cells[y * width + x] = (short) cell;
+                counts[cell]++;
+                sums[cell * 3] += r;
+                sums[cell * 3 + 1] += g;
+                sums[cell * 3 + 2] += b;
+            }
+        }
+
+        MedianCut medianCut = new MedianCut(counts, sums, colors);
+        int[] cellColors = medianCut.cellColors();
+        int[] palette = medianCut.palette();
+
+        byte[] labels = new byte[width * height];
+        int[][] bounds = new int[palette.length][];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                if (cells[i] < 0) {
+                    labels[i] = (byte) TRANSPARENT;
+                    continue;
+                }
+                int color = cellColors[cells[i]];
+                labels[i] = (byte) color;
+                int[] box = bounds[color];
+                if (box == null) {
+                    bounds[color] = new int[]{x, y, x, y};
+                } else {
+                    box[0] = Math.min(box[0], x);
+                    box[2] = Math.max(box[2], x);
+                    box[3] = y;
+                }
+            }
+        }
+        return new Quantization(labels, palette, bounds);
+    }
+
+    // Строка пикселей: прямо из массива INT_RGB/INT_ARGB или через getRGB для прочих раскладок
+    private static int[] rowPixels(BufferedImage image, int y, int[] row) {
+        if ((image.getType() == BufferedImage.TYPE_INT_ARGB || image.getType() == BufferedImage.TYPE_INT_RGB)
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt ints
+                && image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            return ints.getData();
+        }
+        image.getRGB(0, y, image.getWidth(), 1, row, 0, image.getWidth());
+        return row;
+    }
+
+    private static int rowOffset(BufferedImage image, int y) {
+        DataBufferInt ints = (DataBufferInt) image.getRaster().getDataBuffer();
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) image.getRaster().getSampleModel();
+        int stride = sampleModel.getScanlineStride();
+        return ints.getOffset() - image.getRaster().getSampleModelTranslateY() * stride
+                - image.getRaster().getSampleModelTranslateX() + y * stride;
+    }
+
+    /**
+     * Median cut по непустым ячейкам гистограммы: на каждом шаге делится самая населенная коробка
+     * по каналу с наибольшим разбросом, в точке медианы по числу пикселей.
+     */
+    private static final class MedianCut {
+        private final int[] counts;
+        private final long[] sums;
+        private final int[] cells;
+        private final int[] sorted;
+        private final List<int[]> boxes = new ArrayList<>();
+
+        MedianCut(int[] counts, long[] sums, int maxColors) {
+            this.counts = counts;
+            this.sums = sums;
+            int used = 0;
+            for (int count : counts) {
+                if (count > 0) {
+                    used++;
+                }
+            }
+            this.cells = new int[used];
+            this.sorted = new int[used];
+            for (int cell = 0, i = 0; cell < counts.length; cell++) {
+                if (counts[cell] > 0) {
+                    cells[i++] = cell;
+                }
+            }
+            if (used > 0) {
+                boxes.add(new int[]{0, used});
+            }
+            while (boxes.size() < maxColors && split()) {
+                // Делим, пока есть что делить
+            }
+        }
+
+        private boolean split() {
+            int best = -1;
+            long bestPopulation = 0;
+            for (int i = 0; i < boxes.size(); i++) {
+                int[] box = boxes.get(i);
+                long population = population(box);
+                if (box[1] - box[0] > 1 && population > bestPopulation) {
+                    best = i;
+                    bestPopulation = population;
+                }
+            }
+            if (best < 0) {
+                return false;
+            }
+            int[] box = boxes.get(best);
+            int channel = widestChannel(box);
+            // Устойчивая сортировка подсчетом по 5-битному значению канала, без упаковки ячеек в Integer
+            int[] offsets = new int[(1 << HISTOGRAM_BITS) + 1];
+            for (int i = box[0]; i < box[1]; i++) {
+                offsets[component(cells[i], channel) + 1]++;
+            }
+            for (int value = 1; value < offsets.length; value++) {
+                offsets[value] += offsets[value - 1];
+            }
+            for (int i = box[0]; i < box[1]; i++) {
+                sorted[offsets[component(cells[i], channel)]++] = cells[i];
+            }
+            System.arraycopy(sorted, 0, cells, box[0], box[1] - box[0]);
+
+            long half = bestPopulation / 2;
+            long accumulated = 0;
+            int median = box[0];
+            while (median < box[1] - 1 && accumulated + counts[cells[median]] <= half) {
+                accumulated += counts[cells[median++]];
+            }
+            median = Math.max(box[0] + 1, median);
+            boxes.set(best, new int[]{box[0], median});
+            boxes.add(new int[]{median, box[1]});
+            return true;
+        }
+
+        private long population(int[] box) {
+            long population = 0;
+            for (int i = box[0]; i < box[1]; i++) {
+                population += counts[cells[i]];
+            }
+            return population;
+        }
+
+        private int widestChannel(int[] box) {
+            int widest = 0;
+            int widestRange = -1;
+            for (int channel = 0; channel < 3; channel++) {
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                for (int i = box[0]; i < box[1]; i++) {
+                    int value = component(cells[i], channel);
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                if (max - min > widestRange) {
+                    widest = channel;
+                    widestRange = max - min;
+                }
+            }
+            return widest;
+        }
+
+        private static int component(int cell, int channel) {
+            return (cell >> (10 - channel * 5)) & 0x1F;
+        }
+
+        int[] cellColors() {
+            int[] cellColors = new int[HISTOGRAM_SIZE];
+            for (int color = 0; color < boxes.size(); color++) {
+                int[] box = boxes.get(color);
+                for (int i = box[0]; i < box[1]; i++) {
+                    cellColors[cells[i]] = color;
+                }
+            }
+            return cellColors;
+        }
+
+        // Цвет коробки - среднее по всем ее пикселям
+        int[] palette() {
+            int[] palette = new int[boxes.size()];
+            for (int color = 0; color < boxes.size(); color++) {
+                int[] box = boxes.get(color);
+                long r = 0;
+                long g = 0;
+                long b = 0;
+                long population = 0;
+                for (int i = box[0]; i < box[1]; i++) {
+                    int cell = cells[i];
+                    r += sums[cell * 3];
+                    g += sums[cell * 3 + 1];
+                    b += sums[cell * 3 + 2];
+                    population += counts[cell];
+                }
+                palette[color] = (int) (r / population) << 16 | (int) (g / population) << 8 | (int) (b / population);
+            }
+            return palette;
+        }
+    }
+
+    /**
+     * Обход границ областей одного цвета по ребрам пикселей. Ребро принадлежит границе цвета c, если с одной
+     * стороны пиксель цвета c, а с другой - нет; обход идет по часовой стрелке (область справа), на седловых
+     * вершинах выбирается правый поворот. Каждое ребро-сторона посещается один раз.
+     */
+    private static final class ContourTracer {
+        private final byte[] labels;
+        private final int width;
+        private final int height;
+        // Горизонтальное ребро (x, y) лежит между пикселями (x, y-1) и (x, y), вертикальное (x, y) - между (x-1, y) и (x, y)
+        private final BitSet visitedHorizontal;
+        private final int[] points = new int[2];
+        private int[] path = new int[256];
+
+        ContourTracer(byte[] labels, int width, int height) {
+            this.labels = labels;
+            this.width = width;
+            this.height = height;
+            this.visitedHorizontal = new BitSet(width * (height + 1));
+        }
+
+        void trace(int color, int[] bounds, double simplify, Writer writer) throws IOException {
+            for (int y = bounds[1]; y <= bounds[3]; y++) {
+                for (int x = bounds[0]; x <= bounds[2]; x++) {
+                    // Начало контура - верхнее ребро пикселя цвета color, над которым другой цвет
+                    if (label(x, y) == color && label(x, y - 1) != color && !visitedHorizontal.get(y * width + x)) {
+                        int length = walk(color, x, y);
+                        if (simplify > 0) {
+                            length = simplify(length, simplify);
+                        }
+                        if (length >= 3 * 2) {
+                            writePath(length, writer);
+                        }
+                    }
+                }
+            }
+        }
+
+        private int label(int x, int y) {
+            if (x < 0 || y < 0 || x >= width || y >= height) {
+                return -1;
+            }
+            int label = labels[y * width + x] & 0xFF;
+            return label == TRANSPARENT ? -1 : label;
+        }
+
+        // Обходит контур от вершины (x, y) вправо, сохраняя в path только вершины смены направления
+        private int walk(int color, int startX, int startY) {
+            int length = 0;
+            int x = startX;
+            int y = startY;
+            int direction = 0;
+            int previousDirection = -1;
+            while (true) {
+                if (direction == 0) {
+                    visitedHorizontal.set(y * width + x);
+                }
+                if (direction != previousDirection) {
+                    if (length + 2 > path.length) {
+                        path = Arrays.copyOf(path, path.length * 2);
+                    }
+                    path[length++] = x;
+                    path[length++] = y;
+                }
+                x += DX[direction];
+                y += DY[direction];
+                previousDirection = direction;
+                direction = nextDirection(color, x, y, direction);
+                if (x == startX && y == startY && direction == 0) {
+                    return length;
+                }
+            }
+        }
+
+        // Следующее ребро из вершины (x, y): сначала правый поворот, затем прямо, затем левый
+        private int nextDirection(int color, int x, int y, int incoming) {
+            for (int turn : TURNS) {
+                int direction = (incoming + turn) & 3;
+                if (isBoundary(color, x, y, direction)) {
+                    return direction;
+                }
+            }
+            throw new IllegalStateException("Open contour at " + x + "," + y);
+        }
+
+        // Ребро из вершины в направлении direction - граница цвета color с областью справа по ходу
+        private boolean isBoundary(int color, int x, int y, int direction) {
+            return switch (direction) {
+                case 0 -> label(x, y) == color && label(x, y - 1) != color;
+                case 1 -> label(x - 1, y) == color && label(x, y) != color;
+                case 2 -> label(x - 1, y - 1) == color && label(x - 1, y) != color;
+                default -> label(x, y - 1) == color && label(x - 1, y - 1) != color;
+            };
+        }
+
+        // Дуглас-Пекер для замкнутого контура: делим его в первой и самой дальней от нее вершине
+        private int simplify(int length, double epsilon) {
+            int count = length / 2;
+            if (count < 4) {
+                return length;
+            }
+            int far = 1;
+            long farDistance = -1;
+            for (int i = 1; i < count; i++) {
+                long dx = path[i * 2] - path[0];
+                long dy = path[i * 2 + 1] - path[1];
+                if (dx * dx + dy * dy > farDistance) {
+                    far = i;
+                    farDistance = dx * dx + dy * dy;
+                }
+            }
+            boolean[] keep = new boolean[count + 1];
+            keep[0] = true;
+            keep[far] = true;
+            keep[count] = true;
+            mark(keep, 0, far, epsilon * epsilon, count);
+            mark(keep, far, count, epsilon * epsilon, count);
+
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (keep[i]) {
+                    path[kept * 2] = path[i * 2];
+                    path[kept * 2 + 1] = path[i * 2 + 1];
+                    kept++;
+                }
+            }
+            return kept * 2;
+        }
+
+        // Итеративно, чтобы длинные контуры не переполняли стек
+        private void mark(boolean[] keep, int from, int to, double epsilonSquared, int count) {
+            int[] stack = new int[64];
+            int top = 0;
+            stack[top++] = from;
+            stack[top++] = to;
+            while (top > 0) {
+                int end = stack[--top];
+                int start = stack[--top];
+                double ax = path[start * 2];
+                double ay = path[start * 2 + 1];
+                double bx = path[(end % count) * 2];
+                double by = path[(end % count) * 2 + 1];
+                double dx = bx - ax;
+                double dy = by - ay;
+                double lengthSquared = dx * dx + dy * dy;
+                int farthest = -1;
+                double farthestDistance = epsilonSquared;
+                for (int i = start + 1; i < end; i++) {
+                    double px = path[i * 2] - ax;
+                    double py = path[i * 2 + 1] - ay;
+                    double cross = px * dy - py * dx;
+                    double distance = lengthSquared == 0 ? px * px + py * py : cross * cross / lengthSquared;
+                    if (distance > farthestDistance) {
+                        farthest = i;
+                        farthestDistance = distance;
+                    }
+                }
+                if (farthest >= 0) {
+                    keep[farthest] = true;
+                    if (top + 4 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = start;
+                    stack[top++] = farthest;
+                    stack[top++] = farthest;
+                    stack[top++] = end;
+                }
+            }
+        }
+
+        // Абсолютная первая точка, дальше относительные команды: h/v для осевых отрезков, l для наклонных
+        private void writePath(int length, Writer writer) throws IOException {
+            writer.write('M');
+            writer.write(Integer.toString(path[0]));
+            writer.write(' ');
+            writer.write(Integer.toString(path[1]));
+            for (int i = 2; i < length; i += 2) {
+                int dx = path[i] - path[i - 2];
+                int dy = path[i + 1] - path[i - 1];
+                if (dy == 0) {
+                    writer.write('h');
+                    writer.write(Integer.toString(dx));
+                } else if (dx == 0) {
+                    writer.write('v');
+                    writer.write(Integer.toString(dy));
+                } else {
+                    writer.write('l');
+                    writer.write(Integer.toString(dx));
+                    writer.write(dy < 0 ? "" : " ");
+                    writer.write(Integer.toString(dy));
+                }
+            }
+            writer.write('z');
+        }
+    }
+}
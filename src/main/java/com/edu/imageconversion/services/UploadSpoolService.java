@@ -0,0 +1,114 @@
+package com.edu.imageconversion.services;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Перенос загрузок пакета в каталог на диске перед конвертацией. Контейнер уже записал каждую часть
+ * multipart во временный файл, и она переименовывается, а не копируется. Дальше хэш для кэша, заголовок
+ * для допуска и декодирование читают файл через отображение в память (SpooledMultipartFile), без копий
+ * в куче и без кэша потока ImageIO. После пакета файлы удаляются.
+ */
+@Service
+public class UploadSpoolService {
+    private static final Logger logger = LogManager.getLogger(UploadSpoolService.class);
+
+    private final boolean enabled;
+    private final Path directory;
+    private final ConversionMetrics metrics;
+
+    public UploadSpoolService(@Value("${image.processing.upload.mmap:true}") boolean enabled,
+                              @Value("${image.processing.upload.directory:}") String directory,
+                              ConversionMetrics metrics) throws IOException {
+        this.enabled = enabled;
+        this.directory = !enabled ? null : directory.isBlank()
+                ? Files.createTempDirectory("conversion-uploads")
+                : Files.createDirectories(Path.of(directory).toAbsolutePath());
+        this.metrics = metrics;
+    }
+
+    // Файлы читаются как есть, через getInputStream, например для бенчмарков отдельных этапов
+    public static UploadSpoolService disabled() {
+        try {
+            return new UploadSpoolService(false, "", ConversionMetrics.disabled());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Переносит файлы пакета в каталог загрузок. Уже сохраненные на диск файлы (задания конвертации)
+     * остаются на месте и при закрытии не удаляются.
+     */
+    public Spool spool(MultipartFile[] files) throws IOException {
+        if (!enabled) {
+            return new Spool(files, new boolean[files.length]);
+        }
+        MultipartFile[] spooled = new MultipartFile[files.length];
+        boolean[] owned = new boolean[files.length];
+        Spool spool = new Spool(spooled, owned);
+        try {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i] instanceof SpooledMultipartFile) {
+                    spooled[i] = files[i];
+                    continue;
+                }
+                long start = System.nanoTime();
+                // Абсолютный путь: относительный контейнер отсчитал бы от своего временного каталога
+                Path target = Files.createTempFile(directory, "upload-", ".part");
+                try {
+                    spooled[i] = SpooledMultipartFile.spool(files[i], target);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(target);
+                    throw e;
+                }
+                owned[i] = true;
+                metrics.recordStage(ConversionMetrics.Stage.READ, System.nanoTime() - start);
+            }
+        } catch (IOException | RuntimeException e) {
+            spool.close();
+            throw e;
+        }
+        return spool;
+    }
+
+    // Файлы пакета на диске; close() удаляет перенесенные загрузки
+    public static final class Spool implements AutoCloseable {
+        private final MultipartFile[] files;
+        private final boolean[] owned;
+
+        private Spool(MultipartFile[] files, boolean[] owned) {
+            this.files = files;
+            this.owned = owned;
+        }
+
+        public MultipartFile[] files() {
+            return files;
+        }
+
+        @Override
+        public void close() {
+            for (int i = 0; i < files.length; i++) {
+                if (owned[i] && files[i] instanceof SpooledMultipartFile spooled) {
+                    try {
+                        // Отображение, которое еще держит GC, удалению файла в Linux не мешает
+                        Files.deleteIfExists(spooled.getPath());
+                    } catch (IOException e) {
+                        logger.warn("Could not delete spooled upload {}", spooled.getPath(), e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.edu.imageconversion.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageWriteParam;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * WebP через плагин ImageIO (webp-imageio, libwebp в составе jar). Без плагина в classpath формат недоступен
+ * и не предлагается при согласовании. quality 1.0 - сжатие без потерь, меньше - с потерями с этим качеством.
+ * Уровень усилия 0-9 передается только для сжатия без потерь: libwebp трактует качество lossless как усилие,
+ * а отдельной настройки method у стандартного ImageWriteParam нет.
+ */
+@Service
+public class WebpImageEncoder implements ImageEncoder {
+
+    private static final String FORMAT = "webp";
+
+    private final int defaultLevel;
+    private final boolean available;
+
+    public WebpImageEncoder(@Value("${image.processing.webp.level:6}") int defaultLevel) {
+        this.defaultLevel = Math.max(0, Math.min(9, defaultLevel));
+        this.available = ImageCodecs.canWrite(FORMAT);
+    }
+
+    @Override
+    public String format() {
+        return FORMAT;
+    }
+
+    @Override
+    public String extension() {
+        return FORMAT;
+    }
+
+    @Override
+    public String mediaType() {
+        return "image/webp";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @Override
+    public int resolveLevel(float quality, int compressionLevel) {
+        return compressionLevel == PngEncoder.LEVEL_FROM_QUALITY ? defaultLevel : compressionLevel;
+    }
+
+    @Override
+    public void encode(BufferedImage image, float quality, int level, OutputStream outputStream) throws IOException {
+        boolean lossless = quality >= 1f;
+        ImageCodecs.write(image, FORMAT, param -> {
+            if (!param.canWriteCompressed()) {
+                return;
+            }
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            String type = compressionType(param, lossless ? "lossless" : "lossy");
+            if (type != null) {
+                param.setCompressionType(type);
+            }
+            param.setCompressionQuality(lossless ? level / 9f : Math.max(0f, quality));
+        }, outputStream);
+    }
+
+    private static String compressionType(ImageWriteParam param, String name) {
+        String[] types = param.getCompressionTypes();
+        if (types != null) {
+            for (String type : types) {
+                if (type.equalsIgnoreCase(name)) {
+                    return type;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,194 @@
+package com.edu.imageconversion.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Запись ZIP из уже сжатых элементов. В отличие от ZipOutputStream, который сжимает элемент в момент
+ * записи, здесь сжатие (compress) выполняется заранее и в любом потоке, а в архив вставляются готовые
+ * данные с известными CRC и размерами, поэтому дескрипторы данных после элементов не нужны.
+ * ZIP64 включается сам, если элементов больше 65535 или размеры и смещения не помещаются в 32 бита.
+ * Не потокобезопасен: вызовы add и finish упорядочивает владелец.
+ */
+final class ZipArchiveWriter {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final short ZIP64_EXTRA = 0x0001;
+    private static final short VERSION = 20;
+    private static final short VERSION_ZIP64 = 45;
+    // Бит 11: имена в UTF-8
+    private static final short UTF8_FLAG = 0x0800;
+    private static final short STORED = 0;
+    private static final short DEFLATED = 8;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private final OutputStream outputStream;
+    private final int dosTime;
+    private final int dosDate;
+    private final List<CentralRecord> central = new ArrayList<>();
+    private long offset;
+
+    ZipArchiveWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
+        LocalDateTime now = LocalDateTime.now();
+        this.dosTime = now.getHour() << 11 | now.getMinute() << 5 | now.getSecond() >> 1;
+        this.dosDate = Math.max(0, now.getYear() - 1980) << 9 | now.getMonthValue() << 5 | now.getDayOfMonth();
+    }
+
+    /**
+     * Сжимает содержимое элемента без записи в архив. level 0 или stored - без сжатия; если DEFLATE
+     * не уменьшил данные, элемент тоже сохраняется как есть, чтобы его не пришлось распаковывать.
+     */
+    static Entry compress(String name, byte[] content, int level, boolean stored) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if (stored || level == 0 || content.length == 0) {
+            return new Entry(name, STORED, crc.getValue(), content.length, content, content.length);
+        }
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            // Буфер размером с исходные данные: если сжатое в него не поместилось, сжатие не окупилось
+            byte[] compressed = new byte[content.length];
+            int length = 0;
+            while (!deflater.finished() && length < compressed.length) {
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            if (!deflater.finished()) {
+                return new Entry(name, STORED, crc.getValue(), content.length, content, content.length);
+            }
+            return new Entry(name, DEFLATED, crc.getValue(), content.length, compressed, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    void add(Entry entry) throws IOException {
+        byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+        boolean zip64Sizes = entry.size() >= MAX_32 || entry.length() >= MAX_32;
+        ByteBuffer header = buffer(30 + name.length + (zip64Sizes ? 20 : 0));
+        header.putInt(LOCAL_HEADER)
+                .putShort(zip64Sizes ? VERSION_ZIP64 : VERSION)
+                .putShort(UTF8_FLAG)
+                .putShort(entry.method())
+                .putShort((short) dosTime)
+                .putShort((short) dosDate)
+                .putInt((int) entry.crc())
+                .putInt((int) (zip64Sizes ? MAX_32 : entry.length()))
+                .putInt((int) (zip64Sizes ? MAX_32 : entry.size()))
+                .putShort((short) name.length)
+                .putShort((short) (zip64Sizes ? 20 : 0))
+                .put(name);
+        if (zip64Sizes) {
+            header.putShort(ZIP64_EXTRA).putShort((short) 16).putLong(entry.size()).putLong(entry.length());
+        }
+        central.add(new CentralRecord(name, entry.method(), entry.crc(), entry.size(), entry.length(), offset));
+        outputStream.write(header.array());
+        outputStream.write(entry.data(), 0, entry.length());
+        offset += header.capacity() + entry.length();
+    }
+
+    // Дописывает центральный каталог; сам выходной поток не закрывается
+    void finish() throws IOException {
+        long centralOffset = offset;
+        for (CentralRecord record : central) {
+            byte[] header = record.header(dosTime, dosDate);
+            outputStream.write(header);
+            offset += header.length;
+        }
+        long centralSize = offset - centralOffset;
+        boolean zip64 = central.size() >= MAX_16 || centralSize >= MAX_32 || centralOffset >= MAX_32;
+        if (zip64) {
+            long zip64EndOffset = offset;
+            ByteBuffer end = buffer(56 + 20);
+            end.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY)
+                    .putLong(44)
+                    .putShort(VERSION_ZIP64)
+                    .putShort(VERSION_ZIP64)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(central.size())
+                    .putLong(central.size())
+                    .putLong(centralSize)
+                    .putLong(centralOffset);
+            end.putInt(ZIP64_LOCATOR)
+                    .putInt(0)
+                    .putLong(zip64EndOffset)
+                    .putInt(1);
+            outputStream.write(end.array());
+            offset += end.capacity();
+        }
+        ByteBuffer end = buffer(22);
+        end.putInt(END_OF_CENTRAL_DIRECTORY)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) Math.min(central.size(), MAX_16))
+                .putShort((short) Math.min(central.size(), MAX_16))
+                .putInt((int) Math.min(centralSize, MAX_32))
+                .putInt((int) Math.min(centralOffset, MAX_32))
+                .putShort((short) 0);
+        outputStream.write(end.array());
+        offset += end.capacity();
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Элемент, готовый к вставке в архив: data[0, length) - сжатые (или исходные) байты, size - исходный размер
+    record Entry(String name, short method, long crc, long size, byte[] data, int length) {
+    }
+
+    private record CentralRecord(byte[] name, short method, long crc, long size, long length, long offset) {
+
+        byte[] header(int dosTime, int dosDate) {
+            // В ZIP64-расширение попадают только поля, которые не поместились в 32 бита, в этом порядке
+            int extra = (size >= MAX_32 ? 8 : 0) + (length >= MAX_32 ? 8 : 0) + (offset >= MAX_32 ? 8 : 0);
+            ByteBuffer header = buffer(46 + name.length + (extra > 0 ? 4 + extra : 0));
+            header.putInt(CENTRAL_HEADER)
+                    .putShort(extra > 0 ? VERSION_ZIP64 : VERSION)
+                    .putShort(extra > 0 ? VERSION_ZIP64 : VERSION)
+                    .putShort(UTF8_FLAG)
+                    .putShort(method)
+                    .putShort((short) dosTime)
+                    .putShort((short) dosDate)
+                    .putInt((int) crc)
+                    .putInt((int) Math.min(length, MAX_32))
+                    .putInt((int) Math.min(size, MAX_32))
+                    .putShort((short) name.length)
+                    .putShort((short) (extra > 0 ? 4 + extra : 0))
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putInt(0)
+                    .putInt((int) Math.min(offset, MAX_32))
+                    .put(name);
+            if (extra > 0) {
+                header.putShort(ZIP64_EXTRA).putShort((short) extra);
+                if (size >= MAX_32) {
+                    header.putLong(size);
+                }
+                if (length >= MAX_32) {
+                    header.putLong(length);
+                }
+                if (offset >= MAX_32) {
+                    header.putLong(offset);
+                }
+            }
+            return header.array();
+        }
+    }
+}
@@ -1,26 +1,130 @@
 package com.edu.imageconversion.services;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+/**
+ * Сборка архива результатов. Элементы сжимаются заранее и независимо (ZipArchiveWriter.compress),
+ * а в архив вставляются готовыми: zipFiles сжимает их параллельно в пуле планировщика, ZipStream -
+ * в воркерах до передачи результата (prepare), а поток запроса только дописывает готовый элемент. Форматы, уже сжатые внутри (PNG, JPEG,
+ * WebP, GIF), сохраняются без DEFLATE: повторное сжатие почти не уменьшает их, а время тратит.
+ */
 @Service
 public class ZipService {
+    private static final Set<String> DEFAULT_STORED_FORMATS = Set.of("png", "jpeg", "jpg", "webp", "gif");
+
+    private final ConversionMetrics metrics;
+    private final ConversionScheduler scheduler;
+    private final int level;
+    private final Set<String> storedFormats;
+
+    public ZipService(ConversionMetrics metrics,
+                      ConversionScheduler scheduler,
+                      @Value("${image.processing.zip.level:6}") int level,
+                      @Value("${image.processing.zip.stored-formats:png,jpeg,jpg,webp,gif}") Set<String> storedFormats) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("ZIP compression level must be between 0 and 9: " + level);
+        }
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        this.level = level;
+        this.storedFormats = storedFormats.stream()
+                .map(format -> format.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    // Параметры по умолчанию, например для тестов и бенчмарков без контекста Spring
+    public static ZipService defaults(ConversionMetrics metrics, ConversionScheduler scheduler) {
+        return new ZipService(metrics, scheduler, 6, DEFAULT_STORED_FORMATS);
+    }
 
     public byte[] zipFiles(byte[][] files, String format) throws IOException {
+        long start = System.nanoTime();
+        boolean stored = isStored(format);
+        // Сжатие элементов параллельно в пуле планировщика, запись в архив - по порядку
+        ZipArchiveWriter.Entry[] entries = scheduler.execute(() -> IntStream.range(0, files.length)
+                .parallel()
+                .mapToObj(i -> ZipArchiveWriter.compress(entryName(i, format), files[i], level, stored))
+                .toArray(ZipArchiveWriter.Entry[]::new));
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(byteArrayOutputStream)) {
-            for (int i = 0; i < files.length; i++) {
-                ZipEntry zipEntry = new ZipEntry("image" + (i + 1) + "." + format);
-                zipOutputStream.putNextEntry(zipEntry);
-                zipOutputStream.write(files[i]);
-                zipOutputStream.closeEntry();
-            }
+        ZipArchiveWriter writer = new ZipArchiveWriter(byteArrayOutputStream);
+        for (ZipArchiveWriter.Entry entry : entries) {
+            writer.add(entry);
+        }
+        writer.finish();
+
+        byte[] archive = byteArrayOutputStream.toByteArray();
+        metrics.recordStage(ConversionMetrics.Stage.ZIP, System.nanoTime() - start);
+        return archive;
+    }
+
+    public ZipStream openZipStream(OutputStream outputStream, String format) {
+        return new ZipStream(outputStream, format, level, isStored(format), metrics);
+    }
+
+    private boolean isStored(String format) {
+        return storedFormats.contains(format.toLowerCase(Locale.ROOT));
+    }
+
+    private static String entryName(int index, String format) {
+        return "image" + (index + 1) + "." + format;
+    }
+
+    /**
+     * Архив, который пишется прямо в выходной поток: каждый элемент добавляется и отправляется сразу, как только готов.
+     * Запись не потокобезопасна: действия prepare, accept и finish выполняются одним потоком запроса,
+     * так что в сокет воркеры не пишут и медленного клиента не ждут. Сам prepare сжимает элемент и
+     * вызывается из воркеров параллельно.
+     */
+    public static class ZipStream implements ConvertedImageConsumer {
+        private final ZipArchiveWriter writer;
+        private final OutputStream outputStream;
+        private final String format;
+        private final int level;
+        private final boolean stored;
+        private final ConversionMetrics metrics;
+
+        private ZipStream(OutputStream outputStream, String format, int level, boolean stored, ConversionMetrics metrics) {
+            this.writer = new ZipArchiveWriter(outputStream);
+            this.outputStream = outputStream;
+            this.format = format;
+            this.level = level;
+            this.stored = stored;
+            this.metrics = metrics;
         }
 
-        return byteArrayOutputStream.toByteArray();
+        @Override
+        public void accept(int index, byte[] image) throws IOException {
+            prepare(index, image).apply();
+        }
+
+        // Элемент сжимается в вызывающем воркере; время элемента включает сжатие и отправку клиенту:
+        // flush ждет, пока медленный клиент примет данные
+        @Override
+        public Prepared prepare(int index, byte[] image) {
+            long start = System.nanoTime();
+            ZipArchiveWriter.Entry entry = ZipArchiveWriter.compress(entryName(index, format), image, level, stored);
+            long compressNanos = System.nanoTime() - start;
+            return () -> {
+                long writeStart = System.nanoTime();
+                writer.add(entry);
+                outputStream.flush();
+                metrics.recordStage(ConversionMetrics.Stage.ZIP, compressNanos + System.nanoTime() - writeStart);
+            };
+        }
+
+        // Дописывает центральный каталог; сам выходной поток не закрывается
+        public void finish() throws IOException {
+            writer.finish();
+            outputStream.flush();
+        }
     }
-}
\ No newline at end of file
+}
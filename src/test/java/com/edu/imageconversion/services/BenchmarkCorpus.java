@@ -0,0 +1,95 @@
+package com.edu.imageconversion.services;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+// Детерминированный набор загружаемых файлов для бенчмарков: при каждом запуске одни и те же байты.
+// В пакете чередуются DISTINCT_IMAGES разных снимков, закодированных в PNG или JPEG, как приходят от клиентов.
+final class BenchmarkCorpus {
+
+	static final int DISTINCT_IMAGES = 8;
+
+	private BenchmarkCorpus() {
+	}
+
+	static MultipartFile[] batch(int count, double megapixels, String encoding) throws IOException {
+		byte[][] distinct = new byte[Math.min(count, DISTINCT_IMAGES)][];
+		for (int i = 0; i < distinct.length; i++) {
+			distinct[i] = encode(SyntheticImages.productPhoto(megapixels, BufferedImage.TYPE_3BYTE_BGR, i), encoding);
+		}
+		MultipartFile[] files = new MultipartFile[count];
+		for (int i = 0; i < count; i++) {
+			files[i] = new BytesMultipartFile("photo" + i + "." + encoding, distinct[i % distinct.length]);
+		}
+		return files;
+	}
+
+	static byte[] encode(BufferedImage image, String encoding) throws IOException {
+		if ("png".equals(encoding)) {
+			return PngEncoder.encode(image, 1, null);
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		if (!ImageIO.write(image, encoding, output)) {
+			throw new IOException("No ImageIO writer for " + encoding);
+		}
+		return output.toByteArray();
+	}
+
+	static ImageProcessingService service(ConversionScheduler scheduler, boolean tileParallel) {
+		return services(scheduler).tileParallel(tileParallel).build();
+	}
+
+	// Сервис для тестов и бенчмарков: по умолчанию без кэша, конвейера, метрик и спула,
+	// векторизация трассировкой, без деления на полосы и без прореживания углов
+	static ServiceBuilder services(ConversionScheduler scheduler) {
+		return new ServiceBuilder(scheduler);
+	}
+
+	static final class ServiceBuilder {
+		private final ConversionScheduler scheduler;
+		private SvgVectorizer vectorizer = SvgVectorizer.tracing(16, 1.0);
+		private ConversionPipeline pipeline = ConversionPipeline.disabled();
+		private ConversionMetrics metrics = ConversionMetrics.disabled();
+		private boolean tileParallel;
+		private int sampleStride = 1;
+
+		private ServiceBuilder(ConversionScheduler scheduler) {
+			this.scheduler = scheduler;
+		}
+
+		ServiceBuilder vectorizer(SvgVectorizer vectorizer) {
+			this.vectorizer = vectorizer;
+			return this;
+		}
+
+		ServiceBuilder pipeline(ConversionPipeline pipeline) {
+			this.pipeline = pipeline;
+			return this;
+		}
+
+		ServiceBuilder metrics(ConversionMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
+		ServiceBuilder tileParallel(boolean tileParallel) {
+			this.tileParallel = tileParallel;
+			return this;
+		}
+
+		ServiceBuilder sampleStride(int sampleStride) {
+			this.sampleStride = sampleStride;
+			return this;
+		}
+
+		ImageProcessingService build() {
+			return new ImageProcessingService(new SvgOptimizationService(3), vectorizer,
+					ImageEncoderRegistry.defaults(scheduler, tileParallel), ConversionCacheService.disabled(), scheduler,
+					pipeline, metrics, UploadSpoolService.disabled(), tileParallel, sampleStride);
+		}
+	}
+}
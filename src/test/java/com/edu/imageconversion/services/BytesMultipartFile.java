@@ -0,0 +1,61 @@
+package com.edu.imageconversion.services;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+// Загруженный файл в памяти для вызова сервисов без веб-слоя
+final class BytesMultipartFile implements MultipartFile {
+
+	private final String name;
+	private final byte[] content;
+
+	BytesMultipartFile(String name, byte[] content) {
+		this.name = name;
+		this.content = content;
+	}
+
+	@Override
+	public String getName() {
+		return "files";
+	}
+
+	@Override
+	public String getOriginalFilename() {
+		return name;
+	}
+
+	@Override
+	public String getContentType() {
+		return null;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return content.length == 0;
+	}
+
+	@Override
+	public long getSize() {
+		return content.length;
+	}
+
+	@Override
+	public byte[] getBytes() {
+		return content;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return new ByteArrayInputStream(content);
+	}
+
+	@Override
+	public void transferTo(File dest) throws IOException {
+		Files.write(dest.toPath(), content);
+	}
+}
@@ -0,0 +1,36 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColorHistogramTests {
+
+	@Test
+	void findsMostFrequentColorIgnoringAlpha() {
+		ColorHistogram histogram = new ColorHistogram();
+		for (int i = 0; i < 5000; i++) {
+			histogram.add(0xFF000000 | i * 31);
+		}
+		histogram.add(0x00ABCDEF);
+		histogram.add(0xFFABCDEF);
+		histogram.add(0x7FABCDEF);
+
+		assertEquals(0xABCDEF, histogram.color(histogram.uniqueMaximum()));
+	}
+
+	@Test
+	void reportsTiesAndStartsEmptyAfterClear() {
+		ColorHistogram histogram = new ColorHistogram();
+		histogram.add(0x111111);
+		histogram.add(0x222222);
+		assertEquals(-1, histogram.uniqueMaximum());
+
+		histogram.clear();
+		assertEquals(0, histogram.size());
+		assertEquals(-1, histogram.uniqueMaximum());
+
+		histogram.add(0x222222);
+		assertEquals(0x222222, histogram.color(histogram.uniqueMaximum()));
+	}
+}
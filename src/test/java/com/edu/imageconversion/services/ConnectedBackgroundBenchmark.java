@@ -0,0 +1,104 @@
+package com.edu.imageconversion.services;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Глобальное удаление фона против режима connected (только фон, связанный с краем) на крупных изображениях.
+// interior=true добавляет в центр предмета области цвета фона, которые connected должен восстановить.
+// Счётчик megapixels даёт мегапиксели в секунду, gc.alloc.rate.norm из GCProfiler - байты на одно изображение.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConnectedBackgroundBenchmark {
+
+	@Param({"1", "12", "24"})
+	public double megapixels;
+
+	@Param({"false", "true"})
+	public boolean tileParallel;
+
+	@Param({"false", "true"})
+	public boolean interior;
+
+	private BufferedImage source;
+	private ConversionScheduler scheduler;
+	private ImageProcessingService service;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Pixels {
+		public double megapixels;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			megapixels = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		source = SyntheticImages.productPhoto(megapixels, BufferedImage.TYPE_3BYTE_BGR, 42);
+		if (interior) {
+			// Полосы цвета фона внутри предмета: около 5% площади изображения
+			int width = source.getWidth();
+			int height = source.getHeight();
+			Graphics2D g = source.createGraphics();
+			g.setColor(new Color(SyntheticImages.BACKGROUND_RGB));
+			for (int i = 0; i < 4; i++) {
+				g.fillRect(width * 2 / 5, height * (7 + 2 * i) / 20, width / 5, height / 16);
+			}
+			g.dispose();
+		}
+		scheduler = ConversionScheduler.withWorkers(Runtime.getRuntime().availableProcessors());
+		service = BenchmarkCorpus.service(scheduler, tileParallel);
+	}
+
+	@TearDown
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+
+	@Benchmark
+	public BufferedImage global(Pixels pixels) throws IOException {
+		pixels.megapixels += megapixels;
+		return service.removeBackground(source, BackgroundRemovalMode.GLOBAL);
+	}
+
+	@Benchmark
+	public BufferedImage connected(Pixels pixels) throws IOException {
+		pixels.megapixels += megapixels;
+		return service.removeBackground(source, BackgroundRemovalMode.CONNECTED);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(ConnectedBackgroundBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,132 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConnectedBackgroundRemoverTests {
+
+	private static final int WHITE = 0xFFFFFFFF;
+
+	@Test
+	void keepsBackgroundColoredRegionsInsideTheSubject() throws IOException {
+		// Белый логотип внутри темной рамки на белом фоне
+		BufferedImage source = new BufferedImage(200, 160, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = source.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, 200, 160);
+		g.setColor(new Color(0x203040));
+		g.fillRect(50, 40, 100, 80);
+		g.setColor(Color.WHITE);
+		g.fillRect(70, 60, 60, 40);
+		g.dispose();
+
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(1);
+		try {
+			ImageProcessingService service = BenchmarkCorpus.service(scheduler, false);
+			int[] global = argb(service.removeBackground(source, BackgroundRemovalMode.GLOBAL));
+			int[] connected = argb(service.removeBackground(source, BackgroundRemovalMode.CONNECTED));
+
+			assertEquals(RasterBackgroundRemover.TRANSPARENT_PIXEL, connected[10 * 200 + 10]);
+			assertEquals(0xFF203040, connected[45 * 200 + 55]);
+			assertEquals(WHITE, connected[80 * 200 + 100]);
+			assertEquals(RasterBackgroundRemover.TRANSPARENT_PIXEL, global[80 * 200 + 100]);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void matchesReferenceFloodFillAcrossWordBoundaries() {
+		Random random = new Random(17);
+		for (int width : new int[]{1, 2, 63, 64, 65, 130, 200}) {
+			for (int height : new int[]{1, 3, 57}) {
+				// Лабиринт из пикселей фона и предмета, чтобы отрезки часто обрывались и продолжались
+				BufferedImage source = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+				for (int y = 0; y < height; y++) {
+					for (int x = 0; x < width; x++) {
+						source.setRGB(x, y, random.nextInt(100) < 60 ? 0xF0F0F0 : 0x102030);
+					}
+				}
+				int[] expected = referenceFill(source, 0xFFFFFF, 30);
+
+				BufferedImage actual = RasterBackgroundRemover.createTarget(width, height);
+				int[] target = RasterBackgroundRemover.pixels(actual);
+				long[] candidates = ConnectedBackgroundRemover.candidates(width, height);
+				// Строки обрабатываются независимо, в любом порядке
+				ConnectedBackgroundRemover.prepare(source, target, candidates, 0xFFFFFF, 30, height / 2, height);
+				ConnectedBackgroundRemover.prepare(source, target, candidates, 0xFFFFFF, 30, 0, height / 2);
+				ConnectedBackgroundRemover.fill(source, target, candidates);
+
+				assertArrayEquals(expected, target, width + "x" + height);
+			}
+		}
+	}
+
+	@Test
+	void tileParallelResultMatchesSequential() throws IOException {
+		BufferedImage source = SyntheticImages.productPhoto(1200, 900, BufferedImage.TYPE_3BYTE_BGR, 5);
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(4);
+		try {
+			int[] sequential = argb(BenchmarkCorpus.service(scheduler, false).removeBackground(source, BackgroundRemovalMode.CONNECTED));
+			int[] parallel = argb(BenchmarkCorpus.service(scheduler, true).removeBackground(source, BackgroundRemovalMode.CONNECTED));
+			assertArrayEquals(sequential, parallel);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	// Попиксельная заливка в ширину от всех краевых пикселей, как эталон
+	private static int[] referenceFill(BufferedImage source, int backgroundRgb, int tolerance) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int[] pixels = argb(source);
+		boolean[] visited = new boolean[width * height];
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (x == 0 || y == 0 || x == width - 1 || y == height - 1) {
+					queue.add(y * width + x);
+				}
+			}
+		}
+		int bgR = (backgroundRgb >> 16) & 0xFF;
+		int bgG = (backgroundRgb >> 8) & 0xFF;
+		int bgB = backgroundRgb & 0xFF;
+		while (!queue.isEmpty()) {
+			int index = queue.poll();
+			if (visited[index] || RasterBackgroundRemover.filter(pixels[index], bgR, bgG, bgB, tolerance) != RasterBackgroundRemover.TRANSPARENT_PIXEL) {
+				continue;
+			}
+			visited[index] = true;
+			pixels[index] = RasterBackgroundRemover.TRANSPARENT_PIXEL;
+			int x = index % width;
+			int y = index / width;
+			if (x > 0) {
+				queue.add(index - 1);
+			}
+			if (x < width - 1) {
+				queue.add(index + 1);
+			}
+			if (y > 0) {
+				queue.add(index - width);
+			}
+			if (y < height - 1) {
+				queue.add(index + width);
+			}
+		}
+		return pixels;
+	}
+
+	private static int[] argb(BufferedImage image) {
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+}
@@ -0,0 +1,95 @@
+package com.edu.imageconversion.services;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Полный путь конвертации пакета (чтение, удаление фона, кодирование) через convertImages и convertImagesParallel
+// при разном размере пакета и числе воркеров планировщика. Пропускная способность - пакеты в секунду,
+// счётчик images - изображения в секунду; выделение памяти - с профилировщиком gc (-prof gc).
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+
+	@Param({"1", "2", "4", "8"})
+	public int workers;
+
+	@Param({"1", "8", "32"})
+	public int batchSize;
+
+	@Param({"1", "3"})
+	public double megapixels;
+
+	@Param({"png", "jpeg"})
+	public String input;
+
+	private ConversionScheduler scheduler;
+	private ImageProcessingService service;
+	private MultipartFile[] batch;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Images {
+		public long images;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			images = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		scheduler = ConversionScheduler.withWorkers(workers);
+		service = BenchmarkCorpus.service(scheduler, true);
+		batch = BenchmarkCorpus.batch(batchSize, megapixels, input);
+	}
+
+	@TearDown
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+
+	// Весь пакет в одном воркере, изображения по очереди
+	@Benchmark
+	public byte[][] convertImages(Images images) throws IOException {
+		images.images += batchSize;
+		return service.convertImages(batch, "png", 0.8f);
+	}
+
+	@Benchmark
+	public byte[][] convertImagesParallel(Images images) throws IOException {
+		images.images += batchSize;
+		return service.convertImagesParallel(batch, "png", 0.8f);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(ConversionBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
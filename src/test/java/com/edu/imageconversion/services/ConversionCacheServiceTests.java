@@ -0,0 +1,266 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionCacheServiceTests {
+
+	private static final ConversionOptions PNG = options("png", "");
+
+	@Test
+	void returnsHeapHitsWithoutReloading() throws IOException {
+		ConversionCacheService cache = new ConversionCacheService(true, DataSize.ofMegabytes(1), "", DataSize.ofBytes(0));
+		ConversionCacheService.CacheKey key = cache.key(file(1), PNG);
+		AtomicInteger loads = new AtomicInteger();
+		byte[] result = {1, 2, 3};
+
+		byte[] first = cache.get(key, () -> {
+			loads.incrementAndGet();
+			return result;
+		});
+		// Тот же файл, загруженный заново, дает тот же ключ
+		byte[] second = cache.get(cache.key(file(1), PNG), () -> {
+			loads.incrementAndGet();
+			return new byte[0];
+		});
+
+		assertSame(result, first);
+		assertSame(result, second);
+		assertEquals(1, loads.get());
+		ConversionCacheService.Stats stats = cache.stats();
+		assertEquals(1, stats.heapHits());
+		assertEquals(1, stats.misses());
+		assertEquals(result.length, stats.heapBytes());
+	}
+
+	@Test
+	void coalescesConcurrentLoadsOfSameKey() throws Exception {
+		ConversionCacheService cache = new ConversionCacheService(true, DataSize.ofMegabytes(1), "", DataSize.ofBytes(0));
+		ConversionCacheService.CacheKey key = cache.key(file(2), PNG);
+		int callers = 6;
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(callers);
+		try {
+			List<Future<byte[]>> results = new ArrayList<>();
+			results.add(executor.submit(() -> cache.get(key, () -> {
+				loads.incrementAndGet();
+				loading.countDown();
+				await(release);
+				return new byte[]{42};
+			})));
+			assertTrue(loading.await(10, TimeUnit.SECONDS));
+			for (int i = 1; i < callers; i++) {
+				results.add(executor.submit(() -> cache.get(key, () -> {
+					loads.incrementAndGet();
+					return new byte[]{-1};
+				})));
+			}
+			// Остальные вызовы встают в ожидание первой загрузки, пока она не завершилась
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (cache.stats().sharedLoads() < callers - 1 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+
+			for (Future<byte[]> result : results) {
+				assertArrayEquals(new byte[]{42}, result.get(10, TimeUnit.SECONDS));
+			}
+			assertEquals(1, loads.get());
+			assertEquals(callers - 1, cache.stats().sharedLoads());
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void sharedLoadsRethrowUnwrappedRuntimeFailure() throws Exception {
+		ConversionCacheService cache = new ConversionCacheService(true, DataSize.ofMegabytes(1), "", DataSize.ofBytes(0));
+		ConversionCacheService.CacheKey key = cache.key(file(6), PNG);
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		IllegalArgumentException failure = new IllegalArgumentException("unsupported image");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<byte[]> owner = executor.submit(() -> cache.get(key, () -> {
+				loading.countDown();
+				await(release);
+				throw failure;
+			}));
+			assertTrue(loading.await(10, TimeUnit.SECONDS));
+			Future<byte[]> waiter = executor.submit(() -> cache.get(key, () -> new byte[0]));
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (cache.stats().sharedLoads() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+
+			// Ожидающий получает то же исключение, что и загружавший поток, без CompletionException
+			assertSame(failure, assertThrows(ExecutionException.class, () -> owner.get(10, TimeUnit.SECONDS)).getCause());
+			assertSame(failure, assertThrows(ExecutionException.class, () -> waiter.get(10, TimeUnit.SECONDS)).getCause());
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void spillsEvictedEntriesToDiskAndReadsThemAfterRestart() throws Exception {
+		Path directory = Files.createTempDirectory("conversion-cache-test");
+		try {
+			// В кучу помещается только один результат, второй вытесняет первый на диск
+			ConversionCacheService cache = new ConversionCacheService(true, DataSize.ofBytes(1000),
+					directory.toString(), DataSize.ofMegabytes(1));
+			ConversionCacheService.CacheKey first = cache.key(file(3), PNG);
+			ConversionCacheService.CacheKey second = cache.key(file(4), PNG);
+			cache.put(first, content(600, 1));
+			cache.put(second, content(600, 2));
+
+			// Вытеснение в Caffeine асинхронное; размер диска учитывается после того, как файл появился
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (cache.stats().diskBytes() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(1, files(directory));
+			assertEquals(1, cache.stats().heapEvictions());
+			assertEquals(600, cache.stats().diskBytes());
+
+			// Новый экземпляр на том же каталоге, как после перезапуска: куча пуста, диск прочитан
+			ConversionCacheService restarted = new ConversionCacheService(true, DataSize.ofBytes(1000),
+					directory.toString(), DataSize.ofMegabytes(1));
+			assertEquals(600, restarted.stats().diskBytes());
+			AtomicInteger loads = new AtomicInteger();
+			byte[] firstResult = restarted.get(first, () -> {
+				loads.incrementAndGet();
+				return content(600, 1);
+			});
+			byte[] secondResult = restarted.get(second, () -> {
+				loads.incrementAndGet();
+				return content(600, 2);
+			});
+
+			assertArrayEquals(content(600, 1), firstResult);
+			assertArrayEquals(content(600, 2), secondResult);
+			// Вытесненный результат прочитан с диска, второй был только в куче прежнего экземпляра
+			assertEquals(1, loads.get());
+			assertEquals(1, restarted.stats().diskHits());
+		} finally {
+			FileSystemUtils.deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	void trimsOnlyFinishedDiskEntries() throws Exception {
+		Path directory = Files.createTempDirectory("conversion-cache-test");
+		try {
+			// Оставшийся после остановки временный файл удаляется при запуске
+			Files.write(directory.resolve("spill-stale.tmp"), new byte[100]);
+			ConversionCacheService cache = new ConversionCacheService(true, DataSize.ofBytes(1000),
+					directory.toString(), DataSize.ofBytes(1000));
+			assertFalse(Files.exists(directory.resolve("spill-stale.tmp")));
+			assertEquals(0, cache.stats().diskBytes());
+
+			// Временный файл, который еще пишет другой поток, при вытеснении не удаляется и не вычитается
+			Path inProgress = directory.resolve("spill-in-progress.tmp");
+			Files.write(inProgress, new byte[5000]);
+			cache.put(cache.key(file(7), PNG), content(600, 7));
+			cache.put(cache.key(file(8), PNG), content(600, 8));
+			cache.put(cache.key(file(9), PNG), content(600, 9));
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (cache.stats().diskEvictions() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(1, cache.stats().diskEvictions());
+			assertEquals(600, cache.stats().diskBytes());
+			assertEquals(1, files(directory));
+			assertTrue(Files.exists(inProgress));
+		} finally {
+			FileSystemUtils.deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	void separatesKeysByOptions() throws IOException {
+		ConversionCacheService cache = new ConversionCacheService(true, DataSize.ofMegabytes(1), "", DataSize.ofBytes(0));
+		ConversionOptions whiteMatte = options("jpeg", new JpegImageEncoder("#ffffff", 4).settings());
+		ConversionOptions blackMatte = options("jpeg", new JpegImageEncoder("#000000", 4).settings());
+		ConversionOptions embedPrecise = options("svg", "embed-" + new SvgOptimizationService(3).settings());
+		ConversionOptions embedCoarse = options("svg", "embed-" + new SvgOptimizationService(1).settings());
+		ConversionOptions bounded = new ConversionOptions("png", 0.8f, -1, 800, 0, 30, BackgroundRemovalMode.GLOBAL, 1, "");
+		List<ConversionOptions> all = List.of(PNG, bounded, whiteMatte, blackMatte, embedPrecise, embedCoarse);
+
+		AtomicInteger loads = new AtomicInteger();
+		for (ConversionOptions options : all) {
+			byte[] result = cache.get(cache.key(file(5), options), () -> new byte[]{(byte) loads.incrementAndGet()});
+			assertArrayEquals(new byte[]{(byte) loads.get()}, result, options.fingerprint());
+		}
+		assertEquals(all.size(), loads.get());
+		assertEquals(all.size(), all.stream().map(ConversionOptions::fingerprint).distinct().count());
+		// У PNG настроек кодировщика нет, и ключ прежних результатов не меняется
+		assertEquals("png_q0.8_c-1_t30_s1", PNG.fingerprint());
+		assertNotEquals(whiteMatte.fingerprint(), blackMatte.fingerprint());
+
+		// Тот же ключ с теперь уже закэшированным результатом
+		byte[] cached = cache.get(cache.key(file(5), blackMatte), () -> new byte[0]);
+		assertArrayEquals(new byte[]{4}, cached);
+	}
+
+	private static ConversionOptions options(String format, String encoderSettings) {
+		return new ConversionOptions(format, 0.8f, -1, 0, 0, 30, BackgroundRemovalMode.GLOBAL, 1, encoderSettings);
+	}
+
+	private static BytesMultipartFile file(int seed) {
+		return new BytesMultipartFile("image" + seed + ".png", content(4096, seed));
+	}
+
+	private static byte[] content(int length, int seed) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (i * 31 + seed);
+		}
+		return bytes;
+	}
+
+	private static long files(Path directory) throws IOException {
+		try (Stream<Path> listing = Files.list(directory)) {
+			return listing.filter(path -> !path.getFileName().toString().endsWith(".tmp")).count();
+		}
+	}
+
+	private static void await(CountDownLatch latch) throws IOException {
+		try {
+			if (!latch.await(10, TimeUnit.SECONDS)) {
+				throw new IOException("Load was not released");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+}
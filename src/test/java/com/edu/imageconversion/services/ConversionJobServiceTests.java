@@ -0,0 +1,126 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionJobServiceTests {
+
+	@Test
+	void convertsWithRequestOptionsAndRemovesExpiredJob() throws Exception {
+		Path directory = Files.createTempDirectory("conversion-jobs-test");
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(2);
+		ConversionJobService jobs = null;
+		try {
+			ImageProcessingService service = BenchmarkCorpus.service(scheduler, false);
+			jobs = new ConversionJobService(service, ZipService.defaults(ConversionMetrics.disabled(), scheduler),
+					directory.toString(), Duration.ofMillis(50), 1, 4);
+			MultipartFile[] files = {image(200, 120, 1), image(160, 160, 2)};
+
+			ConversionJob job = jobs.submit(files, "png", 0.8f, 9, 50, 0, BackgroundRemovalMode.CONNECTED);
+			assertEquals(job, jobs.find(job.getId()).orElse(null));
+			awaitFinished(job);
+
+			ConversionJob.Status status = jobs.status(job);
+			assertEquals(ConversionJob.State.COMPLETED, status.state());
+			assertEquals(2, status.totalFiles());
+			assertEquals(2, status.convertedFiles());
+			assertTrue(status.files().stream().allMatch(ConversionJob.FileStatus::converted));
+			assertNotNull(status.expiresAt());
+
+			// Архив задания совпадает с синхронной конвертацией с теми же параметрами
+			byte[][] expected = service.convertImagesParallel(files, "png", 0.8f, 9, 50, 0, BackgroundRemovalMode.CONNECTED);
+			try (ZipFile zip = new ZipFile(job.getResultPath().toFile())) {
+				assertEquals(files.length, zip.size());
+				for (int i = 0; i < files.length; i++) {
+					assertArrayEquals(expected[i], zip.getInputStream(zip.getEntry("image" + (i + 1) + ".png")).readAllBytes());
+				}
+			}
+
+			Thread.sleep(100);
+			jobs.removeExpiredJobs();
+			assertFalse(jobs.find(job.getId()).isPresent());
+			assertFalse(Files.exists(job.getResultPath()));
+		} finally {
+			if (jobs != null) {
+				jobs.shutdown();
+			}
+			scheduler.shutdown();
+			FileSystemUtils.deleteRecursively(directory);
+		}
+	}
+
+	@Test
+	void retriesSaturatedConversionAndCountsOnlyActiveJobs() throws Exception {
+		Path directory = Files.createTempDirectory("conversion-jobs-test");
+		// Один активный пакет без очереди: пока слот занят, конвертация задания получает SATURATED
+		ConversionScheduler scheduler = new ConversionScheduler(2, 1, 0, Duration.ZERO, DataSize.ofMegabytes(64),
+				Duration.ofSeconds(1));
+		ConversionJobService jobs = null;
+		try {
+			jobs = new ConversionJobService(BenchmarkCorpus.service(scheduler, false),
+					ZipService.defaults(ConversionMetrics.disabled(), scheduler), directory.toString(), Duration.ofHours(1), 2, 1);
+			MultipartFile[] files = {image(120, 80, 3)};
+			ConversionScheduler.Admission held = scheduler.admit(files, 1);
+
+			ConversionJob first = jobs.submit(files, "png", 0.8f);
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (scheduler.getRejectedBatches() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(1, scheduler.getRejectedBatches());
+			assertEquals(ConversionJob.State.RUNNING, first.getState());
+
+			// Лимит заданий в очереди и в работе исчерпан
+			ConversionJobService saturated = jobs;
+			ConversionRejectedException e = assertThrows(ConversionRejectedException.class,
+					() -> saturated.submit(files, "png", 0.8f));
+			assertEquals(ConversionRejectedException.Reason.SATURATED, e.getReason());
+
+			held.close();
+			awaitFinished(first);
+			assertEquals(ConversionJob.State.COMPLETED, first.getState());
+
+			// Завершенное задание хранится до TTL, но места не занимает
+			ConversionJob second = jobs.submit(files, "png", 0.8f);
+			awaitFinished(second);
+			assertEquals(ConversionJob.State.COMPLETED, second.getState());
+			assertTrue(jobs.find(first.getId()).isPresent());
+		} finally {
+			if (jobs != null) {
+				jobs.shutdown();
+			}
+			scheduler.shutdown();
+			FileSystemUtils.deleteRecursively(directory);
+		}
+	}
+
+	private static void awaitFinished(ConversionJob job) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while ((job.getState() == ConversionJob.State.QUEUED || job.getState() == ConversionJob.State.RUNNING)
+				&& System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+	private static MultipartFile image(int width, int height, long seed) throws IOException {
+		BufferedImage image = SyntheticImages.productPhoto(width, height, BufferedImage.TYPE_3BYTE_BGR, seed);
+		return new BytesMultipartFile("image" + seed + ".png", BenchmarkCorpus.encode(image, "png"));
+	}
+}
@@ -0,0 +1,65 @@
+package com.edu.imageconversion.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionMetricsTests {
+
+	@Test
+	void recordsStagesAndVolumesOfConversion() throws IOException {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		ConversionMetrics metrics = new ConversionMetrics(registry);
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(2);
+		try {
+			ImageProcessingService service = BenchmarkCorpus.services(scheduler).metrics(metrics).build();
+			byte[] png = PngEncoder.encode(SyntheticImages.productPhoto(400, 250, BufferedImage.TYPE_INT_RGB, 5), 1, null);
+			MultipartFile[] files = {new BytesMultipartFile("a.png", png), new BytesMultipartFile("b.png", png)};
+
+			byte[][] results = service.convertImagesParallel(files, "png", 0.8f);
+			ZipService.defaults(metrics, scheduler).zipFiles(results, "png");
+
+			for (String stage : new String[]{"read", "decode", "dominant_color", "background_removal", "encode"}) {
+				assertEquals(2, registry.get("image.conversion.stage").tag("stage", stage).timer().count(), stage);
+			}
+			assertEquals(0, registry.get("image.conversion.stage").tag("stage", "svg_optimize").timer().count());
+			assertEquals(1, registry.get("image.conversion.stage").tag("stage", "zip").timer().count());
+			assertEquals(2.0 * png.length, registry.get("image.conversion.bytes.in").counter().count());
+			assertEquals(results[0].length + results[1].length,
+					registry.get("image.conversion.bytes.out").tag("format", "png").counter().count());
+			assertEquals(0.2, registry.get("image.conversion.megapixels").counter().count(), 1e-9);
+			assertTrue(registry.get("image.conversion.stage").tag("stage", "read").timer()
+					.totalTime(TimeUnit.NANOSECONDS) > 0);
+
+			assertThrows(IllegalArgumentException.class, () -> service.convertImages(files, "gif", 0.8f));
+			MultipartFile[] broken = {new BytesMultipartFile("c.png", new byte[]{1, 2, 3})};
+			assertThrows(IOException.class, () -> service.convertImages(broken, "png", 0.8f));
+			assertEquals(1, registry.get("image.conversion.failures").tag("cause", "invalid_request").counter().count());
+			assertEquals(1, registry.get("image.conversion.failures").tag("cause", "io").counter().count());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void reducesFailuresToFixedCauses() {
+		ConversionRejectedException saturated = new ConversionRejectedException(
+				ConversionRejectedException.Reason.SATURATED, 5, "busy");
+		assertEquals("saturated", ConversionMetrics.cause(saturated));
+		assertEquals("too_large", ConversionMetrics.cause(new ConversionRejectedException(
+				ConversionRejectedException.Reason.TOO_LARGE, 5, "large")));
+		// Ошибка из параллельного потока приходит обернутой
+		assertEquals("io", ConversionMetrics.cause(new RuntimeException(new IOException("truncated"))));
+		assertEquals("interrupted", ConversionMetrics.cause(new InterruptedIOException()));
+		assertEquals("internal", ConversionMetrics.cause(new IllegalStateException()));
+	}
+}
@@ -0,0 +1,220 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionPipelineTests {
+
+	@Test
+	void producesSameResultsAsDefaultMode() throws IOException {
+		MultipartFile[] files = new MultipartFile[6];
+		for (int i = 0; i < files.length; i++) {
+			BufferedImage image = SyntheticImages.productPhoto(180 + 20 * i, 120, BufferedImage.TYPE_3BYTE_BGR, i);
+			files[i] = new BytesMultipartFile("image" + i + ".png", BenchmarkCorpus.encode(image, "png"));
+		}
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(2);
+		ConversionPipeline pipeline = ConversionPipeline.withWorkers(2, 2, 2, 1);
+		try {
+			ImageProcessingService pipelined = BenchmarkCorpus.services(scheduler).pipeline(pipeline).build();
+			ImageProcessingService plain = BenchmarkCorpus.service(scheduler, false);
+
+			for (String format : new String[]{"png", "jpeg"}) {
+				for (BackgroundRemovalMode mode : BackgroundRemovalMode.values()) {
+					byte[][] expected = plain.convertImagesParallel(files, format, 0.8f, -1, 0, 0, mode);
+					byte[][] actual = pipelined.convertImagesParallel(files, format, 0.8f, -1, 0, 0, mode);
+					for (int i = 0; i < files.length; i++) {
+						assertArrayEquals(expected[i], actual[i], format + " " + mode + " " + i);
+					}
+				}
+			}
+			assertEquals(3 * 2 * BackgroundRemovalMode.values().length * files.length,
+					pipeline.stats().stream().mapToLong(ConversionPipeline.StageStats::completedTasks).sum());
+		} finally {
+			pipeline.shutdown();
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void boundsItemsInFlightByMaxInFlight() throws IOException {
+		ConversionPipeline pipeline = ConversionPipeline.withWorkers(2, 1, 1, 2);
+		try {
+			// Медленное кодирование: декодирование упирается в очереди и ждет
+			AtomicInteger inFlight = new AtomicInteger();
+			AtomicInteger peak = new AtomicInteger();
+			List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+			int count = 40;
+			pipeline.run(count, index -> {
+				peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+				return index;
+			}, (index, decoded) -> decoded, (index, processed) -> {
+				sleep(2);
+				return new byte[]{(byte) (int) processed};
+			}, (index, image) -> {
+				consumed.add(index);
+				inFlight.decrementAndGet();
+			});
+
+			assertEquals(count, consumed.size());
+			assertEquals(0, inFlight.get());
+			assertTrue(peak.get() <= pipeline.maxInFlight(), peak.get() + " > " + pipeline.maxInFlight());
+			// Очереди действительно заполнялись
+			assertTrue(peak.get() > 2, "peak " + peak.get());
+		} finally {
+			pipeline.shutdown();
+		}
+	}
+
+	@Test
+	void propagatesFirstErrorAndSkipsRemainingItems() {
+		ConversionPipeline pipeline = ConversionPipeline.withWorkers(1, 1, 1, 1);
+		try {
+			int count = 200;
+			AtomicInteger decoded = new AtomicInteger();
+			AtomicInteger encoded = new AtomicInteger();
+			IOException failure = new IOException("broken image 3");
+			IOException thrown = assertThrows(IOException.class, () -> pipeline.run(count, index -> {
+				decoded.incrementAndGet();
+				return index;
+			}, (index, input) -> {
+				if (index == 3) {
+					throw failure;
+				}
+				if (index > 3) {
+					throw new IOException("later error " + index);
+				}
+				return input;
+			}, (index, input) -> {
+				encoded.incrementAndGet();
+				sleep(1);
+				return new byte[0];
+			}, (index, image) -> {
+			}));
+
+			assertSame(failure, thrown);
+			// После ошибки в конвейер попадают только элементы, уже поставленные в очереди
+			assertTrue(decoded.get() < count, "decoded " + decoded.get());
+			assertTrue(encoded.get() <= 3, "encoded " + encoded.get());
+		} finally {
+			pipeline.shutdown();
+		}
+	}
+
+	@Test
+	void nullStepResultFinishesItemWithoutLaterStages() throws IOException {
+		ConversionPipeline pipeline = ConversionPipeline.withWorkers(2, 2, 2, 1);
+		try {
+			int count = 30;
+			AtomicInteger processed = new AtomicInteger();
+			List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+			// Четные элементы готовы после декодирования, кратные трем - после обработки, кратные пяти не кодируются
+			pipeline.run(count, index -> index % 2 == 0 ? null : index, (index, input) -> {
+				processed.incrementAndGet();
+				return index % 3 == 0 ? null : input;
+			}, (index, input) -> index % 5 == 0 ? null : new byte[]{(byte) (int) input}, (index, image) -> {
+				assertEquals(index, image[0]);
+				consumed.add(index);
+			});
+
+			List<Integer> expected = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				if (i % 2 != 0 && i % 3 != 0 && i % 5 != 0) {
+					expected.add(i);
+				}
+			}
+			Collections.sort(consumed);
+			assertEquals(expected, consumed);
+			assertEquals(count / 2, processed.get());
+
+			// Все элементы отсеяны на первом этапе
+			pipeline.run(count, index -> null, (index, input) -> input, (index, input) -> new byte[0], (index, image) -> {
+				throw new AssertionError("no results expected");
+			});
+		} finally {
+			pipeline.shutdown();
+		}
+	}
+
+	@Test
+	void shutdownFailsQueuedItemsInsteadOfHangingRun() throws Exception {
+		ConversionPipeline pipeline = ConversionPipeline.withWorkers(1, 1, 1, 1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService caller = Executors.newSingleThreadExecutor();
+		try {
+			// Единственный поток декодирования занят, очередь полна, поток запроса ждет места в ней
+			Future<?> run = caller.submit(() -> {
+				pipeline.run(10, index -> {
+					started.countDown();
+					awaitUninterruptibly(release);
+					return index;
+				}, (index, input) -> input, (index, input) -> new byte[0], (index, image) -> {
+				});
+				return null;
+			});
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+
+			pipeline.shutdown();
+			release.countDown();
+
+			ExecutionException e = assertThrows(ExecutionException.class, () -> run.get(10, TimeUnit.SECONDS));
+			assertInstanceOf(RejectedExecutionException.class, e.getCause());
+		} finally {
+			release.countDown();
+			caller.shutdownNow();
+		}
+	}
+
+	@Test
+	void disabledPipelineHasNoStagesInFlight() {
+		ConversionPipeline pipeline = ConversionPipeline.disabled();
+		assertEquals(0, pipeline.maxInFlight());
+		assertEquals(List.of(), pipeline.stats());
+		pipeline.shutdown();
+	}
+
+	private static void sleep(long millis) throws IOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
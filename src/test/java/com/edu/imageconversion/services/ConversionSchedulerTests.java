@@ -0,0 +1,397 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionSchedulerTests {
+
+	@Test
+	void reservesDecodedFootprintAndReleasesItOnce() throws IOException {
+		ConversionScheduler scheduler = scheduler(2, 0, Duration.ZERO, DataSize.ofMegabytes(1));
+		try {
+			// 100x100 и 50x50: одновременно декодируется одно изображение, резервируется самое крупное
+			MultipartFile[] files = {image(50, 50), image(100, 100)};
+			long budget = scheduler.getAvailableMemoryBytes();
+			ConversionScheduler.Admission admission = scheduler.admit(files, 1);
+			// Два растра по 4 байта на пиксель, с округлением до килобайта
+			assertEquals(budget - (100 * 100 * 4 * 2 + 1023) / 1024 * 1024, scheduler.getAvailableMemoryBytes());
+			assertEquals(1, scheduler.getAdmittedBatches());
+
+			admission.close();
+			admission.close();
+			assertEquals(budget, scheduler.getAvailableMemoryBytes());
+
+			// С ограничением размера резервируется уменьшенный растр
+			scheduler.admit(files, 2, 25, 25).close();
+			assertEquals(budget, scheduler.getAvailableMemoryBytes());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void rejectsBatchLargerThanBudget() throws IOException {
+		ConversionScheduler scheduler = scheduler(2, 16, Duration.ofSeconds(2), DataSize.ofMegabytes(1));
+		try {
+			MultipartFile[] files = {image(400, 400)};
+			ConversionRejectedException e = assertThrows(ConversionRejectedException.class, () -> scheduler.admit(files, 1));
+			assertEquals(ConversionRejectedException.Reason.TOO_LARGE, e.getReason());
+			assertEquals(1, scheduler.getRejectedBatches());
+			assertEquals(DataSize.ofMegabytes(1).toBytes(), scheduler.getAvailableMemoryBytes());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void waitsForReleasedSlotWithinQueueTimeout() throws Exception {
+		// Один активный пакет: второй ждет, пока первый не освободит слот
+		ConversionScheduler scheduler = scheduler(1, 4, Duration.ofSeconds(10), DataSize.ofMegabytes(1));
+		try {
+			MultipartFile[] files = {image(100, 100)};
+			ConversionScheduler.Admission first = scheduler.admit(files, 1);
+			AtomicReference<ConversionScheduler.Admission> second = new AtomicReference<>();
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Thread waiter = new Thread(() -> {
+				try {
+					second.set(scheduler.admit(files, 1));
+				} catch (IOException | RuntimeException e) {
+					failure.set(e);
+				}
+			});
+			waiter.start();
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (scheduler.getQueuedBatches() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(1, scheduler.getQueuedBatches());
+			assertTrue(waiter.isAlive());
+			first.close();
+			waiter.join();
+
+			assertEquals(null, failure.get());
+			assertEquals(0, scheduler.getQueuedBatches());
+			assertEquals(2, scheduler.getAdmittedBatches());
+			second.get().close();
+			assertEquals(DataSize.ofMegabytes(1).toBytes(), scheduler.getAvailableMemoryBytes());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void rejectsAsSaturatedWhenQueueIsFullOrWaitTimesOut() throws IOException {
+		MultipartFile[] files = {image(100, 100)};
+		ConversionScheduler noQueue = scheduler(1, 0, Duration.ofSeconds(10), DataSize.ofMegabytes(1));
+		try {
+			ConversionScheduler.Admission held = noQueue.admit(files, 1);
+			ConversionRejectedException e = assertThrows(ConversionRejectedException.class, () -> noQueue.admit(files, 1));
+			assertEquals(ConversionRejectedException.Reason.SATURATED, e.getReason());
+			assertEquals(5, e.getRetryAfterSeconds());
+			held.close();
+		} finally {
+			noQueue.shutdown();
+		}
+
+		ConversionScheduler shortWait = scheduler(1, 4, Duration.ofMillis(50), DataSize.ofMegabytes(1));
+		try {
+			ConversionScheduler.Admission held = shortWait.admit(files, 1);
+			long start = System.nanoTime();
+			ConversionRejectedException e = assertThrows(ConversionRejectedException.class, () -> shortWait.admit(files, 1));
+			assertEquals(ConversionRejectedException.Reason.SATURATED, e.getReason());
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+			assertEquals(0, shortWait.getQueuedBatches());
+			assertEquals(1, shortWait.getRejectedBatches());
+			// Отказ не забирает ни слот, ни память
+			held.close();
+			shortWait.admit(files, 1).close();
+			assertEquals(DataSize.ofMegabytes(1).toBytes(), shortWait.getAvailableMemoryBytes());
+		} finally {
+			shortWait.shutdown();
+		}
+	}
+
+	@Test
+	void relaysResultsToCallingVirtualThread() throws Exception {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(2);
+		try {
+			List<Integer> indexes = new ArrayList<>();
+			List<Boolean> onCaller = new ArrayList<>();
+			AtomicReference<Boolean> producedOnVirtual = new AtomicReference<>();
+			Thread caller = Thread.ofVirtual().start(() -> {
+				try {
+					scheduler.execute(results -> {
+						producedOnVirtual.set(Thread.currentThread().isVirtual());
+						for (int i = 0; i < 5; i++) {
+							results.accept(i, new byte[]{(byte) i});
+						}
+					}, 2, (index, image) -> {
+						indexes.add(index);
+						onCaller.add(Thread.currentThread().isVirtual());
+					});
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+			caller.join();
+
+			assertFalse(producedOnVirtual.get());
+			assertEquals(List.of(0, 1, 2, 3, 4), indexes);
+			assertTrue(onCaller.stream().allMatch(Boolean::booleanValue));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void preparesResultsOnWorkersAndAppliesThemOnCaller() throws Exception {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(2);
+		try {
+			List<String> preparedOn = Collections.synchronizedList(new ArrayList<>());
+			List<String> appliedOn = new ArrayList<>();
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Thread caller = new Thread(() -> {
+				try {
+					scheduler.execute(results -> IntStream.range(0, 8).parallel().forEach(i -> {
+						try {
+							results.accept(i, new byte[]{(byte) i});
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}), 2, new ConvertedImageConsumer() {
+						@Override
+						public void accept(int index, byte[] image) {
+							throw new AssertionError("results are relayed through prepare");
+						}
+
+						@Override
+						public Prepared prepare(int index, byte[] image) {
+							preparedOn.add(Thread.currentThread().getName());
+							return () -> appliedOn.add(Thread.currentThread().getName());
+						}
+					});
+				} catch (IOException | RuntimeException e) {
+					failure.set(e);
+				}
+			}, "request");
+			caller.start();
+			caller.join();
+
+			assertEquals(null, failure.get());
+			assertEquals(8, preparedOn.size());
+			assertTrue(preparedOn.stream().noneMatch("request"::equals), preparedOn.toString());
+			assertEquals(Collections.nCopies(8, "request"), appliedOn);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void slowConsumerDoesNotHoldWorkers() throws Exception {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(1);
+		try {
+			List<String> consumerThreads = new ArrayList<>();
+			CountDownLatch firstDelivered = new CountDownLatch(1);
+			CountDownLatch otherBatchDone = new CountDownLatch(1);
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			// Поток платформы, как обработчик запроса при выключенных виртуальных потоках
+			Thread caller = new Thread(() -> {
+				try {
+					scheduler.execute(results -> {
+						for (int i = 0; i < 3; i++) {
+							results.accept(i, new byte[]{(byte) i});
+						}
+					}, 4, (index, image) -> {
+						consumerThreads.add(Thread.currentThread().getName());
+						firstDelivered.countDown();
+						// Медленный клиент: запись ждет, пока единственный воркер не выполнит чужой пакет
+						try {
+							if (!otherBatchDone.await(10, TimeUnit.SECONDS)) {
+								throw new IOException("Worker was held by the consumer");
+							}
+						} catch (InterruptedException e) {
+							throw new InterruptedIOException();
+						}
+					});
+				} catch (IOException | RuntimeException e) {
+					failure.set(e);
+				}
+			}, "request");
+			caller.start();
+
+			assertTrue(firstDelivered.await(10, TimeUnit.SECONDS));
+			assertEquals("done", scheduler.execute(() -> "done"));
+			otherBatchDone.countDown();
+			caller.join();
+
+			assertEquals(null, failure.get());
+			assertEquals(List.of("request", "request", "request"), consumerThreads);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void stopsTaskWhenRelayedConsumerFails() throws Exception {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(1);
+		try {
+			AtomicInteger produced = new AtomicInteger();
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Thread caller = Thread.ofVirtual().start(() -> {
+				try {
+					scheduler.execute(results -> {
+						for (int i = 0; i < 1000; i++) {
+							results.accept(i, new byte[0]);
+							produced.incrementAndGet();
+							LockSupport.parkNanos(1_000_000);
+						}
+					}, 4, (index, image) -> {
+						throw new IOException("Broken pipe");
+					});
+				} catch (IOException | RuntimeException e) {
+					failure.set(e);
+				}
+			});
+			caller.join();
+
+			assertInstanceOf(IOException.class, failure.get());
+			assertEquals("Broken pipe", failure.get().getMessage());
+			// Задача уже завершилась к моменту возврата: воркер остановился задолго до конца пакета
+			assertTrue(produced.get() < 1000, String.valueOf(produced.get()));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void boundsResultsWaitingForSlowConsumer() throws Exception {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(1);
+		try {
+			AtomicInteger produced = new AtomicInteger();
+			CountDownLatch firstDelivered = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			List<Integer> indexes = new ArrayList<>();
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Thread caller = new Thread(() -> {
+				try {
+					scheduler.execute(results -> {
+						for (int i = 0; i < 10; i++) {
+							results.accept(i, new byte[]{(byte) i});
+							produced.incrementAndGet();
+						}
+					}, 2, (index, image) -> {
+						indexes.add(index);
+						firstDelivered.countDown();
+						try {
+							if (!release.await(10, TimeUnit.SECONDS)) {
+								throw new IOException("Consumer was not released");
+							}
+						} catch (InterruptedException e) {
+							throw new InterruptedIOException();
+						}
+					});
+				} catch (IOException | RuntimeException e) {
+					failure.set(e);
+				}
+			}, "request");
+			caller.start();
+
+			// Первый результат у потребителя, еще два в очереди, четвертый ждет места
+			assertTrue(firstDelivered.await(10, TimeUnit.SECONDS));
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (produced.get() < 3 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			Thread.sleep(50);
+			assertEquals(3, produced.get());
+			// Единственный воркер ждет места в очереди, но пул выполняет другие задачи компенсирующим потоком
+			assertEquals("done", scheduler.execute(() -> "done"));
+
+			release.countDown();
+			caller.join();
+			assertEquals(null, failure.get());
+			assertEquals(10, produced.get());
+			assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), indexes);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void failedConsumerReleasesWorkerWaitingOnFullRelay() throws Exception {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(1);
+		try {
+			AtomicInteger produced = new AtomicInteger();
+			AtomicReference<Throwable> taskFailure = new AtomicReference<>();
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Thread caller = new Thread(() -> {
+				try {
+					scheduler.execute(results -> {
+						try {
+							for (int i = 0; i < 100; i++) {
+								results.accept(i, new byte[0]);
+								produced.incrementAndGet();
+							}
+						} catch (IOException e) {
+							taskFailure.set(e);
+							throw e;
+						}
+					}, 1, (index, image) -> {
+						// Клиент ушел, когда воркер уже заполнил очередь и ждет места в ней
+						long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+						while (produced.get() < 2 && System.nanoTime() < deadline) {
+							LockSupport.parkNanos(1_000_000);
+						}
+						LockSupport.parkNanos(20_000_000);
+						throw new IOException("Broken pipe");
+					});
+				} catch (IOException | RuntimeException e) {
+					failure.set(e);
+				}
+			}, "request");
+			caller.start();
+			caller.join(TimeUnit.SECONDS.toMillis(10));
+
+			assertFalse(caller.isAlive());
+			assertEquals("Broken pipe", failure.get().getMessage());
+			// Ожидавший воркер дописал результат в вычерпанную очередь и остановился на следующем
+			assertEquals(3, produced.get());
+			assertInstanceOf(IOException.class, taskFailure.get());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	private static ConversionScheduler scheduler(int maxActiveBatches, int maxQueuedBatches, Duration queueTimeout,
+			DataSize budget) {
+		return new ConversionScheduler(2, maxActiveBatches, maxQueuedBatches, queueTimeout, budget, Duration.ofSeconds(5));
+	}
+
+	private static MultipartFile image(int width, int height) throws IOException {
+		BufferedImage image = SyntheticImages.productPhoto(width, height, BufferedImage.TYPE_3BYTE_BGR, width);
+		return new BytesMultipartFile("image.png", BenchmarkCorpus.encode(image, "png"));
+	}
+}
@@ -0,0 +1,71 @@
+package com.edu.imageconversion.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+// Поиск цвета фона по угловым полям (10% меньшей стороны) с разным шагом прореживания
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DominantColorBenchmark {
+
+	@Param({"0.3", "3", "12"})
+	public double megapixels;
+
+	@Param({"1", "4"})
+	public int sampleStride;
+
+	@Param({"TYPE_3BYTE_BGR", "TYPE_INT_RGB"})
+	public String imageType;
+
+	private ConversionScheduler scheduler;
+	private ImageProcessingService service;
+	private BufferedImage image;
+	private int margin;
+
+	@Setup
+	public void setUp() throws ReflectiveOperationException {
+		scheduler = ConversionScheduler.withWorkers(Runtime.getRuntime().availableProcessors());
+		service = BenchmarkCorpus.services(scheduler).tileParallel(true).sampleStride(sampleStride).build();
+		image = SyntheticImages.productPhoto(megapixels, BufferedImage.class.getField(imageType).getInt(null), 42);
+		margin = Math.min(image.getWidth(), image.getHeight()) / 10;
+	}
+
+	@TearDown
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+
+	@Benchmark
+	public Color findDominantColor() {
+		return service.findDominantColor(image, margin);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(DominantColorBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
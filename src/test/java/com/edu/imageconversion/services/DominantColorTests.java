@@ -0,0 +1,84 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DominantColorTests {
+
+	@Test
+	void matchesLegacyCountOnPhotosAndNoise() {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(2);
+		try {
+			for (int stride : new int[]{1, 3}) {
+				ImageProcessingService service = service(scheduler, stride);
+				for (long seed = 0; seed < 4; seed++) {
+					BufferedImage photo = SyntheticImages.productPhoto(700, 660, BufferedImage.TYPE_3BYTE_BGR, seed);
+					assertSameAsLegacy(service, photo, stride);
+					assertSameAsLegacy(service, noise(700, 660, seed), stride);
+				}
+				// Поля меньше 64 пикселей читаются без прореживания
+				assertSameAsLegacy(service, noise(300, 200, 9), 1);
+			}
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void breaksTiesLikeLegacyCount() {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(2);
+		try {
+			for (int stride : new int[]{1, 2, 5}) {
+				ImageProcessingService service = service(scheduler, stride);
+				// Каждый угол своего цвета: четыре цвета с равными счетчиками
+				assertSameAsLegacy(service, quadrants(800, 640, 0x102030, 0xF4F4F2, 0x808080, 0xFF0000), stride);
+				assertSameAsLegacy(service, quadrants(800, 640, 0xFFFFFF, 0x000000, 0x00FF00, 0x0000FF), stride);
+				// Два цвета поровну: верх и низ
+				assertSameAsLegacy(service, quadrants(640, 640, 0xABCDEF, 0xABCDEF, 0x123456, 0x123456), stride);
+			}
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	private static void assertSameAsLegacy(ImageProcessingService service, BufferedImage image, int stride) {
+		int margin = Math.min(image.getWidth(), image.getHeight()) / 10;
+		Color expected = LegacyBackgroundRemoval.findDominantColor(image, margin, stride);
+		assertEquals(expected, service.findDominantColor(image, margin),
+				image.getWidth() + "x" + image.getHeight() + ", stride " + stride);
+	}
+
+	private static ImageProcessingService service(ConversionScheduler scheduler, int sampleStride) {
+		return BenchmarkCorpus.services(scheduler).tileParallel(true).sampleStride(sampleStride).build();
+	}
+
+	// Углы из небольшого набора цветов, чтобы счетчики были крупными и часто совпадали
+	private static BufferedImage noise(int width, int height, long seed) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(seed);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, random.nextInt(6) * 0x2A2A2A);
+			}
+		}
+		return image;
+	}
+
+	private static BufferedImage quadrants(int width, int height, int topLeft, int topRight, int bottomLeft, int bottomRight) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		int[] colors = {topLeft, topRight, bottomLeft, bottomRight};
+		for (int i = 0; i < 4; i++) {
+			g.setColor(new Color(colors[i]));
+			g.fillRect(i % 2 * width / 2, i / 2 * height / 2, width / 2, height / 2);
+		}
+		g.dispose();
+		return image;
+	}
+}
@@ -0,0 +1,80 @@
+package com.edu.imageconversion.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Чтение и конвертация крупной фотографии JPEG в полном размере и с ограничением maxSize по большей стороне
+// (0 - без ограничения). Выделение памяти видно при запуске с профилировщиком gc (-prof gc).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class DownscaleDecodeBenchmark {
+
+	@Param({"12", "24"})
+	public double megapixels;
+
+	@Param({"0", "1600"})
+	public int maxSize;
+
+	private ConversionScheduler scheduler;
+	private ImageProcessingService service;
+	private byte[] jpeg;
+	private MultipartFile[] file;
+
+	@Setup
+	public void setUp() throws IOException {
+		scheduler = ConversionScheduler.withWorkers(1);
+		service = BenchmarkCorpus.service(scheduler, false);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(SyntheticImages.productPhoto(megapixels, BufferedImage.TYPE_3BYTE_BGR, 42), "jpeg", out);
+		jpeg = out.toByteArray();
+		file = new MultipartFile[]{new BytesMultipartFile("photo.jpg", jpeg)};
+	}
+
+	@TearDown
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+
+	@Benchmark
+	public BufferedImage decode() throws IOException {
+		return ImageCodecs.read(new ByteArrayInputStream(jpeg), maxSize, maxSize);
+	}
+
+	@Benchmark
+	public byte[] convertToPng() throws IOException {
+		return service.convertImages(file, "png", 0.8f, -1, maxSize, maxSize)[0];
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(DownscaleDecodeBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
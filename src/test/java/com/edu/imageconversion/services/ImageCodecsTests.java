@@ -0,0 +1,103 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageCodecsTests {
+
+	@Test
+	void pooledReadersDecodeLikeImageIoAcrossFormats() throws IOException {
+		BufferedImage image = SyntheticImages.productPhoto(64, 48, BufferedImage.TYPE_3BYTE_BGR, 3);
+		for (int round = 0; round < 3; round++) {
+			for (String format : new String[]{"png", "jpeg", "bmp", "gif"}) {
+				byte[] encoded = encode(image, format);
+				BufferedImage expected = ImageIO.read(new ByteArrayInputStream(encoded));
+				BufferedImage actual = ImageCodecs.read(new ByteArrayInputStream(encoded));
+
+				assertArrayEquals(expected.getRGB(0, 0, 64, 48, null, 0, 64), actual.getRGB(0, 0, 64, 48, null, 0, 64), format);
+				assertEquals(new Dimension(64, 48), ImageCodecs.readSize(new ByteArrayInputStream(encoded)));
+			}
+		}
+	}
+
+	@Test
+	void readsDownscaledImagesWithinBounds() throws IOException {
+		BufferedImage image = SyntheticImages.productPhoto(1000, 600, BufferedImage.TYPE_3BYTE_BGR, 5);
+		for (String format : new String[]{"png", "jpeg"}) {
+			byte[] encoded = encode(image, format);
+			BufferedImage full = ImageCodecs.read(new ByteArrayInputStream(encoded));
+
+			BufferedImage bounded = ImageCodecs.read(new ByteArrayInputStream(encoded), 200, 0);
+			assertEquals(new Dimension(200, 120), new Dimension(bounded.getWidth(), bounded.getHeight()));
+			// Прореженное чтение близко к уменьшению полного изображения
+			assertTrue(meanDifference(ImageResizer.resize(full, 200, 120), bounded) < 6, format);
+
+			BufferedImage byHeight = ImageCodecs.read(new ByteArrayInputStream(encoded), 400, 100);
+			assertEquals(new Dimension(167, 100), new Dimension(byHeight.getWidth(), byHeight.getHeight()));
+			BufferedImage unchanged = ImageCodecs.read(new ByteArrayInputStream(encoded), 4000, 4000);
+			assertEquals(new Dimension(1000, 600), new Dimension(unchanged.getWidth(), unchanged.getHeight()));
+		}
+	}
+
+	@Test
+	void fitsWithinBoundsAndPicksSubsampling() {
+		assertEquals(new Dimension(1600, 1200), ImageResizer.fitWithin(6000, 4500, 1600, 0));
+		assertEquals(new Dimension(800, 600), ImageResizer.fitWithin(6000, 4500, 1600, 600));
+		assertEquals(new Dimension(640, 480), ImageResizer.fitWithin(640, 480, 1600, 1600));
+		assertEquals(3, ImageResizer.subsampling(6000, 4500, new Dimension(1600, 1200)));
+		assertEquals(1, ImageResizer.subsampling(640, 480, new Dimension(640, 480)));
+	}
+
+	@Test
+	void returnsNullForUnknownOrTruncatedInput() throws IOException {
+		// Сначала в пуле потока появляется читатель PNG, чтобы проверка шла и по пулу, и по реестру
+		ImageCodecs.read(new ByteArrayInputStream(encode(SyntheticImages.productPhoto(8, 8, BufferedImage.TYPE_INT_RGB, 1), "png")));
+		assertNull(ImageCodecs.read(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+		assertNull(ImageCodecs.readSize(new ByteArrayInputStream(new byte[0])));
+	}
+
+	@Test
+	void nestedBuffersOnOneThreadAreIndependent() {
+		ImageCodecs.OutputBuffer outer = ImageCodecs.borrowBuffer();
+		outer.write(new byte[]{1, 2, 3}, 0, 3);
+		ImageCodecs.OutputBuffer inner = ImageCodecs.borrowBuffer();
+		inner.write(new byte[200_000], 0, 200_000);
+		inner.release();
+		outer.write(4);
+
+		assertArrayEquals(new byte[]{1, 2, 3, 4}, outer.toByteArray());
+		outer.release();
+		assertEquals(0, ImageCodecs.borrowBuffer().size());
+	}
+
+	private static double meanDifference(BufferedImage expected, BufferedImage actual) {
+		long sum = 0;
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				int a = expected.getRGB(x, y);
+				int b = actual.getRGB(x, y);
+				for (int shift = 0; shift < 24; shift += 8) {
+					sum += Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF));
+				}
+			}
+		}
+		return sum / (3.0 * expected.getWidth() * expected.getHeight());
+	}
+
+		private static byte[] encode(BufferedImage image, String format) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, format, out);
+		return out.toByteArray();
+	}
+}
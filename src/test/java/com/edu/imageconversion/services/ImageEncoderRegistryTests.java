@@ -0,0 +1,100 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ImageEncoderRegistryTests {
+
+	@Test
+	void findsEncodersByFormatAndExtension() {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(1);
+		try {
+			ImageEncoderRegistry registry = ImageEncoderRegistry.defaults(scheduler, false);
+
+			assertEquals("png", registry.find("PNG").format());
+			assertEquals("jpeg", registry.find("jpg").format());
+			assertEquals("jpeg", registry.find("jpeg").format());
+			assertNull(registry.find("svg"));
+			assertNull(registry.find("gif"));
+			assertNull(registry.find(null));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void negotiatesFormatFromAcceptHeader() {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(1);
+		try {
+			ImageEncoderRegistry registry = new ImageEncoderRegistry(List.of(new PngImageEncoder(scheduler, false),
+					new JpegImageEncoder("#ffffff", 4), new FakeEncoder("webp", true)));
+
+			assertEquals("png", registry.negotiate(null));
+			assertEquals("png", registry.negotiate("*/*"));
+			assertEquals("png", registry.negotiate("application/zip"));
+			// Как у браузера: WebP назван явно, остальное - через image/*
+			assertEquals("webp", registry.negotiate("image/avif,image/webp,image/apng,image/*,*/*;q=0.8"));
+			assertEquals("png", registry.negotiate("image/webp;q=0.5, image/png"));
+			assertEquals("jpeg", registry.negotiate("image/jpeg"));
+			assertEquals("jpeg", registry.negotiate("image/png;q=0, image/jpeg;q=0.5, image/webp;q=0"));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void skipsUnavailableEncoders() {
+		ImageEncoderRegistry registry = new ImageEncoderRegistry(List.of(new FakeEncoder("png", true),
+				new FakeEncoder("webp", false)));
+
+		assertNull(registry.find("webp"));
+		assertEquals("png", registry.negotiate("image/webp"));
+	}
+
+	@Test
+	void encodesLosslessWebpWhenPluginIsPresent() throws IOException {
+		WebpImageEncoder encoder = new WebpImageEncoder(6);
+		assumeTrue(encoder.isAvailable(), "webp-imageio is not on the classpath");
+		BufferedImage image = SyntheticImages.productPhoto(64, 48, BufferedImage.TYPE_INT_ARGB, 7);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		encoder.encode(image, 1f, encoder.resolveLevel(1f, PngEncoder.LEVEL_FROM_QUALITY), output);
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(output.toByteArray()));
+
+		assertArrayEquals(image.getRGB(0, 0, 64, 48, null, 0, 64), decoded.getRGB(0, 0, 64, 48, null, 0, 64));
+	}
+
+	private record FakeEncoder(String format, boolean isAvailable) implements ImageEncoder {
+
+		@Override
+		public String extension() {
+			return format;
+		}
+
+		@Override
+		public String mediaType() {
+			return "image/" + format;
+		}
+
+		@Override
+		public int resolveLevel(float quality, int compressionLevel) {
+			return compressionLevel;
+		}
+
+		@Override
+		public void encode(BufferedImage image, float quality, int level, OutputStream outputStream) {
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JpegImageEncoderTests {
+
+	@Test
+	void flattensTransparencyOntoMatte() {
+		BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, 0xFFFF0000);
+		image.setRGB(1, 0, RasterBackgroundRemover.TRANSPARENT_PIXEL);
+		image.setRGB(0, 1, 0x800000FF);
+		image.setRGB(1, 1, 0x40FFFFFF);
+
+		BufferedImage flat = JpegImageEncoder.flatten(image, 0x00FF00);
+
+		assertFalse(flat.getColorModel().hasAlpha());
+		assertEquals(0xFFFF0000, flat.getRGB(0, 0));
+		assertEquals(0xFF00FF00, flat.getRGB(1, 0));
+		assertEquals(0xFF007F80, flat.getRGB(0, 1));
+		assertEquals(0xFF40FF40, flat.getRGB(1, 1));
+		// Подизображение читается не из общего массива растра
+		assertEquals(0xFF007F80, JpegImageEncoder.flatten(image.getSubimage(0, 1, 1, 1), 0x00FF00).getRGB(0, 0));
+	}
+
+	@Test
+	void encodesCutoutsAsOpaqueJpegAtEveryLevel() throws IOException {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(1);
+		try {
+			ImageProcessingService service = BenchmarkCorpus.service(scheduler, false);
+			BufferedImage cutout = service.removeBackground(SyntheticImages.productPhoto(320, 240, BufferedImage.TYPE_3BYTE_BGR, 11));
+			JpegImageEncoder encoder = new JpegImageEncoder("#ffffff", 4);
+
+			byte[] standard = encode(encoder, cutout, 0);
+			byte[] optimized = encode(encoder, cutout, encoder.resolveLevel(0.8f, PngEncoder.LEVEL_FROM_QUALITY));
+			byte[] progressive = encode(encoder, cutout, 9);
+			assertTrue(optimized.length < standard.length, optimized.length + " vs " + standard.length);
+			for (byte[] jpeg : new byte[][]{standard, optimized, progressive}) {
+				BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+				assertFalse(decoded.getColorModel().hasAlpha());
+				// Угол - удаленный фон, он становится цветом подложки
+				assertTrue((decoded.getRGB(0, 0) & 0xFFFFFF) > 0xF0F0F0, Integer.toHexString(decoded.getRGB(0, 0)));
+			}
+
+			MultipartFile[] files = {new BytesMultipartFile("photo.png", PngEncoder.encode(cutout, 1, null))};
+			byte[] converted = service.convertImages(files, "jpg", 0.8f)[0];
+			assertEquals(320, ImageIO.read(new ByteArrayInputStream(converted)).getWidth());
+			assertThrows(IllegalArgumentException.class, () -> service.convertImages(files, "gif", 0.8f));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	private static byte[] encode(JpegImageEncoder encoder, BufferedImage image, int level) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		encoder.encode(image, 0.8f, level, output);
+		return output.toByteArray();
+	}
+}
@@ -0,0 +1,78 @@
+package com.edu.imageconversion.services;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Исходный попиксельный алгоритм удаления фона: эталон для тестов и базовая линия для бенчмарков
+final class LegacyBackgroundRemoval {
+
+	private LegacyBackgroundRemoval() {
+	}
+
+	static Color findDominantColor(BufferedImage image, int margin) {
+		return findDominantColor(image, margin, 1);
+	}
+
+	// Тот же подсчет по каждому stride-му пикселю углов, как при image.processing.dominant-color.sample-stride
+	static Color findDominantColor(BufferedImage image, int margin, int stride) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		ConcurrentHashMap<Color, AtomicInteger> colorCount = new ConcurrentHashMap<>();
+
+		for (int y = 0; y < margin; y += stride) {
+			for (int x = 0; x < margin; x += stride) {
+				addColorCount(colorCount, new Color(image.getRGB(x, y)));
+				addColorCount(colorCount, new Color(image.getRGB(width - 1 - x, y)));
+				addColorCount(colorCount, new Color(image.getRGB(x, height - 1 - y)));
+				addColorCount(colorCount, new Color(image.getRGB(width - 1 - x, height - 1 - y)));
+			}
+		}
+
+		return colorCount.entrySet().stream()
+				.max(Map.Entry.comparingByValue(Comparator.comparingInt(AtomicInteger::get)))
+				.map(Map.Entry::getKey)
+				.orElse(Color.WHITE);
+	}
+
+	static BufferedImage removeBackground(BufferedImage source) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int margin = Math.min(width, height) / 10;
+		return removeBackground(source, findDominantColor(source, margin), 30);
+	}
+
+	static BufferedImage removeBackground(BufferedImage source, Color backgroundColor, int tolerance) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		BufferedImage outputImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int rgb = source.getRGB(x, y);
+				Color color = new Color(rgb, true);
+
+				if (isBackgroundColor(color, backgroundColor, tolerance)) {
+					outputImage.setRGB(x, y, 0x00FFFFFF);
+				} else {
+					outputImage.setRGB(x, y, rgb);
+				}
+			}
+		}
+		return outputImage;
+	}
+
+	private static void addColorCount(ConcurrentHashMap<Color, AtomicInteger> colorCount, Color color) {
+		colorCount.computeIfAbsent(color, k -> new AtomicInteger()).incrementAndGet();
+	}
+
+	private static boolean isBackgroundColor(Color color, Color bgColor, int tolerance) {
+		int rDiff = Math.abs(color.getRed() - bgColor.getRed());
+		int gDiff = Math.abs(color.getGreen() - bgColor.getGreen());
+		int bDiff = Math.abs(color.getBlue() - bgColor.getBlue());
+		return rDiff < tolerance && gDiff < tolerance && bDiff < tolerance;
+	}
+}
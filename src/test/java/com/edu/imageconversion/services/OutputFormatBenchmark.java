@@ -0,0 +1,100 @@
+package com.edu.imageconversion.services;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Кодирование вырезанного предмета (результат удаления фона) в каждый растровый формат.
+// Счётчик outputBytes делится на число операций: средний размер результата в байтах.
+// quality 1.0 для webp - сжатие без потерь; для webp нужен плагин webp-imageio в classpath.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutputFormatBenchmark {
+
+	@Param({"3"})
+	public double megapixels;
+
+	@Param({"png", "jpeg", "webp"})
+	public String format;
+
+	@Param({"0.8", "1.0"})
+	public float quality;
+
+	@Param({"-1", "9"})
+	public int level;
+
+	private ConversionScheduler scheduler;
+	private ImageEncoder encoder;
+	private BufferedImage cutout;
+	private int resolvedLevel;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Output {
+		public long outputBytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			outputBytes = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		scheduler = ConversionScheduler.withWorkers(1);
+		ImageEncoderRegistry registry = ImageEncoderRegistry.defaults(scheduler, false);
+		encoder = registry.find(format);
+		if (encoder == null) {
+			throw new IllegalStateException("No encoder available for " + format);
+		}
+		resolvedLevel = encoder.resolveLevel(quality, level);
+		ImageProcessingService service = BenchmarkCorpus.service(scheduler, false);
+		cutout = service.removeBackground(SyntheticImages.productPhoto(megapixels, BufferedImage.TYPE_3BYTE_BGR, 42));
+	}
+
+	@TearDown
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+
+	@Benchmark
+	public byte[] encode(Output output) throws IOException {
+		ImageCodecs.OutputBuffer buffer = ImageCodecs.borrowBuffer();
+		try {
+			encoder.encode(cutout, quality, resolvedLevel, buffer);
+			byte[] encoded = buffer.toByteArray();
+			output.outputBytes += encoded.length;
+			return encoded;
+		} finally {
+			buffer.release();
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(OutputFormatBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
@@ -0,0 +1,107 @@
+package com.edu.imageconversion.services;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Стандартный PNG-писатель ImageIO против PngEncoder в одном потоке и с параллельным сжатием полос.
+// cutout - результат удаления фона (прозрачный фон), photo - градиент без фона.
+// Счётчик outputBytes делится на число операций: средний размер результата в байтах.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PngEncoderBenchmark {
+
+	@Param({"3", "12"})
+	public double megapixels;
+
+	@Param({"cutout", "photo"})
+	public String content;
+
+	@Param({"1", "4", "6"})
+	public int level;
+
+	private BufferedImage image;
+	private ForkJoinPool pool;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Output {
+		public long outputBytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			outputBytes = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		if ("photo".equals(content)) {
+			image = SyntheticImages.gradientPhoto(megapixels, 42);
+		} else {
+			ConversionScheduler scheduler = ConversionScheduler.withWorkers(1);
+			ImageProcessingService service = BenchmarkCorpus.service(scheduler, false);
+			image = service.removeBackground(SyntheticImages.productPhoto(megapixels, BufferedImage.TYPE_3BYTE_BGR, 42));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	// Уровень сжатия у ImageIO по умолчанию фиксирован, параметр level на него не влияет
+	@Benchmark
+	public byte[] imageIo(Output output) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		output.outputBytes += out.size();
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] sequential(Output output) throws IOException {
+		byte[] png = PngEncoder.encode(image, level, null);
+		output.outputBytes += png.length;
+		return png;
+	}
+
+	@Benchmark
+	public byte[] parallel(Output output) throws IOException {
+		byte[] png = PngEncoder.encode(image, level, pool);
+		output.outputBytes += png.length;
+		return png;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(PngEncoderBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
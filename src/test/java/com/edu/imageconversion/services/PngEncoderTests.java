@@ -0,0 +1,84 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class PngEncoderTests {
+
+	@Test
+	void decodesToSamePixelsForAllLevelsAndLayouts() throws IOException {
+		int[] types = {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+				BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_INDEXED};
+		for (int type : types) {
+			BufferedImage image = SyntheticImages.productPhoto(120, 90, type, type);
+			for (int level = 0; level <= 9; level += 3) {
+				assertSamePixels(image, PngEncoder.encode(image, level, null));
+			}
+		}
+	}
+
+	@Test
+	void parallelBandsDecodeToSamePixels() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			BufferedImage cutout = RasterBackgroundRemover.createTarget(1600, 1200);
+			BufferedImage photo = SyntheticImages.productPhoto(1600, 1200, BufferedImage.TYPE_3BYTE_BGR, 7);
+			RasterBackgroundRemover.removeBackground(photo, RasterBackgroundRemover.pixels(cutout),
+					SyntheticImages.BACKGROUND_RGB, RasterBackgroundRemover.DEFAULT_TOLERANCE, 0, 1200);
+
+			assertSamePixels(cutout, PngEncoder.encode(cutout, 4, pool));
+			assertSamePixels(photo.getSubimage(10, 20, 1500, 1100), PngEncoder.encode(photo.getSubimage(10, 20, 1500, 1100), 7, pool));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void combinesAdlerChecksumsOfConcatenatedData() {
+		Random random = new Random(1);
+		for (int i = 0; i < 50; i++) {
+			byte[] first = new byte[random.nextInt(200_000)];
+			byte[] second = new byte[random.nextInt(200_000)];
+			random.nextBytes(first);
+			random.nextBytes(second);
+			Adler32 whole = new Adler32();
+			whole.update(first);
+			whole.update(second);
+			Adler32 a = new Adler32();
+			a.update(first);
+			Adler32 b = new Adler32();
+			b.update(second);
+
+			assertEquals(whole.getValue(), PngEncoder.adler32Combine(a.getValue(), b.getValue(), second.length));
+		}
+	}
+
+	@Test
+	void mapsQualityLikeImageIoWriter() {
+		assertEquals(9, PngEncoder.levelFromQuality(0f));
+		assertEquals(2, PngEncoder.levelFromQuality(0.8f));
+		assertEquals(0, PngEncoder.levelFromQuality(1f));
+	}
+
+	private static void assertSamePixels(BufferedImage expected, byte[] png) throws IOException {
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+		assertNotNull(decoded);
+		assertEquals(expected.getWidth(), decoded.getWidth());
+		assertEquals(expected.getHeight(), decoded.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals(expected.getRGB(x, y), decoded.getRGB(x, y), "pixel " + x + "," + y);
+			}
+		}
+	}
+}
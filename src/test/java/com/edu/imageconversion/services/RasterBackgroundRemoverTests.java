@@ -0,0 +1,98 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class RasterBackgroundRemoverTests {
+
+	@Test
+	void matchesLegacyAlgorithmForSupportedLayouts() {
+		int[] types = {
+				BufferedImage.TYPE_INT_RGB,
+				BufferedImage.TYPE_INT_ARGB,
+				BufferedImage.TYPE_3BYTE_BGR,
+				BufferedImage.TYPE_4BYTE_ABGR,
+				BufferedImage.TYPE_BYTE_INDEXED,
+				BufferedImage.TYPE_USHORT_565_RGB
+		};
+		for (int type : types) {
+			BufferedImage source = SyntheticImages.productPhoto(157, 113, type, type);
+			assertSameAsLegacy(source);
+		}
+	}
+
+	@Test
+	void matchesLegacyAlgorithmForSubimages() {
+		BufferedImage bgr = SyntheticImages.productPhoto(200, 150, BufferedImage.TYPE_3BYTE_BGR, 7);
+		assertSameAsLegacy(bgr.getSubimage(13, 21, 120, 90));
+
+		BufferedImage rgb = SyntheticImages.productPhoto(200, 150, BufferedImage.TYPE_INT_RGB, 7);
+		assertSameAsLegacy(rgb.getSubimage(13, 21, 120, 90));
+	}
+
+	@Test
+	void processesRowRangesIndependently() {
+		BufferedImage source = SyntheticImages.productPhoto(90, 70, BufferedImage.TYPE_4BYTE_ABGR, 3);
+		Color background = new Color(SyntheticImages.BACKGROUND_RGB);
+		BufferedImage expected = LegacyBackgroundRemoval.removeBackground(source, background, 30);
+
+		BufferedImage actual = RasterBackgroundRemover.createTarget(90, 70);
+		int[] target = RasterBackgroundRemover.pixels(actual);
+		RasterBackgroundRemover.removeBackground(source, target, background.getRGB(), 30, 40, 70);
+		RasterBackgroundRemover.removeBackground(source, target, background.getRGB(), 30, 0, 40);
+
+		assertArrayEquals(argb(expected), target);
+	}
+
+	@Test
+	void forkJoinBandsMatchSinglePass() {
+		// Нечетная высота и мелкие полосы, чтобы границы полос приходились на разные строки
+		BufferedImage source = SyntheticImages.productPhoto(131, 97, BufferedImage.TYPE_3BYTE_BGR, 11);
+		int background = SyntheticImages.BACKGROUND_RGB;
+		int width = source.getWidth();
+		int height = source.getHeight();
+
+		int[] expected = RasterBackgroundRemover.pixels(RasterBackgroundRemover.createTarget(width, height));
+		RasterBackgroundRemover.removeBackground(source, expected, background, 30, 0, height);
+		int[] expectedConnected = RasterBackgroundRemover.pixels(RasterBackgroundRemover.createTarget(width, height));
+		long[] expectedCandidates = ConnectedBackgroundRemover.candidates(width, height);
+		ConnectedBackgroundRemover.prepare(source, expectedConnected, expectedCandidates, background, 30, 0, height);
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int rowsPerBand : new int[]{1, 3, 7, 48}) {
+				int[] banded = RasterBackgroundRemover.pixels(RasterBackgroundRemover.createTarget(width, height));
+				pool.invoke(new BackgroundRemovalTask(source, banded, null, background, 30, 0, height, rowsPerBand));
+				assertArrayEquals(expected, banded, "rows per band " + rowsPerBand);
+
+				int[] bandedConnected = RasterBackgroundRemover.pixels(RasterBackgroundRemover.createTarget(width, height));
+				long[] candidates = ConnectedBackgroundRemover.candidates(width, height);
+				pool.invoke(new BackgroundRemovalTask(source, bandedConnected, candidates, background, 30, 0, height, rowsPerBand));
+				assertArrayEquals(expectedConnected, bandedConnected, "rows per band " + rowsPerBand);
+				assertArrayEquals(expectedCandidates, candidates, "rows per band " + rowsPerBand);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static void assertSameAsLegacy(BufferedImage source) {
+		Color background = new Color(SyntheticImages.BACKGROUND_RGB);
+		BufferedImage expected = LegacyBackgroundRemoval.removeBackground(source, background, 30);
+
+		BufferedImage actual = RasterBackgroundRemover.createTarget(source.getWidth(), source.getHeight());
+		RasterBackgroundRemover.removeBackground(source, RasterBackgroundRemover.pixels(actual),
+				background.getRGB(), 30, 0, source.getHeight());
+
+		assertArrayEquals(argb(expected), RasterBackgroundRemover.pixels(actual), "image type " + source.getType());
+	}
+
+	private static int[] argb(BufferedImage image) {
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+}
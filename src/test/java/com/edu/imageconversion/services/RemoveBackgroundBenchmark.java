@@ -0,0 +1,81 @@
+package com.edu.imageconversion.services;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Сравнение исходного попиксельного пути с растровым движком.
+// Счётчик megapixels даёт мегапиксели в секунду, gc.alloc.rate.norm из GCProfiler - байты на одно изображение.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RemoveBackgroundBenchmark {
+
+	@Param({"1", "12", "24"})
+	public double megapixels;
+
+	@Param({"TYPE_3BYTE_BGR", "TYPE_INT_RGB", "TYPE_4BYTE_ABGR", "TYPE_BYTE_INDEXED"})
+	public String imageType;
+
+	private BufferedImage source;
+	private ImageProcessingService service;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Pixels {
+		public double megapixels;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			megapixels = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() throws ReflectiveOperationException {
+		int type = BufferedImage.class.getField(imageType).getInt(null);
+		source = SyntheticImages.productPhoto(megapixels, type, 42);
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(Runtime.getRuntime().availableProcessors());
+		service = BenchmarkCorpus.service(scheduler, false);
+	}
+
+	@Benchmark
+	public BufferedImage legacy(Pixels pixels) {
+		pixels.megapixels += megapixels;
+		return LegacyBackgroundRemoval.removeBackground(source);
+	}
+
+	@Benchmark
+	public BufferedImage raster(Pixels pixels) throws IOException {
+		pixels.megapixels += megapixels;
+		return service.removeBackground(source);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(RemoveBackgroundBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,199 @@
+package com.edu.imageconversion.services;
+
+import com.edu.imageconversion.WebScrapeApplication;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Нагрузочный стенд: приложение целиком на локальном порту, clients клиентов одновременно медленно загружают
+// по изображению (загрузка растянута на uploadMillis) и ждут архив. Сравнивает обработку запросов потоками
+// платформы Tomcat (по умолчанию до 200) и виртуальными потоками; время операции - вся волна запросов.
+// Очередь допуска планировщика раздвинута до числа клиентов, чтобы сравнивались потоки, а не отказы 503.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class RequestThreadingBenchmark {
+
+	private static final String BOUNDARY = "benchmark-boundary";
+	private static final int UPLOAD_CHUNKS = 10;
+
+	@Param({"false", "true"})
+	public boolean virtualThreads;
+
+	@Param({"100", "1000"})
+	public int clients;
+
+	@Param({"1000"})
+	public int uploadMillis;
+
+	@Param({"0.1"})
+	public double megapixels;
+
+	private ConfigurableApplicationContext context;
+	private ExecutorService clientThreads;
+	private HttpClient client;
+	private URI uri;
+	private byte[] body;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Responses {
+		public long ok;
+		public long rejected;
+		public long failed;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			ok = 0;
+			rejected = 0;
+			failed = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		context = new SpringApplication(WebScrapeApplication.class).run(
+				"--server.port=0",
+				"--spring.threads.virtual.enabled=" + virtualThreads,
+				"--image.processing.cache.enabled=false",
+				"--image.processing.scheduler.max-queued-batches=" + clients,
+				"--image.processing.scheduler.queue-timeout=5m");
+		int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+		uri = URI.create("http://localhost:" + port + "/api/image/convert?format=png");
+
+		// Клиенты сами на виртуальных потоках, чтобы стенд не упирался в потоки клиента
+		clientThreads = Executors.newVirtualThreadPerTaskExecutor();
+		client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.executor(clientThreads)
+				.build();
+		body = multipart(BenchmarkCorpus.encode(SyntheticImages.productPhoto(megapixels, BufferedImage.TYPE_3BYTE_BGR, 0), "png"));
+	}
+
+	@TearDown
+	public void tearDown() {
+		clientThreads.shutdownNow();
+		context.close();
+	}
+
+	@Benchmark
+	public void slowUploads(Responses responses) {
+		long pauseMillis = uploadMillis / UPLOAD_CHUNKS;
+		HttpRequest request = HttpRequest.newBuilder(uri)
+				.header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+				.POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ThrottledInputStream(body, pauseMillis)))
+				.build();
+		List<CompletableFuture<HttpResponse<byte[]>>> sent = new ArrayList<>(clients);
+		for (int i = 0; i < clients; i++) {
+			sent.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()));
+		}
+		for (CompletableFuture<HttpResponse<byte[]>> response : sent) {
+			try {
+				int status = response.join().statusCode();
+				if (status == 200) {
+					responses.ok++;
+				} else if (status == 503 || status == 413) {
+					responses.rejected++;
+				} else {
+					responses.failed++;
+				}
+			} catch (RuntimeException e) {
+				responses.failed++;
+			}
+		}
+	}
+
+	private static byte[] multipart(byte[] image) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(image.length + 256);
+		output.write(("--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"files\"; filename=\"photo.png\"\r\n"
+				+ "Content-Type: image/png\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		output.write(image);
+		output.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+		return output.toByteArray();
+	}
+
+	// Тело запроса, которое отдается UPLOAD_CHUNKS частями с паузой перед каждой: медленный канал клиента
+	private static final class ThrottledInputStream extends InputStream {
+		private final byte[] data;
+		private final int chunkSize;
+		private final long pauseMillis;
+		private int position;
+
+		ThrottledInputStream(byte[] data, long pauseMillis) {
+			this.data = data;
+			this.chunkSize = (data.length + UPLOAD_CHUNKS - 1) / UPLOAD_CHUNKS;
+			this.pauseMillis = pauseMillis;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position >= data.length) {
+				return -1;
+			}
+			if (position % chunkSize == 0) {
+				try {
+					Thread.sleep(pauseMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+			int count = Math.min(len, Math.min(data.length - position, chunkSize - position % chunkSize));
+			System.arraycopy(data, position, b, off, count);
+			position += count;
+			return count;
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(RequestThreadingBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,184 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SvgMinifierTests {
+
+	@Test
+	void reducesNumberPrecisionAndSeparators() {
+		assertEquals("M10-20L30.123 40.5h.5", SvgMinifier.minifyNumbers("M 10,-20 L 30.12345 40.50 h 0.5", true, 3));
+		assertEquals("M0 0l-.5-.25.5.0001", SvgMinifier.minifyNumbers("M0,0 l-0.5 -0.25 0.5 0.0001", true, 4));
+		assertEquals("0 0 100 50.5", SvgMinifier.minifyNumbers("0 0 100.000 50.5", false, 3));
+		assertEquals("translate(1.5 2)scale(-1)", SvgMinifier.minifyNumbers("translate( 1.50 , 2.0001 ) scale(-1)", false, 3));
+		assertEquals("12px", SvgMinifier.minifyNumbers("12.0004px", false, 3));
+		assertEquals("0", SvgMinifier.minifyNumbers("-0.0001", false, 3));
+		assertEquals("100000", SvgMinifier.minifyNumbers("1e5", false, 3));
+		assertEquals("none", SvgMinifier.minifyNumbers("none", false, 3));
+	}
+
+	@Test
+	void shortensColors() {
+		assertEquals("#f00", SvgMinifier.minifyColor("rgb(255,0,0)"));
+		assertEquals("#f00", SvgMinifier.minifyColor("#FF0000"));
+		assertEquals("#123456", SvgMinifier.minifyColor("rgb(18, 52, 86)"));
+		assertEquals("url(#gradient)", SvgMinifier.minifyColor("url(#gradient)"));
+		assertEquals("rgb(10%,0%,0%)", SvgMinifier.minifyColor("rgb(10%,0%,0%)"));
+	}
+
+	@Test
+	void stripsMetadataWhitespaceAndFoldsStyles() throws IOException {
+		String svg = """
+				<?xml version="1.0" encoding="UTF-8"?>
+				<!DOCTYPE svg PUBLIC '-//W3C//DTD SVG 1.0//EN' 'http://www.w3.org/TR/2001/REC-SVG-20010904/DTD/svg10.dtd'>
+				<svg xmlns="http://www.w3.org/2000/svg" xmlns:xlink="http://www.w3.org/1999/xlink"
+				     xmlns:inkscape="http://www.inkscape.org/namespaces/inkscape" version="1.0"
+				     zoomAndPan="magnify" contentScriptType="text/ecmascript" width="100" height="50">
+				  <!-- Generated by the Batik Graphics2D SVG Generator -->
+				  <metadata><title>ignored</title></metadata>
+				  <g style="fill: rgb(255,255,255) ; stroke:#000000;" inkscape:label="layer">
+				    <path d="M 0.000 0.000 L 10.5000 -20.25 Z" stroke-width="1.0000"/>
+				    <image xlink:href="data:image/png;base64,AAAA" width="100" height="50"/>
+				    <inkscape:extension>drop me</inkscape:extension>
+				  </g>
+				  <g style="fill:#ffffff;stroke:none;opacity:0.5;stroke-width:2.000;font-size:12px"/>
+				  <text x="1.0"> Hello  &amp;  world </text>
+				</svg>
+				""";
+
+		String minified = minify(svg, 3, true);
+
+		assertEquals("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\""
+				+ " width=\"100\" height=\"50\">"
+				+ "<g fill=\"#fff\" stroke=\"#000\"><path d=\"M0 0L10.5-20.25Z\" stroke-width=\"1\"/>"
+				+ "<image xlink:href=\"data:image/png;base64,AAAA\" width=\"100\" height=\"50\"/></g>"
+				+ "<g style=\"fill:#fff;stroke:none;opacity:.5;stroke-width:2;font-size:12px\"/>"
+				+ "<text x=\"1\"> Hello  &amp;  world </text></svg>", minified);
+		assertWellFormed(minified);
+	}
+
+	@Test
+	void keepsStylesAfterStylesheet() throws IOException {
+		String svg = "<svg xmlns=\"http://www.w3.org/2000/svg\"><style>.a { fill: red }</style>"
+				+ "<rect class=\"a\" style=\"fill:blue\" width=\"1\" height=\"1\"/></svg>";
+
+		assertEquals("<svg xmlns=\"http://www.w3.org/2000/svg\"><style>.a { fill: red }</style>"
+				+ "<rect class=\"a\" width=\"1\" height=\"1\" style=\"fill:blue\"/></svg>", minify(svg, 3));
+	}
+
+	@Test
+	void keepsStylesBeforeLaterStylesheet() throws IOException {
+		String svg = "<svg xmlns=\"http://www.w3.org/2000/svg\"><rect class=\"a\" style=\"fill: rgb(0,0,255)\" width=\"1\""
+				+ " height=\"1\"/><style>.a { fill: red }</style></svg>";
+
+		assertEquals("<svg xmlns=\"http://www.w3.org/2000/svg\"><rect class=\"a\" width=\"1\" height=\"1\" style=\"fill:#00f\"/>"
+				+ "<style>.a { fill: red }</style></svg>", minify(svg, 3));
+	}
+
+	@Test
+	void writesOutputBeforeInputIsFullyRead() throws IOException {
+		int paths = 200_000;
+		GeneratedSvg input = new GeneratedSvg(paths);
+		long[] readAtFirstWrite = {-1};
+		long[] written = {0};
+		OutputStream output = new OutputStream() {
+			@Override
+			public void write(int b) {
+				write(new byte[]{(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				if (readAtFirstWrite[0] < 0) {
+					readAtFirstWrite[0] = input.position;
+				}
+				written[0] += len;
+			}
+		};
+
+		SvgMinifier.minify(input, output, 2, false);
+
+		assertTrue(readAtFirstWrite[0] >= 0 && readAtFirstWrite[0] < input.length / 10,
+				"first write after " + readAtFirstWrite[0] + " of " + input.length + " bytes");
+		assertTrue(written[0] < input.length, written[0] + " vs " + input.length);
+	}
+
+	@Test
+	void rejectsMalformedSvg() {
+		assertThrows(IOException.class, () -> minify("<svg><g></svg>", 3));
+		assertThrows(IllegalArgumentException.class, () -> new SvgOptimizationService(3).optimizeSvg(new byte[0]));
+	}
+
+	private static String minify(String svg, int precision) throws IOException {
+		return minify(svg, precision, false);
+	}
+
+	private static String minify(String svg, int precision, boolean foldStyles) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SvgMinifier.minify(new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8)), output, precision, foldStyles);
+		return output.toString(StandardCharsets.UTF_8);
+	}
+
+	private static void assertWellFormed(String svg) {
+		try {
+			DocumentBuilderFactory.newInstance().newDocumentBuilder()
+					.parse(new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8)));
+		} catch (Exception e) {
+			throw new AssertionError("not well-formed: " + svg, e);
+		}
+	}
+
+	// Документ из paths элементов, который генерируется по мере чтения и нигде не хранится целиком
+	private static final class GeneratedSvg extends InputStream {
+		private static final byte[] HEADER = "<svg xmlns=\"http://www.w3.org/2000/svg\">\n".getBytes(StandardCharsets.US_ASCII);
+		private static final byte[] PATH = "  <path d=\"M 10.00000 20.00000 L 30.12345 , 40.98765 Z\" fill=\"rgb(0,0,0)\"/>\n"
+				.getBytes(StandardCharsets.US_ASCII);
+		private static final byte[] FOOTER = "</svg>\n".getBytes(StandardCharsets.US_ASCII);
+
+		private final long length;
+		private long position;
+
+		GeneratedSvg(int paths) {
+			this.length = HEADER.length + (long) PATH.length * paths + FOOTER.length;
+		}
+
+		@Override
+		public int read() {
+			if (position >= length) {
+				return -1;
+			}
+			long offset = position++;
+			if (offset < HEADER.length) {
+				return HEADER[(int) offset];
+			}
+			offset -= HEADER.length;
+			if (offset < length - HEADER.length - FOOTER.length) {
+				return PATH[(int) (offset % PATH.length)];
+			}
+			return FOOTER[(int) (offset - (length - HEADER.length - FOOTER.length))];
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (position >= length) {
+				return -1;
+			}
+			int count = 0;
+			while (count < len && position < length) {
+				b[off + count++] = (byte) read();
+			}
+			return count;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.edu.imageconversion.services;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGraphics2D;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.awt.Color;
+import java.awt.geom.GeneralPath;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Оптимизация SVG, сгенерированного Batik: raster - растр в base64 (режим embed), shapes - множество контуров
+// с длинными дробными координатами. Счётчик outputBytes делится на число операций: средний размер результата.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SvgOptimizationBenchmark {
+
+	@Param({"raster", "shapes"})
+	public String content;
+
+	@Param({"0.3", "3"})
+	public double megapixels;
+
+	private SvgOptimizationService service;
+	private byte[] svg;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Output {
+		public long outputBytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			outputBytes = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		service = new SvgOptimizationService(3);
+		BufferedImage image = SyntheticImages.productPhoto(megapixels, BufferedImage.TYPE_INT_ARGB, 42);
+		svg = batikSvg(image, "shapes".equals(content));
+	}
+
+	@Benchmark
+	public byte[] optimizeSvg(Output output) throws IOException {
+		byte[] optimized = service.optimizeSvg(svg);
+		output.outputBytes += optimized.length;
+		return optimized;
+	}
+
+	// Число контуров растет с площадью изображения: примерно по одному на 1000 пикселей
+	private static byte[] batikSvg(BufferedImage image, boolean shapes) throws IOException {
+		Document document = GenericDOMImplementation.getDOMImplementation().createDocument(null, "svg", null);
+		SVGGraphics2D graphics = new SVGGraphics2D(document);
+		if (shapes) {
+			Random random = new Random(42);
+			int count = image.getWidth() * image.getHeight() / 1000;
+			for (int i = 0; i < count; i++) {
+				GeneralPath path = new GeneralPath();
+				float x = random.nextFloat() * image.getWidth();
+				float y = random.nextFloat() * image.getHeight();
+				path.moveTo(x, y);
+				for (int j = 0; j < 6; j++) {
+					path.curveTo(x + random.nextFloat() * 40, y + random.nextFloat() * 40,
+							x - random.nextFloat() * 40, y + random.nextFloat() * 40,
+							x + random.nextFloat() * 20 - 10, y + random.nextFloat() * 20 - 10);
+				}
+				path.closePath();
+				graphics.setColor(new Color(random.nextInt(0xFFFFFF)));
+				graphics.fill(path);
+			}
+		} else {
+			graphics.drawImage(image, 0, 0, null);
+		}
+		Element root = graphics.getRoot();
+		root.setAttributeNS(null, "width", String.valueOf(image.getWidth()));
+		root.setAttributeNS(null, "height", String.valueOf(image.getHeight()));
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+		graphics.stream(root, writer);
+		writer.flush();
+		return output.toByteArray();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(SvgOptimizationBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
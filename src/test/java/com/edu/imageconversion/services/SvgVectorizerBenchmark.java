@@ -0,0 +1,95 @@
+package com.edu.imageconversion.services;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Конвертация в SVG целиком (чтение, удаление фона, кодирование): прежний путь Batik с растром внутри SVG
+// против векторизации в контуры. Счётчик outputBytes делится на число операций: средний размер SVG в байтах.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SvgVectorizerBenchmark {
+
+	@Param({"1", "3"})
+	public double megapixels;
+
+	@Param({"8", "16"})
+	public int colors;
+
+	@Param({"0", "1.0"})
+	public double simplify;
+
+	private ConversionScheduler scheduler;
+	private ImageProcessingService embedding;
+	private ImageProcessingService tracing;
+	private MultipartFile[] file;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Output {
+		public long outputBytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			outputBytes = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		scheduler = ConversionScheduler.withWorkers(1);
+		embedding = BenchmarkCorpus.services(scheduler).vectorizer(SvgVectorizer.embedding()).build();
+		tracing = BenchmarkCorpus.services(scheduler).vectorizer(SvgVectorizer.tracing(colors, simplify)).build();
+		BufferedImage photo = SyntheticImages.productPhoto(megapixels, BufferedImage.TYPE_3BYTE_BGR, 42);
+		file = new MultipartFile[]{new BytesMultipartFile("photo.png", PngEncoder.encode(photo, 1, null))};
+	}
+
+	@TearDown
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+
+	// От colors и simplify не зависит
+	@Benchmark
+	public byte[] embedBatik(Output output) throws IOException {
+		byte[] svg = embedding.convertImages(file, "svg", 0.8f)[0];
+		output.outputBytes += svg.length;
+		return svg;
+	}
+
+	@Benchmark
+	public byte[] vectorize(Output output) throws IOException {
+		byte[] svg = tracing.convertImages(file, "svg", 0.8f)[0];
+		output.outputBytes += svg.length;
+		return svg;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(SvgVectorizerBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
@@ -0,0 +1,131 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SvgVectorizerTests {
+
+	private static final Pattern PATH = Pattern.compile("<path fill=\"#([0-9a-f]{6})\"[^>]* d=\"([^\"]*)\"/>");
+	private static final Pattern COMMAND = Pattern.compile("([Mhvlz])([^Mhvlz]*)");
+
+	@Test
+	void tracesExactPixelShapesWithoutSimplification() throws IOException {
+		// Цвета с точными ячейками гистограммы, прозрачные пиксели, дырки и области, касающиеся углами
+		int[] colors = {0x108018, 0xF80000, 0x0000F8, 0x404040};
+		Random random = new Random(3);
+		BufferedImage image = new BufferedImage(97, 61, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				int cell = (x / 7 + y / 5) % 5;
+				int argb = cell == 4 ? 0x00FFFFFF : 0xFF000000 | colors[cell];
+				if (random.nextInt(10) == 0) {
+					argb = 0xFF000000 | colors[random.nextInt(colors.length)];
+				}
+				image.setRGB(x, y, argb);
+			}
+		}
+		for (int i = 0; i < 20; i++) {
+			image.setRGB(40 + i, 30 + i % 2 + (i / 2) % 2, 0xFFF80000);
+		}
+
+		Map<Integer, Path2D> shapes = parse(vectorize(image, 8, 0));
+
+		assertEquals(colors.length, shapes.size());
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				int argb = image.getRGB(x, y);
+				for (Map.Entry<Integer, Path2D> shape : shapes.entrySet()) {
+					boolean expected = (argb >>> 24) != 0 && (argb & 0xFFFFFF) == shape.getKey();
+					assertEquals(expected, shape.getValue().contains(x + 0.5, y + 0.5), "pixel " + x + "," + y);
+				}
+			}
+		}
+	}
+
+	@Test
+	void limitsPaletteToColorCount() throws IOException {
+		BufferedImage photo = SyntheticImages.gradientPhoto(0.05, 11);
+
+		for (int count : new int[]{1, 4, 16}) {
+			Map<Integer, Path2D> shapes = parse(vectorize(photo, count, 0));
+			assertTrue(shapes.size() <= count, "colors " + shapes.size());
+			assertFalse(shapes.isEmpty());
+		}
+	}
+
+	@Test
+	void simplificationShrinksOutput() throws IOException {
+		BufferedImage cutout = RasterBackgroundRemover.createTarget(400, 300);
+		BufferedImage photo = SyntheticImages.productPhoto(400, 300, BufferedImage.TYPE_3BYTE_BGR, 5);
+		RasterBackgroundRemover.removeBackground(photo, RasterBackgroundRemover.pixels(cutout),
+				SyntheticImages.BACKGROUND_RGB, RasterBackgroundRemover.DEFAULT_TOLERANCE, 0, 300);
+
+		String exact = vectorize(cutout, 16, 0);
+		String simplified = vectorize(cutout, 16, 1.5);
+
+		assertTrue(simplified.length() < exact.length(), simplified.length() + " vs " + exact.length());
+		assertTrue(simplified.startsWith("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"400\" height=\"300\""));
+		assertTrue(simplified.endsWith("</svg>"));
+		assertEquals(parse(exact).keySet(), parse(simplified).keySet());
+	}
+
+	@Test
+	void settingsDistinguishCachedSvgResults() {
+		ConversionOptions traced = new ConversionOptions("SVG", 0.8f, 2, 0, 0, 30, BackgroundRemovalMode.GLOBAL, 1, SvgVectorizer.tracing(16, 1).settings());
+		ConversionOptions embedded = new ConversionOptions("svg", 0.8f, 2, 0, 0, 30, BackgroundRemovalMode.GLOBAL, 1, SvgVectorizer.embedding().settings());
+		// Для PNG в параметры попадают настройки его кодировщика, а не векторизации, и у PNG их нет
+		ConversionOptions png = new ConversionOptions("png", 0.8f, 2, 0, 0, 30, BackgroundRemovalMode.GLOBAL, 1, "");
+
+		assertNotEquals(traced.fingerprint(), embedded.fingerprint());
+		assertEquals("png_q0.8_c2_t30_s1", png.fingerprint());
+	}
+
+	private static String vectorize(BufferedImage image, int colors, double simplify) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SvgVectorizer.tracing(colors, simplify).vectorize(image, output);
+		return output.toString(StandardCharsets.US_ASCII);
+	}
+
+	// Контуры каждого цвета как фигура с правилом even-odd, как ее закрашивает SVG
+	private static Map<Integer, Path2D> parse(String svg) {
+		Map<Integer, Path2D> shapes = new HashMap<>();
+		Matcher path = PATH.matcher(svg);
+		while (path.find()) {
+			Path2D shape = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+			Matcher command = COMMAND.matcher(path.group(2));
+			double x = 0;
+			double y = 0;
+			while (command.find()) {
+				String[] args = command.group(2).replace("-", " -").trim().split("\\s+");
+				switch (command.group(1)) {
+					case "M" -> {
+						x = Double.parseDouble(args[0]);
+						y = Double.parseDouble(args[1]);
+						shape.moveTo(x, y);
+					}
+					case "h" -> shape.lineTo(x += Double.parseDouble(args[0]), y);
+					case "v" -> shape.lineTo(x, y += Double.parseDouble(args[0]));
+					case "l" -> shape.lineTo(x += Double.parseDouble(args[0]), y += Double.parseDouble(args[1]));
+					default -> shape.closePath();
+				}
+			}
+			assertTrue(shapes.put(Integer.parseInt(path.group(1), 16), shape) == null, "one path per color");
+		}
+		return shapes;
+	}
+}
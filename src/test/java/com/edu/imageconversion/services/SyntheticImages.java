@@ -0,0 +1,84 @@
+package com.edu.imageconversion.services;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RadialGradientPaint;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+// Детерминированные тестовые изображения: однотонный фон с шумом и несколько объектов по центру
+final class SyntheticImages {
+
+	static final int BACKGROUND_RGB = 0xF4F4F2;
+
+	private SyntheticImages() {
+	}
+
+	static BufferedImage productPhoto(int width, int height, int type, long seed) {
+		BufferedImage image = new BufferedImage(width, height, type);
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(new Color(BACKGROUND_RGB));
+		g.fillRect(0, 0, width, height);
+
+		Random random = new Random(seed);
+		for (int i = 0; i < 12; i++) {
+			g.setColor(new Color(random.nextInt(0xFFFFFF)));
+			int w = width / 4 + random.nextInt(Math.max(1, width / 4));
+			int h = height / 4 + random.nextInt(Math.max(1, height / 4));
+			g.fillOval(width / 4 + random.nextInt(Math.max(1, width / 4)) - w / 4,
+					height / 4 + random.nextInt(Math.max(1, height / 4)) - h / 4, w, h);
+		}
+		g.dispose();
+
+		// Лёгкий шум по всему кадру, чтобы часть фона попадала на границу допуска
+		for (int i = 0; i < width * height / 16; i++) {
+			int x = random.nextInt(width);
+			int y = random.nextInt(height);
+			int rgb = image.getRGB(x, y);
+			int delta = random.nextInt(61) - 30;
+			int r = clamp(((rgb >> 16) & 0xFF) + delta);
+			int gr = clamp(((rgb >> 8) & 0xFF) + delta);
+			int b = clamp((rgb & 0xFF) + delta);
+			image.setRGB(x, y, (rgb & 0xFF000000) | r << 16 | gr << 8 | b);
+		}
+		return image;
+	}
+
+	static BufferedImage productPhoto(double megapixels, int type, long seed) {
+		int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000 * 4 / 3));
+		int height = (int) Math.round(megapixels * 1_000_000 / width);
+		return productPhoto(width, height, type, seed);
+	}
+
+	// Фотография без однотонного фона: радиальный градиент с мелким шумом
+	static BufferedImage gradientPhoto(double megapixels, long seed) {
+		int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000 * 4 / 3));
+		int height = (int) Math.round(megapixels * 1_000_000 / width);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setPaint(new RadialGradientPaint(width / 2f, height / 2f, Math.max(width, height) / 2f,
+				new float[]{0f, 0.5f, 1f}, new Color[]{new Color(0xD04020), new Color(0x20C060), new Color(0x1030E0)}));
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+
+		Random random = new Random(seed);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			for (int x = 0; x < width; x++) {
+				int delta = random.nextInt(5) - 2;
+				row[x] = clamp(((row[x] >> 16) & 0xFF) + delta) << 16
+						| clamp(((row[x] >> 8) & 0xFF) + delta) << 8
+						| clamp((row[x] & 0xFF) + delta);
+			}
+			image.setRGB(0, y, width, 1, row, 0, width);
+		}
+		return image;
+	}
+
+	private static int clamp(int value) {
+		return Math.max(0, Math.min(255, value));
+	}
+}
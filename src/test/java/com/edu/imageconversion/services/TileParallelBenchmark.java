@@ -0,0 +1,86 @@
+package com.edu.imageconversion.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Полосное удаление фона против обработки целого изображения в одном потоке:
+// 1 изображение x N мегапикселей и N изображений x 1 мегапиксель через convertImagesParallel
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TileParallelBenchmark {
+
+	@Param({"4", "16", "40"})
+	public int size;
+
+	@Param({"false", "true"})
+	public boolean tileParallel;
+
+	private ImageProcessingService service;
+	private BufferedImage largeImage;
+	private MultipartFile[] oneLargeFile;
+	private MultipartFile[] manySmallFiles;
+
+	@Setup
+	public void setUp() throws IOException {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(Runtime.getRuntime().availableProcessors());
+		service = BenchmarkCorpus.service(scheduler, tileParallel);
+		largeImage = SyntheticImages.productPhoto(size, BufferedImage.TYPE_3BYTE_BGR, 1);
+		oneLargeFile = new MultipartFile[]{new BytesMultipartFile("large.png", png(largeImage))};
+
+		manySmallFiles = new MultipartFile[size];
+		for (int i = 0; i < size; i++) {
+			BufferedImage image = SyntheticImages.productPhoto(1, BufferedImage.TYPE_3BYTE_BGR, i);
+			manySmallFiles[i] = new BytesMultipartFile("small" + i + ".png", png(image));
+		}
+	}
+
+	@Benchmark
+	public BufferedImage removeBackgroundOneLargeImage() throws IOException {
+		return service.removeBackground(largeImage);
+	}
+
+	@Benchmark
+	public byte[][] convertOneLargeImage() throws IOException {
+		return service.convertImagesParallel(oneLargeFile, "png", 0.8f);
+	}
+
+	@Benchmark
+	public byte[][] convertManySmallImages() throws IOException {
+		return service.convertImagesParallel(manySmallFiles, "png", 0.8f);
+	}
+
+	private static byte[] png(BufferedImage image) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(TileParallelBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
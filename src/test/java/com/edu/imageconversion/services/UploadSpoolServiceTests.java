@@ -0,0 +1,98 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadSpoolServiceTests {
+
+	@Test
+	void byteBufferStreamSeeksWithoutCopying() throws IOException {
+		byte[] content = new byte[300];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		// Буфер со смещенной позицией: поток начинается с нее
+		ByteBuffer buffer = ByteBuffer.wrap(content).position(10);
+		try (ImageInputStream stream = new ByteBufferImageInputStream(buffer)) {
+			assertEquals(290, stream.length());
+			assertEquals(10, stream.read());
+			stream.seek(280);
+			byte[] tail = new byte[20];
+			assertEquals(10, stream.read(tail, 0, 20));
+			assertEquals((byte) 299, tail[9]);
+			assertEquals(-1, stream.read());
+			stream.seek(0);
+			assertEquals(10, stream.readUnsignedByte());
+		}
+		assertEquals(10, buffer.position());
+	}
+
+	@Test
+	void decodesSpooledUploadsFromMappedFile() throws IOException {
+		BufferedImage image = SyntheticImages.productPhoto(64, 48, BufferedImage.TYPE_3BYTE_BGR, 7);
+		Path directory = Files.createTempDirectory("upload-spool-test");
+		UploadSpoolService service = new UploadSpoolService(true, directory.toString(), ConversionMetrics.disabled());
+		MultipartFile[] files = {
+				new BytesMultipartFile("photo.png", encode(image, "png")),
+				new BytesMultipartFile("photo.jpg", encode(image, "jpeg"))
+		};
+
+		Path[] spooledPaths = new Path[files.length];
+		try (UploadSpoolService.Spool spool = service.spool(files)) {
+			for (int i = 0; i < files.length; i++) {
+				SpooledMultipartFile spooled = assertInstanceOf(SpooledMultipartFile.class, spool.files()[i]);
+				spooledPaths[i] = spooled.getPath();
+				assertTrue(spooledPaths[i].startsWith(directory));
+				assertArrayEquals(files[i].getBytes(), spooled.getBytes());
+
+				ByteBuffer mapped = spooled.mapped();
+				assertNotNull(mapped);
+				assertEquals(new Dimension(64, 48), ImageCodecs.readSize(mapped));
+				BufferedImage expected = ImageIO.read(new ByteArrayInputStream(files[i].getBytes()));
+				BufferedImage actual = ImageCodecs.read(mapped, 0, 0);
+				assertArrayEquals(expected.getRGB(0, 0, 64, 48, null, 0, 64), actual.getRGB(0, 0, 64, 48, null, 0, 64));
+				try (InputStream inputStream = spooled.getInputStream()) {
+					assertArrayEquals(files[i].getBytes(), inputStream.readAllBytes());
+				}
+			}
+		}
+		// После пакета перенесенные загрузки удаляются
+		for (Path path : spooledPaths) {
+			assertFalse(Files.exists(path));
+		}
+	}
+
+	@Test
+	void leavesFilesAsIsWhenDisabled() throws IOException {
+		MultipartFile[] files = {new BytesMultipartFile("photo.png", new byte[]{1, 2, 3})};
+		try (UploadSpoolService.Spool spool = UploadSpoolService.disabled().spool(files)) {
+			assertSame(files, spool.files());
+		}
+	}
+
+	private static byte[] encode(BufferedImage image, String format) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, format, out);
+		return out.toByteArray();
+	}
+}
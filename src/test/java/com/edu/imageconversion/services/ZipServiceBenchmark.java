@@ -0,0 +1,102 @@
+package com.edu.imageconversion.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Упаковка готовых результатов конвертации (вырезанные предметы в PNG или JPEG) в ZIP:
+// целиком в память (zipFiles, элементы сжимаются параллельно) и потоково в выходной поток (ZipStream);
+// stored=false - прежнее поведение, DEFLATE для всех форматов
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZipServiceBenchmark {
+
+	@Param({"8", "32"})
+	public int count;
+
+	@Param({"1", "3"})
+	public double megapixels;
+
+	@Param({"png", "jpeg"})
+	public String format;
+
+	@Param({"true", "false"})
+	public boolean stored;
+
+	private ConversionScheduler scheduler;
+	private ZipService zipService;
+	private byte[][] files;
+
+	@Setup
+	public void setUp() throws IOException {
+		scheduler = ConversionScheduler.withWorkers(Runtime.getRuntime().availableProcessors());
+		ImageProcessingService service = BenchmarkCorpus.service(scheduler, false);
+		ImageEncoder encoder = ImageEncoderRegistry.defaults(scheduler, false).find(format);
+		byte[][] distinct = new byte[Math.min(count, BenchmarkCorpus.DISTINCT_IMAGES)][];
+		for (int i = 0; i < distinct.length; i++) {
+			BufferedImage cutout = service.removeBackground(SyntheticImages.productPhoto(megapixels, BufferedImage.TYPE_3BYTE_BGR, i));
+			ImageCodecs.OutputBuffer buffer = ImageCodecs.borrowBuffer();
+			try {
+				encoder.encode(cutout, 0.8f, encoder.resolveLevel(0.8f, PngEncoder.LEVEL_FROM_QUALITY), buffer);
+				distinct[i] = buffer.toByteArray();
+			} finally {
+				buffer.release();
+			}
+		}
+		files = new byte[count][];
+		for (int i = 0; i < count; i++) {
+			files[i] = distinct[i % distinct.length];
+		}
+		zipService = new ZipService(ConversionMetrics.disabled(), scheduler, 6,
+				stored ? Set.of("png", "jpeg") : Set.of());
+	}
+
+	@TearDown
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+
+	@Benchmark
+	public byte[] zipFiles() throws IOException {
+		return zipService.zipFiles(files, format);
+	}
+
+	@Benchmark
+	public void zipStream() throws IOException {
+		ZipService.ZipStream zipStream = zipService.openZipStream(OutputStream.nullOutputStream(), format);
+		for (int i = 0; i < files.length; i++) {
+			zipStream.accept(i, files[i]);
+		}
+		zipStream.finish();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(ZipServiceBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
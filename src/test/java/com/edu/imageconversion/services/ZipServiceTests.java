@@ -0,0 +1,157 @@
+package com.edu.imageconversion.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZipServiceTests {
+
+	@Test
+	void storesCompressedFormatsAndDeflatesTheRest() throws IOException {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(2);
+		try {
+			ZipService zipService = ZipService.defaults(ConversionMetrics.disabled(), scheduler);
+			byte[][] files = {svg(1), svg(2), svg(3)};
+			byte[][] images = {noise(4000, 1), noise(5000, 2)};
+
+			List<ZipEntry> svgEntries = read(zipService.zipFiles(files, "svg"), files);
+			assertTrue(svgEntries.stream().allMatch(entry -> entry.getMethod() == ZipEntry.DEFLATED));
+			assertTrue(svgEntries.get(0).getCompressedSize() < files[0].length);
+
+			List<ZipEntry> pngEntries = read(zipService.zipFiles(images, "png"), images);
+			assertTrue(pngEntries.stream().allMatch(entry -> entry.getMethod() == ZipEntry.STORED));
+
+			// Несжимаемые данные сохраняются как есть и без списка форматов
+			ZipService deflating = new ZipService(ConversionMetrics.disabled(), scheduler, 9, Set.of());
+			List<ZipEntry> noiseEntries = read(deflating.zipFiles(images, "bmp"), images);
+			assertTrue(noiseEntries.stream().allMatch(entry -> entry.getMethod() == ZipEntry.STORED));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void streamsEntriesInArrivalOrder() throws IOException {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(1);
+		try {
+			ZipService zipService = ZipService.defaults(ConversionMetrics.disabled(), scheduler);
+			byte[][] files = {svg(1), new byte[0], svg(2)};
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ZipService.ZipStream zipStream = zipService.openZipStream(out, "svg");
+			zipStream.accept(2, files[2]);
+			zipStream.accept(0, files[0]);
+			zipStream.accept(1, files[1]);
+			zipStream.finish();
+
+			List<ZipEntry> entries = read(out.toByteArray(), files);
+			assertEquals(List.of("image3.svg", "image1.svg", "image2.svg"), entries.stream().map(ZipEntry::getName).toList());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void compressesEntryInPrepareAndWritesItOnApply() throws IOException {
+		ConversionScheduler scheduler = ConversionScheduler.withWorkers(1);
+		try {
+			ZipService zipService = ZipService.defaults(ConversionMetrics.disabled(), scheduler);
+			byte[][] files = {svg(3), svg(4)};
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ZipService.ZipStream zipStream = zipService.openZipStream(out, "svg");
+
+			// Воркеры сжимают элементы, в поток ничего не пишется до apply в потоке запроса
+			ConvertedImageConsumer.Prepared second = zipStream.prepare(1, files[1]);
+			ConvertedImageConsumer.Prepared first = zipStream.prepare(0, files[0]);
+			assertEquals(0, out.size());
+			second.apply();
+			first.apply();
+			zipStream.finish();
+
+			List<ZipEntry> entries = read(out.toByteArray(), files);
+			assertEquals(List.of("image2.svg", "image1.svg"), entries.stream().map(ZipEntry::getName).toList());
+			assertTrue(entries.stream().allMatch(entry -> entry.getMethod() == ZipEntry.DEFLATED));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void switchesToZip64AboveEntryLimit() throws IOException {
+		Path archive = Files.createTempFile("zip64-test", ".zip");
+		try {
+			int count = 70_000;
+			try (OutputStream out = Files.newOutputStream(archive)) {
+				ZipArchiveWriter writer = new ZipArchiveWriter(out);
+				for (int i = 0; i < count; i++) {
+					byte[] content = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+					writer.add(ZipArchiveWriter.compress("image" + i + ".txt", content, 6, false));
+				}
+				writer.finish();
+			}
+			try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+				assertEquals(count, zipFile.size());
+				ZipEntry last = zipFile.getEntry("image" + (count - 1) + ".txt");
+				try (InputStream inputStream = zipFile.getInputStream(last)) {
+					assertEquals(String.valueOf(count - 1), new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+				}
+			}
+		} finally {
+			Files.deleteIfExists(archive);
+		}
+	}
+
+	// Читает архив через центральный каталог и сверяет содержимое элементов imageN с исходными файлами
+	private static List<ZipEntry> read(byte[] archive, byte[][] files) throws IOException {
+		Path path = Files.createTempFile("zip-test", ".zip");
+		try {
+			Files.write(path, archive);
+			List<ZipEntry> entries = new ArrayList<>();
+			try (ZipFile zipFile = new ZipFile(path.toFile())) {
+				assertEquals(files.length, zipFile.size());
+				for (ZipEntry entry : Collections.list(zipFile.entries())) {
+					int index = Integer.parseInt(entry.getName().replaceAll("\\D", "")) - 1;
+					try (InputStream inputStream = zipFile.getInputStream(entry)) {
+						assertArrayEquals(files[index], inputStream.readAllBytes(), entry.getName());
+					}
+					assertFalse(entry.isDirectory());
+					entries.add(entry);
+				}
+			}
+			return entries;
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	private static byte[] svg(int seed) {
+		StringBuilder svg = new StringBuilder("<svg xmlns=\"http://www.w3.org/2000/svg\">");
+		for (int i = 0; i < 200; i++) {
+			svg.append("<rect x=\"").append(i * seed).append("\" y=\"0\" width=\"1\" height=\"1\" fill=\"#f4f4f2\"/>");
+		}
+		return svg.append("</svg>").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] noise(int length, long seed) {
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+}